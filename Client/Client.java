@@ -1,8 +1,14 @@
 package Client;
 import Graphique.InterfaceClient;
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Trace;
 import javax.swing.*;
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Client est la classe représentant un client sur le serveur.
@@ -12,6 +18,12 @@ import java.net.Socket;
  */
 public class Client{
 
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Client.class);
+
     /**
      * Une instance de la classe InterfaceClient.
      * @see InterfaceClient .
@@ -42,6 +54,12 @@ public class Client{
      */
     protected Socket socket;
 
+    /**
+     * Le délai maximum d'attente de la réponse du serveur à la connexion, en millisecondes.
+     * @see Integer
+     */
+    private static final int DELAI_POIGNEE = 5000;
+
     /**
      * La police d'écriture de l'interface.
      * @see String
@@ -89,9 +107,10 @@ public class Client{
             try {
 
                 socket = new Socket(ip, port);
-                sendName(socket);
+                List<String> capacites = sendName(socket);
 
-                ClientThread ct = new ClientThread(socket, ic, font);
+                ClientThread ct = new ClientThread(socket, ic, font,
+                        capacites.contains(Binaire.CAPACITE), capacites.contains(Binaire.CAPACITE_COMPRESSION));
                 ct.start();
 
                 ic.setPanelVisible();
@@ -120,12 +139,45 @@ public class Client{
 
     /**
      * Méthode qui envoie le nom du client au serveur dès que la connexion est établie.
+     * Le client annonce ses capacités (!hello:capacités:nom) et attend la réponse du serveur
+     * pour savoir quel protocole utiliser et si les trames sont compressées.
      * @param socket Le socket de la connexion entre le client et le serveur.
-     * @throws IOException si la méthode getOuputStream() ne retourne rien
+     * @return les capacités acceptées par le serveur, vide pour le protocole texte.
+     * @throws IOException si la méthode getOuputStream() ne retourne rien ou si le serveur ne répond pas.
      */
-    private void sendName(Socket socket) throws IOException{
-        PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
-        writer.println(this.name);
+    private List<String> sendName(Socket socket) throws IOException{
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+        writer.println(Commande.Type.HELLO.prefixe + ":" + Binaire.CAPACITE + "," + Binaire.CAPACITE_COMPRESSION
+                + ":" + this.name);
+
+        socket.setSoTimeout(DELAI_POIGNEE);
+        String reponse = lireLigne(socket.getInputStream());
+        socket.setSoTimeout(0);
+
+        Commande commande = new Commande().analyser(reponse);
+        if(commande.getType() != Commande.Type.HELLO){
+            throw new IOException("Réponse inattendue du serveur : " + reponse);
+        }
+        return Arrays.asList(commande.champ().split(","));
+    }
+
+    /**
+     * Méthode qui lit une ligne octet par octet, sans tampon, pour ne rien lire au-delà du retour à la ligne.
+     * Les octets suivants sont ainsi laissés au lecteur de ClientThread.
+     * @param in le flux d'entrée du socket.
+     * @return la ligne lue, sans le retour à la ligne.
+     * @throws IOException si la connexion est fermée avant la fin de la ligne.
+     */
+    private static String lireLigne(InputStream in) throws IOException{
+        ByteArrayOutputStream ligne = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != '\n'){
+            if(b < 0){
+                throw new EOFException("Connexion fermée par le serveur");
+            }
+            ligne.write(b);
+        }
+        return ligne.toString(StandardCharsets.UTF_8);
     }
 
 
@@ -143,7 +195,7 @@ public class Client{
         }else{
             for(File f:files){
                 String saveName = f.getName().replaceAll(".txt", "");
-                System.out.println("Save name : " + saveName);
+                TRACE.debug("Save name : {}", saveName);
                 JMenuItem jmi = new JMenuItem(saveName);
 
                 jmi.addActionListener(e -> loadParam(f));
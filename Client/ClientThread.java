@@ -1,6 +1,10 @@
 package Client;
 
 import Graphique.InterfaceClient;
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Niveau;
+import Trace.Trace;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.filechooser.FileSystemView;
@@ -11,12 +15,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.Random;
-import java.util.regex.Pattern;
 
 /**
  * Classe permettant de gérer les interactions entre le serveur et le client.
@@ -27,6 +31,12 @@ import java.util.regex.Pattern;
  */
 public class ClientThread extends Thread{
 
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(ClientThread.class);
+
     /**
      * Une Hashmap qui associe l'identifiant et le nom du client.
      * @see HashMap
@@ -87,13 +97,61 @@ public class ClientThread extends Thread{
      */
     private PrintWriter writer;
 
+    /**
+     * Le flux d'entrée brut provenant du serveur, utilisé avec le protocole binaire.
+     * @see InputStream
+     */
+    private InputStream entree;
+
+    /**
+     * Le flux de sortie brut vers le serveur, utilisé avec le protocole binaire.
+     * @see OutputStream
+     */
+    private OutputStream sortie;
+
+    /**
+     * Vrai si le serveur a accepté le protocole binaire, faux pour le protocole texte.
+     */
+    private final boolean binaire;
+
+    /**
+     * Vrai si le serveur a accepté la compression des trames binaires.
+     */
+    private final boolean compression;
+
+    /**
+     * Le nombre de résultats de recherche envoyés par page par le serveur.
+     * @see Integer
+     */
+    private static final int RESULTATS_PAR_PAGE = 20;
+
+    /**
+     * Les mots de la dernière recherche, null si aucune recherche n'a été faite.
+     * @see String
+     */
+    private String derniereRecherche;
+
+    /**
+     * La page de la dernière recherche demandée au serveur.
+     * @see Integer
+     */
+    private int pageRecherche;
+
+    /**
+     * L'analyseur des lignes reçues du serveur, réutilisé pour chaque ligne.
+     * @see Commande
+     */
+    private final Commande commande;
+
     /**
      * Méthode qui initialise la classe ClientThread
      * @param socket le socket du client
      * @param ic l'interface du client
      * @param font la police par défaut du client (utilisé lors du chargement des sauvegardes)
+     * @param binaire vrai si le protocole binaire a été négocié avec le serveur
+     * @param compression vrai si la compression des trames a été négociée avec le serveur
      */
-    public ClientThread(Socket socket, InterfaceClient ic, String font) {
+    public ClientThread(Socket socket, InterfaceClient ic, String font, boolean binaire, boolean compression) {
         this.socket = socket;
         this.ic = ic;
         this.clientList = new HashMap<>();
@@ -102,6 +160,9 @@ public class ClientThread extends Thread{
         this.fontFamily = font;
         this.reader = null;
         this.writer = null;
+        this.binaire = binaire;
+        this.compression = binaire && compression;
+        this.commande = new Commande();
 
     }
 
@@ -161,28 +222,36 @@ public class ClientThread extends Thread{
     public void run() {
 
         try {
-            this.reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-
-            this.writer = new PrintWriter(this.socket.getOutputStream(), true);
+            if(binaire){
+                this.entree = new BufferedInputStream(this.socket.getInputStream());
+                this.sortie = this.socket.getOutputStream();
+            }else{
+                this.reader = new BufferedReader(new InputStreamReader(this.socket.getInputStream(), StandardCharsets.UTF_8));
+                this.writer = new PrintWriter(new OutputStreamWriter(this.socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            }
 
-            System.out.println("Connecté sur le serveur ! ");
+            TRACE.info("Connecté sur le serveur !");
 
             initActionListeners();
 
             while(! socket.isClosed()){
 
-                String rawMessage = reader.readLine();
-
-                if( rawMessage == null ){
+                if( ! lireCommande() ){
                     break;
                 }
 
-                switch (cutMessage(rawMessage)) {
-                    case 1 -> addMessageToChat(rawMessage);
-                    case 2 -> addPrivateMessage(rawMessage);
-                    case 3 -> addCli(rawMessage);
-                    case 4 -> rmCli(rawMessage);
-                    case 5 -> noCli(rawMessage);
+                switch (commande.getType()) {
+                    case MSG -> addMessageToChat(commande);
+                    case PV -> addPrivateMessage(commande);
+                    case NEWCLI -> addCli(commande);
+                    case RMCLI -> rmCli(commande);
+                    case ERRNOCLI -> noCli(commande);
+                    case SEARCH -> searchInfo(commande);
+                    case RESULT -> addSearchResult(commande);
+                    case ROOM -> addRoomMessage(commande);
+                    case JOIN -> roomInfo(commande, " est entré dans #");
+                    case LEAVE -> roomInfo(commande, " a quitté #");
+                    case PING -> envoyerCommande(Commande.Type.PONG, "", "");
                     default -> {
                     }
                 }
@@ -195,23 +264,89 @@ public class ClientThread extends Thread{
             }
 
         } catch (IOException e) {
-            e.printStackTrace();
+            TRACE.erreur("Connexion au serveur perdue", e);
+        }
+    }
+
+    /**
+     * Méthode qui lit la prochaine ligne, ou trame binaire, du serveur et l'analyse dans commande.
+     * @return faux si la connexion est terminée.
+     * @throws IOException si la lecture échoue.
+     */
+    private boolean lireCommande() throws IOException {
+        if(binaire){
+            byte[] trame = Binaire.lire(entree);
+            if(trame == null){
+                return false;
+            }
+            commande.decoder(trame);
+        }else{
+            String rawMessage = reader.readLine();
+            if(rawMessage == null){
+                return false;
+            }
+            commande.analyser(rawMessage);
+        }
+        return true;
+    }
+
+    /**
+     * Méthode qui envoie une commande au serveur dans le protocole négocié.
+     * Si la compression a été négociée, les longues trames sont compressées avant l'envoi.
+     * @param type la commande.
+     * @param champ le champ de la commande (identifiant ou nom).
+     * @param corps le corps de la commande, déjà échappé pour le protocole texte.
+     */
+    private void envoyerCommande(Commande.Type type, String champ, String corps){
+        if(binaire){
+            try {
+                synchronized (sortie){
+                    byte[] trame = Binaire.trame(type, champ, corps);
+                    sortie.write(compression ? Binaire.compresser(trame) : trame);
+                    sortie.flush();
+                }
+            } catch (IOException e) {
+                TRACE.erreur("Envoi impossible", e);
+            }
+        }else{
+            this.writer.println(type.prefixe+":"+champ+":"+corps);
         }
     }
 
     /**
      * Méthode qui vérifie la présence de mots-clés dans le message envoyé par le client.
+     * Avec le protocole texte, les retours à la ligne sont remplacés par trois espaces ;
+     * avec le protocole binaire, le message est envoyé tel quel.
      */
     private void keyWordMsg(){
 
         String msg = ic.messageArea.getText();
-        System.out.println("raw input messageArea : " + msg);
-        String finalMessage = msg.replaceAll("\n", "   ");
+        TRACE.debug("raw input messageArea : {}", msg);
+        String finalMessage = binaire ? msg : msg.replace("\n", Commande.RETOUR_TEXTE);
 
-        if ( Pattern.matches("@.*", finalMessage) ){
-            System.out.println("Message privé vers ...");
+        if ( finalMessage.startsWith("@") ){
+            TRACE.debug("Message privé vers ...");
             sendPrivateMsg(finalMessage);
 
+        }else if( finalMessage.startsWith("#") && finalMessage.contains(" ") ){
+            String[] split = finalMessage.split(" ", 2);
+            envoyerCommande(Commande.Type.ROOM, split[0].substring(1), split[1]);
+
+        }else if( finalMessage.startsWith("/join ") ){
+            envoyerCommande(Commande.Type.JOIN, finalMessage.substring("/join ".length()).trim(), "");
+
+        }else if( finalMessage.startsWith("/leave ") ){
+            envoyerCommande(Commande.Type.LEAVE, finalMessage.substring("/leave ".length()).trim(), "");
+
+        }else if( finalMessage.startsWith("/search ") ){
+            derniereRecherche = finalMessage.substring("/search ".length());
+            pageRecherche = 0;
+            envoyerCommande(Commande.Type.SEARCH, "0", derniereRecherche);
+
+        }else if( finalMessage.equals("/suivant") && derniereRecherche != null ){
+            pageRecherche++;
+            envoyerCommande(Commande.Type.SEARCH, String.valueOf(pageRecherche), derniereRecherche);
+
         }else{
             sendMsg(finalMessage);
         }
@@ -222,9 +357,8 @@ public class ClientThread extends Thread{
      * @param msg La chaine de caractères saisie par l'utilisateur.
      */
     private void sendMsg(String msg){
-        String finalMessage = "!msg:"+this.id+":"+msg;
-        System.out.println("final message to send : " + finalMessage);
-        this.writer.println(finalMessage);
+        TRACE.debug("final message to send : {}", msg);
+        envoyerCommande(Commande.Type.MSG, String.valueOf(this.id), msg);
     }
 
 
@@ -238,81 +372,51 @@ public class ClientThread extends Thread{
         String fin = split[1];
 
         String newDest = dest.replace("@", "");
-        String finalMessage = "!pv:"+newDest+":"+fin;
-        this.writer.println(finalMessage);
-    }
-
-    /**
-     * Méthode qui vérifie la présence de mots-clés dans les messages reçus.
-     * @param rawMessage la chaine de caractères formatée avec les informations de l'émetteur.
-     * @return un entier
-     */
-    private int cutMessage(String rawMessage){
-        if ( Pattern.matches("!exit.*", rawMessage) ){
-            return -1;
-        }else if(Pattern.matches("!msg.*", rawMessage)){
-            return 1;
-        }else if(Pattern.matches("!pv.*", rawMessage)){
-            return 2;
-        }else if(Pattern.matches("!newcli.*", rawMessage)){
-            return 3;
-        }else if(Pattern.matches("!rmcli.*", rawMessage)){
-            return 4;
-        }else if(Pattern.matches("!errNoCli.*", rawMessage)){
-            return 5;
-        }
-        else{
-            return -1;
-        }
+        envoyerCommande(Commande.Type.PV, newDest, fin);
     }
 
     /**
      * Méthode qui formate la chaine de caractères à ajouter au chat et concatène le nom de l'émetteur.
-     * @param rawMessage le message brut reçu par le client.
+     * @param commande le message reçu par le client, de la forme !msg:idEmetteur:message.
      */
-    private void addMessageToChat(String rawMessage){
+    private void addMessageToChat(Commande commande){
 
-        String[] split = rawMessage.split(":", 3);
-        int senderID = Integer.parseInt(split[1]);
-        String msg = split[2].replaceAll("   ", "\n");
+        int senderID = commande.champEntier();
+        String msg = commande.corpsBrut();
 
         if(clientList.containsKey(senderID)){
             String name = clientList.get(senderID);
             Color color = clientColors.get(senderID);
-            System.out.println(msg);
-            System.out.println("nom : " + name);
+            TRACE.debug("Message de {} : {}", name, msg);
             appendToChatPane(msg, name, color, false);
         }
     }
 
     /**
      * Méthode qui formate la chaine de caractères à ajouter au chat avec un affichage différent, car c'est un message privé.
-     * @param rawMessage le message brut reçu par le client.
+     * @param commande le message reçu par le client, de la forme !pv:idEmetteur:message.
      */
-    private void addPrivateMessage(String rawMessage) {
+    private void addPrivateMessage(Commande commande) {
 
-        String[] split = rawMessage.split(":", 3);
-        int senderID = Integer.parseInt(split[1]);
-        String msg = split[2].replaceAll("   ", "\n");
+        int senderID = commande.champEntier();
+        String msg = commande.corpsBrut();
 
         if (clientList.containsKey(senderID)) {
             String name = clientList.get(senderID);
             Color color = clientColors.get(senderID);
-            System.out.println(msg);
-            System.out.println("nom : " + name);
+            TRACE.debug("Message de {} : {}", name, msg);
             appendToChatPane(msg, name, color, true);
         }
     }
 
     /**
      * Méthode qui ajoute le nom de l'utilisateur dans la section des utilisateurs connectés.
-     * @param rawMessage le message brut reçu par le client.
+     * @param commande le message reçu par le client, de la forme !newcli:id:nom.
      */
-    private void addCli(String rawMessage){
+    private void addCli(Commande commande){
 
-        String[] split = rawMessage.split(":", 3);
-        int senderID = Integer.parseInt(split[1]);
-        String msg = split[2];
+        int senderID = commande.champEntier();
+        String msg = commande.corps();
 
         if(! clientList.containsKey(senderID)){
             clientList.put(senderID, msg);
@@ -331,12 +435,11 @@ public class ClientThread extends Thread{
      * Méthode qui supprime le nom de l'utilisateur qui s'est déconnecté.
      * Affiche une phrase de déconnexion au chat pour avertir l'utilisateur.
      * Supprime l'utilisateur de la liste des clients connectés.
-     * @param rawMessage le message brut reçu par le client.
+     * @param commande le message reçu par le client, de la forme !rmcli:id.
      */
-    private void rmCli(String rawMessage){
+    private void rmCli(Commande commande){
 
-        String[] split = rawMessage.split(":", 3);
-        int senderID = Integer.parseInt(split[1]);
+        int senderID = commande.champEntier();
 
         if( clientList.containsKey(senderID)){
             String msg = "Serveur : " + clientList.get(senderID) + " s'est déconnecté(e) ! ";
@@ -348,16 +451,66 @@ public class ClientThread extends Thread{
 
     /**
      * Méthode qui affiche un message d'erreur dans le chat lorsqu'un message privé est envoyé à un utilisateur inconnu.
-     * @param rawMessage le message brut reçu par le client.
+     * @param commande le message reçu par le client, de la forme !errNoCli:nom.
      */
-    private void noCli(String rawMessage){
+    private void noCli(Commande commande){
 
-        String[] split = rawMessage.split(":", 2);
-        String name = split[1];
+        String name = commande.ligne().substring(commande.ligne().indexOf(':') + 1);
         String finalMessage = "Le client : " + name + " n'existe pas sur le serveur.";
         appendServerInfoToChatPane(finalMessage);
     }
 
+    /**
+     * Méthode qui affiche un message reçu dans un salon, précédé du nom du salon.
+     * @param commande le message reçu, de la forme !room:salon:idEmetteur:message.
+     */
+    private void addRoomMessage(Commande commande){
+        String[] split = commande.corpsBrut().split(":", 2);
+        if(split.length < 2){
+            return;
+        }
+        int senderID = Integer.parseInt(split[0]);
+        String name = clientList.getOrDefault(senderID, split[0]);
+        Color color = clientColors.getOrDefault(senderID, Color.BLACK);
+        appendToChatPane(split[1], name + " #" + commande.champ(), color, false);
+    }
+
+    /**
+     * Méthode qui affiche l'entrée ou la sortie d'un membre d'un salon.
+     * @param commande l'annonce reçue, de la forme !join:salon:id:nom ou !leave:salon:id.
+     * @param action le texte placé entre le nom du membre et le nom du salon.
+     */
+    private void roomInfo(Commande commande, String action){
+        String[] split = commande.corpsBrut().split(":", 2);
+        int senderID = Integer.parseInt(split[0]);
+        String name = split.length > 1 ? split[1] : clientList.getOrDefault(senderID, split[0]);
+        appendServerInfoToChatPane(name + action + commande.champ());
+    }
+
+    /**
+     * Méthode qui affiche l'en-tête des résultats d'une recherche.
+     * Le serveur arrête de compter au premier résultat après la page demandée : au-delà de la page, le nombre est un minimum.
+     * @param commande la réponse du serveur, de la forme !search:nombreDeRésultats:mots.
+     */
+    private void searchInfo(Commande commande){
+        int total = commande.champEntier();
+        int premier = pageRecherche * RESULTATS_PAR_PAGE + 1;
+        boolean suivante = total > premier - 1 + RESULTATS_PAR_PAGE;
+        String finalMessage = "Recherche \"" + commande.corpsBrut() + "\" : " + (suivante ? "au moins " : "") + total + " résultat(s)";
+        if(total >= premier){
+            finalMessage += ", page " + (pageRecherche + 1) + (suivante ? " (/suivant pour la page suivante)" : "");
+        }
+        appendServerInfoToChatPane(finalMessage);
+    }
+
+    /**
+     * Méthode qui affiche un résultat de recherche.
+     * @param commande le résultat reçu, de la forme !result:séquence:message.
+     */
+    private void addSearchResult(Commande commande){
+        appendServerInfoToChatPane("#" + commande.champ() + " " + commande.corpsBrut());
+    }
+
     /**
      * Méthode qui appelle pour chaque utilisateur de la liste, la méthode d'affichage sur l'interface des clients connectés.
      */
@@ -471,14 +624,14 @@ public class ClientThread extends Thread{
             if(! Files.exists(path)){
                 Files.createDirectory(path);
             }else{
-                System.out.println("Le dossier existe deja on remplace la sauvegarde");
+                TRACE.info("Le dossier existe deja on remplace la sauvegarde");
             }
             File saveParamFile = new File(path + "/"+this.ic.getNom()+".txt");
 
             boolean fileCreated = saveParamFile.createNewFile();
 
             if(! fileCreated && ! saveParamFile.exists() ){
-                System.out.println("Erreur lors de la création du fichier de sauvegarde");
+                TRACE.erreur("Erreur lors de la création du fichier de sauvegarde");
             }else{
                 FileWriter fw = new FileWriter(saveParamFile.getPath());
                 String stringToSave = "name:"+this.ic.getNom()+":ip:"+this.ic.getIP()+":port:"+this.ic.getPort()+":font:"+this.fontFamily;
@@ -506,7 +659,7 @@ public class ClientThread extends Thread{
         int i = fc.showSaveDialog(null);
 
         if (i == JFileChooser.APPROVE_OPTION) {
-            System.out.println("Fichier ou dossier séléctionné " +fc.getSelectedFile().getPath());
+            TRACE.info("Fichier ou dossier séléctionné {}", fc.getSelectedFile().getPath());
 
             File saveChatFile = new File(fc.getSelectedFile().getPath() + ".txt");
 
@@ -525,8 +678,11 @@ public class ClientThread extends Thread{
      * Méthode qui affiche dans la console la liste de client.
      */
     private void printHashmap(){
+        if(! TRACE.estActif(Niveau.DEBUG)){
+            return;
+        }
         for(int i : clientList.keySet()){
-            System.out.println("hashmap : Key : "+ i + " nom : " +clientList.get(i));
+            TRACE.debug("hashmap : Key : {} nom : {}", i, clientList.get(i));
         }
     }
 
@@ -534,8 +690,11 @@ public class ClientThread extends Thread{
      * Méthode qui affiche dans la console la liste des couleurs des clients.
      */
     private void printColors(){
+        if(! TRACE.estActif(Niveau.DEBUG)){
+            return;
+        }
         for(int i : clientColors.keySet()){
-            System.out.println("hashmap : Key : "+ i + " color : " +clientColors.get(i));
+            TRACE.debug("hashmap : Key : {} color : {}", i, clientColors.get(i));
         }
     }
 
@@ -545,7 +704,7 @@ public class ClientThread extends Thread{
     private void openDoc(){
 
         File doc = new File(System.getProperty("user.dir") + "/Doc/index.html");
-        System.out.println("doc path : " +doc.getPath());
+        TRACE.debug("doc path : {}", doc.getPath());
 
         if(doc.exists()){
 
@@ -556,7 +715,7 @@ public class ClientThread extends Thread{
                 e.printStackTrace();
             }
         }else{
-            System.out.println("La documentation n'existe pas ...");
+            TRACE.avertissement("La documentation n'existe pas ...");
         }
     }
 
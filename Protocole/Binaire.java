@@ -0,0 +1,376 @@
+package Protocole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Binaire regroupe l'encodage du protocole binaire, négocié à la connexion à la place du protocole texte.
+ * Une trame binaire a la forme [type : 1 octet][longueur : varint][contenu], et le contenu la forme
+ * [longueur du champ : varint][champ UTF-8][corps UTF-8].
+ * Le corps n'est jamais échappé : il peut contenir des retours à la ligne, et le serveur peut le relayer
+ * sans le parcourir puisque sa longueur est connue.
+ * Si la compression a été négociée, le contenu d'une trame plus longue que SEUIL_COMPRESSION octets peut être
+ * compressé avec deflate : le bit de poids fort du type est alors à 1 et la longueur est celle du contenu compressé.
+ * @see Commande
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public final class Binaire {
+
+    /**
+     * La taille maximum du contenu d'une trame, au-delà la connexion est fermée.
+     * @see Integer
+     */
+    public static final int CONTENU_MAX = 1 << 20;
+
+    /**
+     * La capacité annoncée à la connexion pour demander le protocole binaire.
+     * @see String
+     */
+    public static final String CAPACITE = "bin";
+
+    /**
+     * La capacité annoncée à la connexion pour demander la compression des trames binaires.
+     * @see String
+     */
+    public static final String CAPACITE_COMPRESSION = "zip";
+
+    /**
+     * La taille du contenu à partir de laquelle une trame est compressée.
+     * @see Integer
+     */
+    public static final int SEUIL_COMPRESSION = 512;
+
+    /**
+     * Le bit du type qui indique une trame compressée.
+     * @see Integer
+     */
+    public static final int COMPRESSEE = 0x80;
+
+    /**
+     * Le nombre maximum de compresseurs et de décompresseurs gardés pour être réutilisés.
+     * @see Integer
+     */
+    private static final int CODECS_MAX = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Les compresseurs libres. Un compresseur garde un état natif d'environ 256 Ko : avec un thread virtuel par connexion,
+     * un compresseur par thread occuperait des Go hors du tas. Ils sont donc empruntés le temps d'une trame,
+     * et un compresseur rendu quand la réserve est pleine est libéré tout de suite par end().
+     * @see Deflater
+     */
+    private static final ArrayBlockingQueue<Deflater> COMPRESSEURS = new ArrayBlockingQueue<>(CODECS_MAX);
+
+    /**
+     * Les décompresseurs libres, empruntés le temps d'une trame comme les compresseurs.
+     * @see Inflater
+     */
+    private static final ArrayBlockingQueue<Inflater> DECOMPRESSEURS = new ArrayBlockingQueue<>(CODECS_MAX);
+
+    /**
+     * Classe utilitaire : aucune instance.
+     */
+    private Binaire(){
+    }
+
+    /**
+     * Méthode qui retourne le code d'une commande dans une trame binaire.
+     * @param type la commande.
+     * @return le code de la commande, à partir de 1.
+     */
+    public static int code(Commande.Type type){
+        return type.ordinal() + 1;
+    }
+
+    /**
+     * Méthode qui retourne la commande correspondant à un code de trame binaire.
+     * @param code le code lu dans la trame.
+     * @return la commande, INCONNU si le code ne correspond à aucune commande.
+     */
+    public static Commande.Type type(int code){
+        Commande.Type[] types = Commande.Type.values();
+        return code >= 1 && code <= types.length ? types[code - 1] : Commande.Type.INCONNU;
+    }
+
+    /**
+     * Méthode qui encode une trame à partir de chaînes de caractères.
+     * @param type la commande.
+     * @param champ le champ (identifiant ou nom), chaîne vide si aucun.
+     * @param corps le corps (message ou nom), chaîne vide si aucun.
+     * @return les octets de la trame.
+     */
+    public static byte[] trame(Commande.Type type, String champ, String corps){
+        byte[] c = corps.getBytes(StandardCharsets.UTF_8);
+        return trame(type, champ, c, 0, c.length);
+    }
+
+    /**
+     * Méthode qui encode une trame dont le corps est déjà encodé, par exemple le corps d'une trame reçue.
+     * @param type la commande.
+     * @param champ le champ (identifiant ou nom), chaîne vide si aucun.
+     * @param source le tableau qui contient le corps.
+     * @param debut la position du premier octet du corps dans source.
+     * @param fin la position qui suit le dernier octet du corps dans source.
+     * @return les octets de la trame.
+     */
+    public static byte[] trame(Commande.Type type, String champ, byte[] source, int debut, int fin){
+        return trame(type, champ, "", source, debut, fin);
+    }
+
+    /**
+     * Méthode qui encode une trame dont le corps est formé d'un début et d'un corps déjà encodé,
+     * par exemple l'identifiant de l'émetteur suivi du corps d'une trame reçue.
+     * @param type la commande.
+     * @param champ le champ (identifiant ou nom), chaîne vide si aucun.
+     * @param debutCorps le texte placé au début du corps.
+     * @param source le tableau qui contient la suite du corps.
+     * @param debut la position du premier octet de la suite du corps dans source.
+     * @param fin la position qui suit le dernier octet de la suite du corps dans source.
+     * @return les octets de la trame.
+     */
+    public static byte[] trame(Commande.Type type, String champ, String debutCorps, byte[] source, int debut, int fin){
+        byte[] c = champ.getBytes(StandardCharsets.UTF_8);
+        byte[] p = debutCorps.getBytes(StandardCharsets.UTF_8);
+        int contenu = tailleVarint(c.length) + c.length + p.length + (fin - debut);
+        byte[] trame = new byte[1 + tailleVarint(contenu) + contenu];
+
+        trame[0] = (byte) code(type);
+        int pos = ecrireVarint(trame, 1, contenu);
+        pos = ecrireVarint(trame, pos, c.length);
+        System.arraycopy(c, 0, trame, pos, c.length);
+        System.arraycopy(p, 0, trame, pos + c.length, p.length);
+        System.arraycopy(source, debut, trame, pos + c.length + p.length, fin - debut);
+        return trame;
+    }
+
+    /**
+     * Méthode qui compresse le contenu d'une trame s'il dépasse le seuil et si la compression est utile.
+     * @param trame les octets de la trame non compressée.
+     * @return les octets de la trame compressée, ou la trame elle-même si elle n'a pas été compressée.
+     */
+    public static byte[] compresser(byte[] trame){
+        int debut = debutContenu(trame);
+        int contenu = trame.length - debut;
+        if(contenu < SEUIL_COMPRESSION){
+            return trame;
+        }
+
+        Deflater compresseur = COMPRESSEURS.poll();
+        if(compresseur == null){
+            compresseur = new Deflater(Deflater.BEST_SPEED);
+        }
+        byte[] compresse = new byte[contenu];
+        int n = 0;
+        try {
+            compresseur.setInput(trame, debut, contenu);
+            compresseur.finish();
+            while(! compresseur.finished() && n < compresse.length){
+                n += compresseur.deflate(compresse, n, compresse.length - n);
+            }
+            if(! compresseur.finished()){
+                return trame;
+            }
+        } finally {
+            compresseur.reset();
+            if(! COMPRESSEURS.offer(compresseur)){
+                compresseur.end();
+            }
+        }
+
+        byte[] resultat = new byte[1 + tailleVarint(n) + n];
+        resultat[0] = (byte) (trame[0] | COMPRESSEE);
+        int pos = ecrireVarint(resultat, 1, n);
+        System.arraycopy(compresse, 0, resultat, pos, n);
+        return resultat;
+    }
+
+    /**
+     * Méthode qui décompresse une trame compressée.
+     * @param trame les octets de la trame reçue.
+     * @return les octets de la trame décompressée, ou la trame elle-même si elle n'était pas compressée.
+     * @throws IOException si le contenu compressé est invalide ou dépasse la taille maximum.
+     */
+    public static byte[] decompresser(byte[] trame) throws IOException {
+        if((trame[0] & COMPRESSEE) == 0){
+            return trame;
+        }
+        int debut = debutContenu(trame);
+
+        Inflater decompresseur = DECOMPRESSEURS.poll();
+        if(decompresseur == null){
+            decompresseur = new Inflater();
+        }
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream(2 * (trame.length - debut));
+        byte[] morceau = new byte[8192];
+        try {
+            decompresseur.setInput(trame, debut, trame.length - debut);
+            while(! decompresseur.finished()){
+                int n = decompresseur.inflate(morceau);
+                if(n == 0 && (decompresseur.needsInput() || decompresseur.needsDictionary())){
+                    throw new IOException("Trame compressée tronquée");
+                }
+                contenu.write(morceau, 0, n);
+                if(contenu.size() > CONTENU_MAX){
+                    throw new IOException("Trame décompressée trop longue");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Trame compressée invalide", e);
+        } finally {
+            decompresseur.reset();
+            if(! DECOMPRESSEURS.offer(decompresseur)){
+                decompresseur.end();
+            }
+        }
+
+        byte[] resultat = new byte[1 + tailleVarint(contenu.size()) + contenu.size()];
+        resultat[0] = (byte) (trame[0] & ~COMPRESSEE);
+        int pos = ecrireVarint(resultat, 1, contenu.size());
+        System.arraycopy(contenu.toByteArray(), 0, resultat, pos, contenu.size());
+        return resultat;
+    }
+
+    /**
+     * Méthode qui retourne la position du contenu d'une trame complète, après le type et la longueur.
+     * @param trame les octets de la trame.
+     * @return la position du premier octet du contenu.
+     */
+    private static int debutContenu(byte[] trame){
+        int pos = 1;
+        while((trame[pos] & 0x80) != 0){
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /**
+     * Méthode qui retourne le nombre d'octets d'un varint.
+     * @param valeur la valeur positive à encoder.
+     * @return le nombre d'octets, de 1 à 5.
+     */
+    public static int tailleVarint(int valeur){
+        int taille = 1;
+        while((valeur & ~0x7F) != 0){
+            valeur >>>= 7;
+            taille++;
+        }
+        return taille;
+    }
+
+    /**
+     * Méthode qui écrit un varint : 7 bits par octet, le bit de poids fort indiquant qu'un octet suit.
+     * @param dest le tableau de destination.
+     * @param pos la position où écrire.
+     * @param valeur la valeur positive à encoder.
+     * @return la position qui suit le dernier octet écrit.
+     */
+    public static int ecrireVarint(byte[] dest, int pos, int valeur){
+        while((valeur & ~0x7F) != 0){
+            dest[pos++] = (byte) ((valeur & 0x7F) | 0x80);
+            valeur >>>= 7;
+        }
+        dest[pos++] = (byte) valeur;
+        return pos;
+    }
+
+    /**
+     * Méthode qui lit un varint dans un tableau.
+     * @param src le tableau source.
+     * @param pos la position du premier octet du varint.
+     * @param fin la position qui suit le dernier octet lisible.
+     * @return la valeur dans les 32 bits de poids faible et la position suivante dans les 32 bits de poids fort,
+     * ou -1 si le varint est incomplet.
+     * @throws IOException si le varint est mal formé.
+     */
+    public static long lireVarint(byte[] src, int pos, int fin) throws IOException {
+        int valeur = 0;
+        for(int decalage = 0; decalage < 35; decalage += 7){
+            if(pos >= fin){
+                return -1;
+            }
+            byte b = src[pos++];
+            valeur |= (b & 0x7F) << decalage;
+            if((b & 0x80) == 0){
+                if(valeur < 0){
+                    throw new IOException("Varint négatif");
+                }
+                return ((long) pos << 32) | valeur;
+            }
+        }
+        throw new IOException("Varint trop long");
+    }
+
+    /**
+     * Méthode qui calcule la longueur de la trame qui commence à une position d'un tableau.
+     * @param src le tableau qui contient les octets reçus.
+     * @param debut la position du premier octet de la trame.
+     * @param fin la position qui suit le dernier octet reçu.
+     * @return la longueur totale de la trame si elle est complète, -1 sinon.
+     * @throws IOException si la trame est mal formée ou trop longue.
+     */
+    public static int longueurTrame(byte[] src, int debut, int fin) throws IOException {
+        if(debut >= fin){
+            return -1;
+        }
+        long lu = lireVarint(src, debut + 1, fin);
+        if(lu < 0){
+            return -1;
+        }
+        int contenu = (int) lu;
+        if(contenu > CONTENU_MAX){
+            throw new IOException("Trame trop longue : " + contenu);
+        }
+        int total = (int) (lu >>> 32) - debut + contenu;
+        return fin - debut >= total ? total : -1;
+    }
+
+    /**
+     * Méthode qui lit une trame complète dans un flux.
+     * @param in le flux d'entrée, de préférence avec tampon.
+     * @return les octets de la trame, null si le flux est terminé avant le début d'une trame.
+     * @throws IOException si la trame est mal formée, trop longue ou interrompue.
+     */
+    public static byte[] lire(InputStream in) throws IOException {
+        int type = in.read();
+        if(type < 0){
+            return null;
+        }
+        byte[] entete = new byte[6];
+        entete[0] = (byte) type;
+        int n = 1;
+        int b;
+        do {
+            b = in.read();
+            if(b < 0){
+                throw new EOFException();
+            }
+            if(n == entete.length){
+                throw new IOException("Varint trop long");
+            }
+            entete[n++] = (byte) b;
+        } while((b & 0x80) != 0);
+
+        int contenu = (int) lireVarint(entete, 1, n);
+        if(contenu > CONTENU_MAX){
+            throw new IOException("Trame trop longue : " + contenu);
+        }
+        byte[] trame = Arrays.copyOf(entete, n + contenu);
+        int lus = n;
+        while(lus < trame.length){
+            int r = in.read(trame, lus, trame.length - lus);
+            if(r < 0){
+                throw new EOFException();
+            }
+            lus += r;
+        }
+        return trame;
+    }
+}
@@ -0,0 +1,418 @@
+package Protocole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Commande analyse une ligne du protocole texte, ou une trame du protocole binaire, partagé par le serveur et le client.
+ * Une ligne a la forme !commande:champ:corps, le champ et le corps étant facultatifs.
+ * La commande est reconnue par son préfixe et les champs sont repérés par leurs positions dans la ligne,
+ * sans expression régulière ni tableau intermédiaire. Une instance est réutilisée pour chaque ligne reçue :
+ * elle n'est donc pas partagée entre plusieurs threads.
+ * Dans le protocole texte, les retours à la ligne d'un message sont remplacés par trois espaces ;
+ * dans le protocole binaire le corps est transmis tel quel.
+ * @see Binaire
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public final class Commande {
+
+    /**
+     * Les commandes du protocole, reconnues par leur préfixe.
+     */
+    public enum Type {
+        /**
+         * Message public : !msg:idEmetteur:message
+         */
+        MSG("!msg"),
+        /**
+         * Message privé : !pv:nomDestinataire:message vers le serveur, !pv:idEmetteur:message vers le client.
+         */
+        PV("!pv"),
+        /**
+         * Demande de la liste des clients connectés : !addcli
+         */
+        ADDCLI("!addcli"),
+        /**
+         * Arrivée d'un client : !newcli:id:nom
+         */
+        NEWCLI("!newcli"),
+        /**
+         * Départ d'un client : !rmcli:id
+         */
+        RMCLI("!rmcli"),
+        /**
+         * Destinataire d'un message privé inconnu : !errNoCli:nom
+         */
+        ERRNOCLI("!errNoCli"),
+        /**
+         * Fin de la connexion : !exit
+         */
+        EXIT("!exit"),
+        /**
+         * Première ligne d'un client qui négocie ses capacités : !hello:capacités:nom,
+         * et réponse du serveur : !hello:capacités acceptées
+         */
+        HELLO("!hello"),
+        /**
+         * Recherche dans l'historique : !search:page:mots vers le serveur,
+         * !search:nombreDeRésultats:mots en tête des résultats vers le client.
+         */
+        SEARCH("!search"),
+        /**
+         * Résultat d'une recherche : !result:séquence:message
+         */
+        RESULT("!result"),
+        /**
+         * Entrée dans un salon : !join:salon vers le serveur, !join:salon:id:nom vers les membres du salon.
+         */
+        JOIN("!join"),
+        /**
+         * Sortie d'un salon : !leave:salon vers le serveur, !leave:salon:id vers les membres du salon.
+         */
+        LEAVE("!leave"),
+        /**
+         * Message dans un salon : !room:salon:message vers le serveur, !room:salon:idEmetteur:message vers les membres.
+         */
+        ROOM("!room"),
+        /**
+         * Sonde de présence : !ping, envoyé par le serveur à un client resté silencieux, ou par un client au serveur.
+         */
+        PING("!ping"),
+        /**
+         * Réponse à une sonde de présence : !pong
+         */
+        PONG("!pong"),
+        /**
+         * Ligne qui ne correspond à aucune commande.
+         */
+        INCONNU("");
+
+        /**
+         * Le préfixe de la commande.
+         * @see String
+         */
+        public final String prefixe;
+
+        /**
+         * Méthode qui initialise une commande avec son préfixe.
+         * @param prefixe le préfixe de la commande.
+         */
+        Type(String prefixe){
+            this.prefixe = prefixe;
+        }
+    }
+
+    /**
+     * La séquence qui remplace un retour à la ligne dans le corps d'un message du protocole texte.
+     * @see String
+     */
+    public static final String RETOUR_TEXTE = "   ";
+
+    /**
+     * La ligne analysée, reconstruite à la demande pour une trame binaire.
+     * @see String
+     */
+    private String ligne;
+
+    /**
+     * Les octets de la trame binaire analysée, décompressée, null pour une ligne du protocole texte.
+     */
+    private byte[] octets;
+
+    /**
+     * Les octets de la trame binaire telle qu'elle a été reçue si elle était compressée, null sinon.
+     */
+    private byte[] octetsCompresses;
+
+    /**
+     * La commande de la ligne analysée.
+     * @see Type
+     */
+    private Type type;
+
+    /**
+     * La position du premier caractère (ou octet) du champ, -1 si la ligne n'a pas de champ.
+     * @see Integer
+     */
+    private int debutChamp;
+
+    /**
+     * La position qui suit le dernier caractère (ou octet) du champ.
+     * @see Integer
+     */
+    private int finChamp;
+
+    /**
+     * La position du premier caractère (ou octet) du corps, -1 si la ligne n'a pas de corps.
+     * @see Integer
+     */
+    private int debutCorps;
+
+    /**
+     * Méthode qui analyse une ligne du protocole et mémorise les positions de ses champs.
+     * @param ligne la ligne à analyser.
+     * @return cette instance, pour enchaîner les appels.
+     */
+    public Commande analyser(String ligne){
+        this.ligne = ligne;
+        this.octets = null;
+        this.octetsCompresses = null;
+        this.type = reconnaitre(ligne);
+
+        int p1 = ligne.indexOf(':');
+        if(p1 < 0){
+            debutChamp = -1;
+            finChamp = -1;
+            debutCorps = -1;
+            return this;
+        }
+        int p2 = ligne.indexOf(':', p1 + 1);
+        debutChamp = p1 + 1;
+        finChamp = p2 < 0 ? ligne.length() : p2;
+        debutCorps = p2 < 0 ? -1 : p2 + 1;
+        return this;
+    }
+
+    /**
+     * Méthode qui analyse une trame du protocole binaire, compressée ou non, et mémorise les positions de ses champs.
+     * @param recue les octets de la trame complète, qui ne doivent plus être modifiés ensuite.
+     * @return cette instance, pour enchaîner les appels.
+     * @throws IOException si la trame est mal formée.
+     */
+    public Commande decoder(byte[] recue) throws IOException {
+        byte[] trame = Binaire.decompresser(recue);
+        this.octets = trame;
+        this.octetsCompresses = trame != recue ? recue : null;
+        this.ligne = null;
+        this.type = Binaire.type(trame[0] & 0xFF);
+
+        long contenu = Binaire.lireVarint(trame, 1, trame.length);
+        long champ = contenu < 0 ? -1 : Binaire.lireVarint(trame, (int) (contenu >>> 32), trame.length);
+        if(champ < 0 || (int) (champ >>> 32) + (int) champ > trame.length){
+            throw new IOException("Trame mal formée");
+        }
+        debutChamp = (int) (champ >>> 32);
+        finChamp = debutChamp + (int) champ;
+        debutCorps = finChamp;
+        return this;
+    }
+
+    /**
+     * Méthode qui reconnaît la commande d'une ligne par son préfixe, sans allocation.
+     * @param ligne la ligne à analyser.
+     * @return le type de la commande.
+     */
+    private static Type reconnaitre(String ligne){
+        if(ligne.length() < 3 || ligne.charAt(0) != '!'){
+            return Type.INCONNU;
+        }
+        switch (ligne.charAt(1)) {
+            case 'm': return prefixe(ligne, Type.MSG);
+            case 'p':
+                switch (ligne.charAt(2)) {
+                    case 'i': return prefixe(ligne, Type.PING);
+                    case 'o': return prefixe(ligne, Type.PONG);
+                    default: return prefixe(ligne, Type.PV);
+                }
+            case 'a': return prefixe(ligne, Type.ADDCLI);
+            case 'h': return prefixe(ligne, Type.HELLO);
+            case 'n': return prefixe(ligne, Type.NEWCLI);
+            case 'r':
+                switch (ligne.charAt(2)) {
+                    case 'e': return prefixe(ligne, Type.RESULT);
+                    case 'o': return prefixe(ligne, Type.ROOM);
+                    default: return prefixe(ligne, Type.RMCLI);
+                }
+            case 'j': return prefixe(ligne, Type.JOIN);
+            case 'l': return prefixe(ligne, Type.LEAVE);
+            case 's': return prefixe(ligne, Type.SEARCH);
+            case 'e':
+                return ligne.startsWith(Type.EXIT.prefixe) ? Type.EXIT : prefixe(ligne, Type.ERRNOCLI);
+            default: return Type.INCONNU;
+        }
+    }
+
+    /**
+     * Méthode qui vérifie qu'une ligne commence par le préfixe d'une commande.
+     * @param ligne la ligne à analyser.
+     * @param type la commande attendue.
+     * @return la commande si la ligne commence par son préfixe, INCONNU sinon.
+     */
+    private static Type prefixe(String ligne, Type type){
+        return ligne.startsWith(type.prefixe) ? type : Type.INCONNU;
+    }
+
+    /**
+     * Méthode qui retourne la ligne analysée, dans le protocole texte.
+     * Pour une trame binaire, la ligne est reconstruite et les retours à la ligne du corps sont échappés.
+     * @return la ligne complète.
+     */
+    public String ligne(){
+        if(ligne == null){
+            StringBuilder sb = new StringBuilder(type.prefixe);
+            switch (type) {
+                case ADDCLI, EXIT, PING, PONG, INCONNU -> {
+                }
+                case RMCLI, ERRNOCLI -> sb.append(':').append(champ());
+                default -> sb.append(':').append(champ()).append(':').append(corpsTexte());
+            }
+            ligne = sb.toString();
+        }
+        return ligne;
+    }
+
+    /**
+     * Méthode qui indique si la commande provient d'une trame du protocole binaire.
+     * @return vrai pour une trame binaire, faux pour une ligne du protocole texte.
+     */
+    public boolean estBinaire(){
+        return octets != null;
+    }
+
+    /**
+     * Méthode qui retourne les octets de la trame binaire analysée, décompressée.
+     * @return les octets de la trame, null pour une ligne du protocole texte.
+     */
+    public byte[] octets(){
+        return octets;
+    }
+
+    /**
+     * Méthode qui retourne les octets de la trame binaire telle qu'elle a été reçue, si elle était compressée.
+     * @return les octets de la trame compressée, null si la trame reçue n'était pas compressée.
+     */
+    public byte[] octetsCompresses(){
+        return octetsCompresses;
+    }
+
+    /**
+     * Méthode qui retourne la position du premier octet du corps dans la trame binaire.
+     * Le corps s'étend jusqu'à la fin de la trame.
+     * @return la position du corps dans octets().
+     */
+    public int debutCorpsOctets(){
+        return debutCorps;
+    }
+
+    /**
+     * Méthode qui retourne la commande de la ligne analysée.
+     * @return le type de la commande.
+     */
+    public Type getType(){
+        return type;
+    }
+
+    /**
+     * Méthode qui indique si la ligne a un champ.
+     * @return vrai si la ligne contient au moins un ':', toujours vrai pour une trame binaire.
+     */
+    public boolean aChamp(){
+        return debutChamp >= 0;
+    }
+
+    /**
+     * Méthode qui indique si la ligne a un corps.
+     * @return vrai si la ligne contient au moins deux ':', toujours vrai pour une trame binaire.
+     */
+    public boolean aCorps(){
+        return debutCorps >= 0;
+    }
+
+    /**
+     * Méthode qui retourne le champ de la ligne (identifiant ou nom).
+     * @return le champ, chaîne vide si la ligne n'a pas de champ.
+     */
+    public String champ(){
+        if(octets != null){
+            return new String(octets, debutChamp, finChamp - debutChamp, StandardCharsets.UTF_8);
+        }
+        return aChamp() ? ligne.substring(debutChamp, finChamp) : "";
+    }
+
+    /**
+     * Méthode qui lit le champ de la ligne comme un entier, sans créer de sous-chaîne.
+     * @return la valeur du champ.
+     * @throws NumberFormatException si le champ n'est pas un entier.
+     */
+    public int champEntier(){
+        if(! aChamp()){
+            throw new NumberFormatException("Champ absent : " + ligne);
+        }
+        if(octets != null){
+            return entier(octets, debutChamp, finChamp);
+        }
+        return Integer.parseInt(ligne, debutChamp, finChamp, 10);
+    }
+
+    /**
+     * Méthode qui lit un entier décimal écrit en ASCII dans un tableau d'octets.
+     * @param src le tableau.
+     * @param debut la position du premier chiffre, ou du signe.
+     * @param fin la position qui suit le dernier chiffre.
+     * @return la valeur lue.
+     * @throws NumberFormatException si les octets ne forment pas un entier.
+     */
+    private static int entier(byte[] src, int debut, int fin){
+        boolean negatif = debut < fin && src[debut] == '-';
+        int i = negatif ? debut + 1 : debut;
+        if(i >= fin || fin - i > 10){
+            throw new NumberFormatException("Entier mal formé");
+        }
+        long valeur = 0;
+        for(; i < fin; i++){
+            int chiffre = src[i] - '0';
+            if(chiffre < 0 || chiffre > 9){
+                throw new NumberFormatException("Entier mal formé");
+            }
+            valeur = valeur * 10 + chiffre;
+        }
+        valeur = negatif ? -valeur : valeur;
+        if(valeur < Integer.MIN_VALUE || valeur > Integer.MAX_VALUE){
+            throw new NumberFormatException("Entier trop grand");
+        }
+        return (int) valeur;
+    }
+
+    /**
+     * Méthode qui retourne le corps de la ligne (message ou nom), c'est-à-dire tout ce qui suit le deuxième ':'.
+     * Le corps est retourné tel qu'il a été transmis : échappé dans le protocole texte, brut dans le protocole binaire.
+     * @return le corps, chaîne vide si la ligne n'a pas de corps.
+     */
+    public String corps(){
+        if(octets != null){
+            return new String(octets, debutCorps, octets.length - debutCorps, StandardCharsets.UTF_8);
+        }
+        return aCorps() ? ligne.substring(debutCorps) : "";
+    }
+
+    /**
+     * Méthode qui retourne le corps d'un message avec ses retours à la ligne, quel que soit le protocole.
+     * @return le corps, chaîne vide si la ligne n'a pas de corps.
+     */
+    public String corpsBrut(){
+        return octets != null ? corps() : corps().replace(RETOUR_TEXTE, "\n");
+    }
+
+    /**
+     * Méthode qui retourne le corps d'un message échappé pour le protocole texte, quel que soit le protocole.
+     * @return le corps, chaîne vide si la ligne n'a pas de corps.
+     */
+    public String corpsTexte(){
+        return octets != null ? corps().replace("\n", RETOUR_TEXTE) : corps();
+    }
+
+    /**
+     * Méthode qui ajoute le corps de la ligne à un StringBuilder, sans créer de sous-chaîne.
+     * @param sb le StringBuilder qui reçoit le corps.
+     * @return le StringBuilder, pour enchaîner les appels.
+     */
+    public StringBuilder ajouterCorps(StringBuilder sb){
+        if(octets != null){
+            sb.append(corpsTexte());
+        }else if(aCorps()){
+            sb.append(ligne, debutCorps, ligne.length());
+        }
+        return sb;
+    }
+}
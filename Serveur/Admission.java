@@ -0,0 +1,90 @@
+package Serveur;
+
+import Trace.Trace;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Admission limite le rythme des nouvelles connexions avec un seau à jetons.
+ * Le seau se remplit de parSeconde jetons par seconde, sans dépasser rafale jetons, et chaque connexion acceptée en consomme un.
+ * Quand le seau est vide, le thread d'acceptation attend le prochain jeton : les connexions suivantes restent
+ * dans la file d'attente du système (voir l'option --backlog), sans occuper le serveur.
+ * Après un redémarrage, les clients qui se reconnectent tous en même temps sont ainsi admis à un rythme que le serveur suit.
+ * Elle n'est utilisée que par le thread d'acceptation d'un moteur.
+ * @see MoteurThread
+ * @see MoteurNio
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Admission {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Admission.class);
+
+    /**
+     * Le nombre de jetons ajoutés par nanoseconde.
+     * @see Double
+     */
+    private final double parNs;
+
+    /**
+     * Le nombre maximum de jetons du seau.
+     * @see Double
+     */
+    private final double rafale;
+
+    /**
+     * Le nombre de jetons du seau lors du dernier calcul.
+     * @see Double
+     */
+    private double jetons;
+
+    /**
+     * L'instant du dernier calcul, en nanosecondes de System.nanoTime().
+     * @see Long
+     */
+    private long dernier;
+
+    /**
+     * Le nombre de connexions qui ont dû attendre un jeton.
+     * @see Long
+     */
+    private long retardees;
+
+    /**
+     * Méthode qui initialise un seau plein.
+     * @param parSeconde le nombre de connexions admises par seconde.
+     * @param rafale le nombre de connexions admises d'un coup quand le seau est plein, au moins 1.
+     */
+    public Admission(int parSeconde, int rafale){
+        this.parNs = parSeconde / 1e9;
+        this.rafale = Math.max(1, rafale);
+        this.jetons = this.rafale;
+        this.dernier = System.nanoTime();
+    }
+
+    /**
+     * Méthode qui attend qu'un jeton soit disponible, puis le consomme.
+     */
+    public void attendre(){
+        boolean retardee = false;
+        while(true){
+            long maintenant = System.nanoTime();
+            jetons = Math.min(rafale, jetons + (maintenant - dernier) * parNs);
+            dernier = maintenant;
+            if(jetons >= 1){
+                jetons -= 1;
+                return;
+            }
+            if(! retardee){
+                retardee = true;
+                if(retardees++ % 1000 == 0){
+                    TRACE.avertissement("Admission limitée : {} connexion(s) retardée(s)", retardees);
+                }
+            }
+            LockSupport.parkNanos((long) ((1 - jetons) / parNs));
+        }
+    }
+}
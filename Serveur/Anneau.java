@@ -0,0 +1,244 @@
+package Serveur;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * Anneau est un anneau de hachage cohérent qui attribue chaque salon nommé à un nœud propriétaire de la grappe.
+ * Chaque nœud occupe VIRTUELS points de l'anneau ; un salon appartient au nœud du premier point qui suit son hachage.
+ * L'ajout ou le retrait d'un nœud ne déplace que les salons des arcs qu'il gagne ou perd, soit environ 1/n des salons.
+ * Les recherches se font sans verrou sur un instantané non modifiable, publié en une seule écriture à chaque changement :
+ * un lecteur voit toujours des positions et des nœuds du même anneau.
+ * @see Grappe
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Anneau {
+
+    /**
+     * Le nombre de points de chaque nœud sur l'anneau.
+     * @see Integer
+     */
+    public static final int VIRTUELS = 128;
+
+    /**
+     * Un état non modifiable de l'anneau, lu sans verrou.
+     * @param positions les positions des points de l'anneau, triées.
+     * @param noeuds le nœud de chaque point, dans l'ordre des positions.
+     */
+    public record Instantane(long[] positions, int[] noeuds) {
+
+        /**
+         * Méthode qui retourne le nœud propriétaire d'un salon.
+         * @param salon le nom du salon.
+         * @return le numéro du nœud propriétaire.
+         */
+        public int proprietaire(String salon){
+            int i = Arrays.binarySearch(positions, hacher(salon));
+            if(i < 0){
+                i = -i - 1;
+            }
+            return noeuds[i == positions.length ? 0 : i];
+        }
+
+        /**
+         * Méthode qui indique si un nœud est dans l'anneau.
+         * @param noeud le numéro du nœud.
+         * @return vrai si le nœud a des points sur l'anneau.
+         */
+        public boolean contient(int noeud){
+            for(int autre : noeuds){
+                if(autre == noeud){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Méthode qui retourne les nœuds de l'anneau.
+         * @return les numéros des nœuds, triés.
+         */
+        public int[] noeudsDistincts(){
+            return Arrays.stream(noeuds).distinct().sorted().toArray();
+        }
+
+        /**
+         * Méthode qui retourne la part de l'anneau attribuée à un nœud, c'est-à-dire la part des salons qu'il possède.
+         * @param noeud le numéro du nœud.
+         * @return une part entre 0 et 1.
+         */
+        public double part(int noeud){
+            double total = 0;
+            for(int i = 0; i < positions.length; i++){
+                if(noeuds[i] == noeud){
+                    long arc = positions[i] - (i == 0 ? positions[positions.length - 1] : positions[i - 1]);
+                    total += (arc >>> 1) * 2.0;
+                }
+            }
+            return total / 0x1p64;
+        }
+    }
+
+    /**
+     * L'état courant de l'anneau, remplacé à chaque changement.
+     * @see Instantane
+     */
+    private volatile Instantane instantane;
+
+    /**
+     * Les points de l'anneau, modifiés sous le verrou de l'instance.
+     * @see TreeMap
+     */
+    private final TreeMap<Long, Integer> points;
+
+    /**
+     * Méthode qui initialise un anneau qui ne contient qu'un nœud.
+     * @param noeud le numéro du nœud.
+     */
+    public Anneau(int noeud){
+        this.points = new TreeMap<>();
+        placer(noeud);
+        publier();
+    }
+
+    /**
+     * Méthode qui ajoute les points d'un nœud à l'anneau.
+     * @param noeud le numéro du nœud.
+     * @return faux si le nœud était déjà dans l'anneau.
+     */
+    public synchronized boolean ajouter(int noeud){
+        if(instantane.contient(noeud)){
+            return false;
+        }
+        placer(noeud);
+        publier();
+        return true;
+    }
+
+    /**
+     * Méthode qui place les points d'un nœud. Elle doit être appelée sous le verrou de l'instance.
+     * @param noeud le numéro du nœud.
+     */
+    private void placer(int noeud){
+        for(int i = 0; i < VIRTUELS; i++){
+            points.put(melanger(((long) noeud << 32) | i), noeud);
+        }
+    }
+
+    /**
+     * Méthode qui retire les points d'un nœud de l'anneau.
+     * @param noeud le numéro du nœud.
+     * @return faux si le nœud n'était pas dans l'anneau.
+     */
+    public synchronized boolean retirer(int noeud){
+        if(! points.values().removeIf(n -> n == noeud)){
+            return false;
+        }
+        publier();
+        return true;
+    }
+
+    /**
+     * Méthode qui remplace l'instantané lu par les recherches. Elle doit être appelée sous le verrou de l'instance.
+     */
+    private void publier(){
+        long[] p = new long[points.size()];
+        int[] n = new int[points.size()];
+        int i = 0;
+        for(var point : points.entrySet()){
+            p[i] = point.getKey();
+            n[i++] = point.getValue();
+        }
+        instantane = new Instantane(p, n);
+    }
+
+    /**
+     * Méthode qui retourne l'état courant de l'anneau, qui ne change plus : le comparer à un état ultérieur
+     * donne les salons qui ont changé de propriétaire.
+     * @return l'instantané de l'anneau.
+     */
+    public Instantane instantane(){
+        return instantane;
+    }
+
+    /**
+     * Méthode qui retourne le nœud propriétaire d'un salon.
+     * @param salon le nom du salon.
+     * @return le numéro du nœud propriétaire.
+     */
+    public int proprietaire(String salon){
+        return instantane.proprietaire(salon);
+    }
+
+    /**
+     * Méthode qui indique si un nœud est dans l'anneau.
+     * @param noeud le numéro du nœud.
+     * @return vrai si le nœud a des points sur l'anneau.
+     */
+    public boolean contient(int noeud){
+        return instantane.contient(noeud);
+    }
+
+    /**
+     * Méthode qui retourne les nœuds de l'anneau.
+     * @return les numéros des nœuds, triés.
+     */
+    public int[] noeuds(){
+        return instantane.noeudsDistincts();
+    }
+
+    /**
+     * Méthode qui retourne la part de l'anneau attribuée à un nœud, c'est-à-dire la part des salons qu'il possède.
+     * @param noeud le numéro du nœud.
+     * @return une part entre 0 et 1.
+     */
+    public double part(int noeud){
+        return instantane.part(noeud);
+    }
+
+    /**
+     * Méthode qui décrit l'anneau : chaque nœud et sa part des salons.
+     * @return une chaîne de la forme "nœud 1 : 50.2 %, nœud 2 : 49.8 %".
+     */
+    @Override
+    public String toString(){
+        Instantane etat = instantane;
+        StringBuilder sb = new StringBuilder();
+        for(int noeud : etat.noeudsDistincts()){
+            if(sb.length() > 0){
+                sb.append(", ");
+            }
+            sb.append("nœud ").append(noeud).append(" : ").append(String.format("%.1f %%", etat.part(noeud) * 100));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Méthode qui calcule la position d'un salon sur l'anneau.
+     * @param salon le nom du salon.
+     * @return le hachage FNV-1a du nom, mélangé.
+     */
+    private static long hacher(String salon){
+        long h = 0xcbf29ce484222325L;
+        for(byte b : salon.getBytes(StandardCharsets.UTF_8)){
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        return melanger(h);
+    }
+
+    /**
+     * Méthode qui mélange les bits d'un entier pour répartir uniformément les positions (finaliseur de MurmurHash3).
+     * @param x l'entier.
+     * @return l'entier mélangé.
+     */
+    private static long melanger(long x){
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
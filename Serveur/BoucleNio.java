@@ -0,0 +1,200 @@
+package Serveur;
+
+import Trace.Trace;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * BoucleNio est une boucle d'événements du moteur NIO.
+ * Chaque boucle possède son propre Selector et gère les lectures et écritures d'un sous-ensemble des sessions.
+ * Les autres threads ne touchent jamais directement au Selector ni aux clés : ils déposent des tâches que la boucle exécute.
+ * Une erreur dans le traitement d'une session ferme cette session, jamais la boucle.
+ * Une connexion qui n'a pas envoyé sa poignée de main dans le délai configuré est fermée par la boucle.
+ * @see MoteurNio
+ * @see SessionNio
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class BoucleNio implements Runnable {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(BoucleNio.class);
+
+    /**
+     * Le sélecteur de cette boucle.
+     * @see Selector
+     */
+    private final Selector selector;
+
+    /**
+     * Les tâches à exécuter dans le thread de la boucle (enregistrement de canaux, demandes d'écriture).
+     * @see ConcurrentLinkedQueue
+     */
+    private final ConcurrentLinkedQueue<Runnable> taches;
+
+    /**
+     * Le pool de tampons partagé par les boucles.
+     * @see PoolTampons
+     */
+    private final PoolTampons pool;
+
+    /**
+     * Une connexion qui attend sa poignée de main, et l'instant limite de sa réception.
+     * @param session la session de la connexion.
+     * @param limite l'instant limite, en nanosecondes de System.nanoTime().
+     */
+    private record Attente(SessionNio session, long limite) {}
+
+    /**
+     * Les connexions qui attendent leur poignée de main, par instant limite croissant. Utilisée par le seul thread de la boucle.
+     * @see ArrayDeque
+     */
+    private final ArrayDeque<Attente> poignees;
+
+    /**
+     * Le délai maximum de réception de la poignée de main, en nanosecondes.
+     * @see Long
+     */
+    private final long poigneeNs;
+
+    /**
+     * Le thread de la boucle, connu une fois run() démarrée.
+     * @see Thread
+     */
+    private volatile Thread thread;
+
+    /**
+     * Méthode qui initialise une instance de la classe BoucleNio.
+     * @param pool le pool de tampons partagé par les boucles.
+     * @param poigneeMs le délai maximum de réception de la poignée de main, en millisecondes.
+     * @throws IOException si le Selector ne peut pas être ouvert.
+     */
+    public BoucleNio(PoolTampons pool, long poigneeMs) throws IOException {
+        this.selector = Selector.open();
+        this.taches = new ConcurrentLinkedQueue<>();
+        this.pool = pool;
+        this.poignees = new ArrayDeque<>();
+        this.poigneeNs = poigneeMs * 1_000_000L;
+    }
+
+    /**
+     * Méthode qui confie une nouvelle connexion à cette boucle.
+     * @param session la session de la connexion, dont le canal est non bloquant.
+     */
+    public void enregistrer(SessionNio session){
+        executer(() -> {
+            try {
+                SelectionKey cle = session.getCanal().register(selector, SelectionKey.OP_READ, session);
+                session.setCle(cle);
+                poignees.add(new Attente(session, System.nanoTime() + poigneeNs));
+            } catch (ClosedChannelException e) {
+                session.fermer();
+            }
+        });
+    }
+
+    /**
+     * Méthode qui demande à la boucle de surveiller l'écriture d'une session qui a des données en attente.
+     * @param session la session qui a des données à écrire.
+     */
+    public void demanderEcriture(SessionNio session){
+        executer(() -> {
+            SelectionKey cle = session.getCle();
+            if(cle != null && cle.isValid()){
+                cle.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        });
+    }
+
+    /**
+     * Méthode qui dépose une tâche à exécuter dans le thread de la boucle et réveille le Selector.
+     * @param tache la tâche à exécuter.
+     */
+    void executer(Runnable tache){
+        taches.offer(tache);
+        selector.wakeup();
+    }
+
+    /**
+     * Méthode qui indique si l'appelant est le thread de cette boucle.
+     * @return vrai si les clés de la boucle peuvent être modifiées directement.
+     */
+    boolean estDansLaBoucle(){
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Méthode exécutée par le thread de la boucle : attend les événements et les distribue aux sessions.
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        ByteBuffer lecture = pool.acquerir();
+
+        while(selector.isOpen()){
+            try {
+                Attente premiere = poignees.peek();
+                if(premiere == null){
+                    selector.select();
+                }else{
+                    selector.select(Math.max(1, (premiere.limite() - System.nanoTime()) / 1_000_000L));
+                }
+
+                Runnable tache;
+                while((tache = taches.poll()) != null){
+                    try {
+                        tache.run();
+                    } catch (RuntimeException e) {
+                        TRACE.erreur("Erreur d'une tâche de la boucle NIO", e);
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while(it.hasNext()){
+                    SelectionKey cle = it.next();
+                    it.remove();
+                    SessionNio session = (SessionNio) cle.attachment();
+                    try {
+                        if(cle.isValid() && cle.isReadable()){
+                            session.lire(lecture);
+                        }
+                        if(cle.isValid() && cle.isWritable()){
+                            session.ecrire();
+                        }
+                    } catch (CancelledKeyException e) {
+                        session.fermer();
+                    } catch (RuntimeException e) {
+                        TRACE.erreur("Erreur de la session {}, connexion fermée", session.getClientName(), e);
+                        session.fermer();
+                    }
+                }
+                expirerPoignees();
+            } catch (IOException e) {
+                TRACE.erreur("Erreur de la boucle NIO", e);
+            }
+        }
+        pool.liberer(lecture);
+    }
+
+    /**
+     * Méthode qui ferme les connexions dont le délai de poignée de main est écoulé sans qu'elles aient envoyé leur nom.
+     */
+    private void expirerPoignees(){
+        long maintenant = System.nanoTime();
+        Attente attente;
+        while((attente = poignees.peek()) != null && attente.limite() - maintenant <= 0){
+            poignees.poll();
+            if(attente.session().getClientName() == null){
+                TRACE.avertissement("Poignée de main trop lente : {}", attente.session().getCanal());
+                attente.session().fermer();
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package Serveur;
+
+import Trace.Niveau;
+import Trace.Trace;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Configuration regroupe les options de démarrage du serveur.
+ * Les options sont passées en ligne de commande sous la forme --cle=valeur, par exemple :
+ * java Serveur.Serveur --moteur=nio --port=54000 --boucles=4
+ * ou java Serveur.Serveur --moteur=thread --threads=virtuels
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Configuration {
+
+    /**
+     * La taille maximum d'un segment du journal, en mégaoctets : un segment doit rester adressable par un int.
+     * @see Long
+     */
+    public static final long SEGMENT_MO_MAX = 2047;
+
+    /**
+     * Le port d'écoute du serveur.
+     * @see Integer
+     */
+    public int port = 54000;
+
+    /**
+     * Le moteur réseau utilisé : "thread" (un ServeurThread par connexion) ou "nio" (boucles d'événements).
+     * @see String
+     */
+    public String moteur = "thread";
+
+    /**
+     * Le type de threads du moteur "thread" : "plateforme" (threads du système) ou "virtuels" (threads virtuels Java 21).
+     * @see String
+     */
+    public String threads = "plateforme";
+
+    /**
+     * Le nombre de boucles d'événements du moteur NIO.
+     * @see Integer
+     */
+    public int boucles = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * La longueur de la file des connexions en attente d'acceptation, dans le système.
+     * @see Integer
+     */
+    public int backlog = 1024;
+
+    /**
+     * Le nombre maximum de nouvelles connexions admises par seconde, 0 pour ne pas le limiter.
+     * @see Integer
+     */
+    public int admission = 0;
+
+    /**
+     * Le nombre de connexions admises d'un coup avant que la limite par seconde s'applique.
+     * @see Integer
+     */
+    public int admissionRafale = 100;
+
+    /**
+     * La durée pendant laquelle les arrivées et départs sont regroupés avant d'être annoncés, en millisecondes, 0 pour les annoncer tout de suite.
+     * @see Long
+     */
+    public long presenceMs = 0;
+
+    /**
+     * Le délai maximum de réception de la poignée de main d'un nouveau client, en millisecondes.
+     * @see Integer
+     */
+    public int poigneeMs = 5000;
+
+    /**
+     * Le nombre maximum de lignes en attente d'envoi pour chaque client.
+     * @see Integer
+     */
+    public int fileMax = 1024;
+
+    /**
+     * La politique appliquée quand la file d'un client est pleine : ancien, deconnecter ou bloquer (moteur thread seulement).
+     * @see FileSortante.Politique
+     */
+    public FileSortante.Politique saturation = FileSortante.Politique.ANCIEN;
+
+    /**
+     * Le délai maximum d'attente d'un émetteur avec la politique bloquer, en millisecondes.
+     * @see Long
+     */
+    public long blocageMs = 1000;
+
+    /**
+     * Le nombre maximum de lignes écrites vers un client avant de vider le flux.
+     * @see Integer
+     */
+    public int lotMax = 256;
+
+    /**
+     * Le temps maximum d'attente de lignes supplémentaires avant de vider le flux vers un client, en microsecondes.
+     * @see Long
+     */
+    public long latenceUs = 1000;
+
+    /**
+     * Le dossier du journal des messages, ou "aucun" pour ne pas journaliser.
+     * @see String
+     */
+    public String journal = "journal";
+
+    /**
+     * La durabilité des messages du journal ; MESSAGE n'est possible qu'avec le moteur thread.
+     * @see Journal.Durabilite
+     */
+    public Journal.Durabilite durabilite = Journal.Durabilite.LOT;
+
+    /**
+     * La taille maximum d'un segment du journal, en mégaoctets, entre 1 et SEGMENT_MO_MAX.
+     * @see Long
+     */
+    public long segmentMo = 64;
+
+    /**
+     * Le nombre maximum de messages du journal rejoués à un client qui arrive, 0 pour ne rien rejouer.
+     * @see Integer
+     */
+    public int historique = 50;
+
+    /**
+     * L'ancienneté maximum des messages rejoués en minutes, 0 pour ne pas la limiter.
+     * @see Long
+     */
+    public long historiqueMinutes = 0;
+
+    /**
+     * La mémoire maximum de l'index de recherche en mégaoctets, 0 pour désactiver la recherche.
+     * @see Long
+     */
+    public long rechercheMo = 64;
+
+    /**
+     * Le numéro de ce nœud dans la grappe, unique parmi les nœuds, entre 0 et Identifiants.NOEUD_MAX.
+     * Il est contenu dans les identifiants des clients du nœud.
+     * @see Integer
+     */
+    public int noeud = 0;
+
+    /**
+     * Le port sur lequel les autres nœuds de la grappe se connectent, 0 pour ne pas former de grappe.
+     * @see Integer
+     */
+    public int grappePort = 0;
+
+    /**
+     * Les adresses des autres nœuds de la grappe à appeler, sous la forme hote:port.
+     * @see List
+     */
+    public List<String> pairs = List.of();
+
+    /**
+     * Le port local sur lequel les métriques sont servies en HTTP, 0 pour ne pas les servir.
+     * @see Integer
+     */
+    public int metriquesPort = 0;
+
+    /**
+     * La période du résumé des métriques affiché dans la console, en secondes, 0 pour ne pas l'afficher.
+     * @see Long
+     */
+    public long metriquesS = 0;
+
+    /**
+     * Le silence d'un client au-delà duquel il reçoit un !ping, en secondes, 0 pour ne jamais sonder.
+     * @see Long
+     */
+    public long pingS = 30;
+
+    /**
+     * Le silence d'un client au-delà duquel sa connexion est fermée, en secondes, 0 pour ne jamais fermer.
+     * @see Long
+     */
+    public long inactifS = 90;
+
+    /**
+     * Le niveau minimum des traces écrites dans la console.
+     * @see Niveau
+     */
+    public Niveau traces = Trace.getNiveau();
+
+    /**
+     * Méthode qui crée la file sortante d'un nouveau client selon cette configuration.
+     * @return une file sortante vide.
+     */
+    public FileSortante nouvelleFileSortante(){
+        return new FileSortante(fileMax, saturation, blocageMs, lotMax, latenceUs * 1000);
+    }
+
+    /**
+     * Méthode qui crée la faucheuse des clients silencieux selon cette configuration, sans la démarrer.
+     * @param registre le registre des clients du serveur.
+     * @param metriques les métriques du serveur.
+     * @return la faucheuse, null si les clients silencieux ne sont jamais fermés.
+     */
+    public Faucheuse nouvelleFaucheuse(Registre registre, Metriques metriques){
+        return inactifS > 0 ? new Faucheuse(registre, metriques, pingS, inactifS) : null;
+    }
+
+    /**
+     * Méthode qui crée le seau à jetons qui limite le rythme des nouvelles connexions.
+     * @return le seau, null si les connexions ne sont pas limitées.
+     */
+    public Admission nouvelleAdmission(){
+        return admission > 0 ? new Admission(admission, admissionRafale) : null;
+    }
+
+    /**
+     * Méthode qui ouvre et démarre le journal des messages selon cette configuration.
+     * @return le journal démarré, null si la journalisation est désactivée.
+     * @throws IOException si le dossier du journal ne peut pas être ouvert.
+     */
+    public Journal ouvrirJournal() throws IOException {
+        if(journal.equals("aucun")){
+            return null;
+        }
+        Journal j = new Journal(Path.of(journal), durabilite, segmentMo << 20);
+        j.demarrer();
+        return j;
+    }
+
+    /**
+     * Méthode qui crée l'historique rejoué aux clients qui arrivent.
+     * @param lecteur le lecteur du journal des messages, ou null.
+     * @return l'historique, null si le journal ou l'historique est désactivé.
+     */
+    public Historique nouvelHistorique(LecteurJournal lecteur){
+        if(lecteur == null || historique <= 0){
+            return null;
+        }
+        return new Historique(lecteur, historique, historiqueMinutes);
+    }
+
+    /**
+     * Méthode qui crée et démarre l'index de recherche des messages.
+     * @param lecteur le lecteur du journal des messages, ou null.
+     * @return l'index de recherche démarré, null si le journal ou la recherche est désactivé.
+     */
+    public Recherche nouvelleRecherche(LecteurJournal lecteur){
+        if(lecteur == null || rechercheMo <= 0){
+            return null;
+        }
+        Recherche recherche = new Recherche(lecteur, rechercheMo << 20);
+        recherche.demarrer();
+        return recherche;
+    }
+
+    /**
+     * Méthode qui crée la grappe de ce nœud, qui doit être démarrée une fois ses écouteurs ajoutés.
+     * @param registre le registre des sessions.
+     * @param salons les membres des salons nommés.
+     * @return la grappe, null si la grappe est désactivée.
+     */
+    public Grappe nouvelleGrappe(Registre registre, Salons salons){
+        if(grappePort <= 0){
+            return null;
+        }
+        Grappe grappe = new Grappe(noeud, grappePort, pairs, registre, salons);
+        registre.ajouterEcouteur(grappe);
+        salons.ajouterEcouteur(grappe);
+        return grappe;
+    }
+
+    /**
+     * Méthode qui construit la configuration à partir des arguments de la ligne de commande.
+     * @param args un tableau de chaînes de caractères de la forme --cle=valeur.
+     * @return la configuration du serveur.
+     * @throws IllegalArgumentException si une option est inconnue ou mal formée.
+     */
+    public static Configuration lire(String[] args){
+        Configuration config = new Configuration();
+
+        for(String arg : args){
+            String[] split = arg.replaceFirst("^--", "").split("=", 2);
+            if(split.length != 2){
+                throw new IllegalArgumentException("Option mal formée : " + arg);
+            }
+            String valeur = split[1];
+
+            switch (split[0]) {
+                case "port" -> config.port = Integer.parseInt(valeur);
+                case "moteur" -> config.moteur = valeur;
+                case "threads" -> config.threads = valeur;
+                case "boucles" -> config.boucles = Integer.parseInt(valeur);
+                case "backlog" -> config.backlog = Integer.parseInt(valeur);
+                case "admission" -> config.admission = Integer.parseInt(valeur);
+                case "admission-rafale" -> config.admissionRafale = Integer.parseInt(valeur);
+                case "presence-ms" -> config.presenceMs = Long.parseLong(valeur);
+                case "poignee-ms" -> config.poigneeMs = Integer.parseInt(valeur);
+                case "file-max" -> config.fileMax = Integer.parseInt(valeur);
+                case "saturation" -> config.saturation = FileSortante.Politique.valueOf(valeur.toUpperCase());
+                case "blocage-ms" -> config.blocageMs = Long.parseLong(valeur);
+                case "lot-max" -> config.lotMax = Integer.parseInt(valeur);
+                case "latence-us" -> config.latenceUs = Long.parseLong(valeur);
+                case "journal" -> config.journal = valeur;
+                case "durabilite" -> config.durabilite = Journal.Durabilite.valueOf(valeur.toUpperCase());
+                case "segment-mo" -> config.segmentMo = Long.parseLong(valeur);
+                case "historique" -> config.historique = Integer.parseInt(valeur);
+                case "historique-minutes" -> config.historiqueMinutes = Long.parseLong(valeur);
+                case "recherche-mo" -> config.rechercheMo = Long.parseLong(valeur);
+                case "noeud" -> {
+                    config.noeud = Integer.parseInt(valeur);
+                    if(config.noeud < 0 || config.noeud > Identifiants.NOEUD_MAX){
+                        throw new IllegalArgumentException("Numéro de nœud hors de [0, " + Identifiants.NOEUD_MAX + "] : " + arg);
+                    }
+                }
+                case "grappe-port" -> config.grappePort = Integer.parseInt(valeur);
+                case "pairs" -> config.pairs = valeur.isEmpty() ? List.of() : List.of(valeur.split(","));
+                case "metriques-port" -> config.metriquesPort = Integer.parseInt(valeur);
+                case "metriques-s" -> config.metriquesS = Long.parseLong(valeur);
+                case "ping-s" -> config.pingS = Long.parseLong(valeur);
+                case "inactif-s" -> config.inactifS = Long.parseLong(valeur);
+                case "traces" -> config.traces = Niveau.lire(valeur);
+                default -> throw new IllegalArgumentException("Option inconnue : " + arg);
+            }
+        }
+        if(config.moteur.equals("nio") && config.saturation == FileSortante.Politique.BLOQUER){
+            throw new IllegalArgumentException("--saturation=bloquer ne fonctionne qu'avec --moteur=thread : "
+                    + "une boucle NIO qui attend une place dans une file est peut-être celle qui doit la vider");
+        }
+        if(config.moteur.equals("nio") && ! config.journal.equals("aucun") && config.durabilite == Journal.Durabilite.MESSAGE){
+            throw new IllegalArgumentException("--durabilite=message ne fonctionne qu'avec --moteur=thread : "
+                    + "une boucle NIO qui attend chaque fsync fait attendre tous ses clients");
+        }
+        if(config.segmentMo < 1 || config.segmentMo > SEGMENT_MO_MAX){
+            throw new IllegalArgumentException("--segment-mo doit être entre 1 et " + SEGMENT_MO_MAX
+                    + " : un segment entier est projeté en mémoire et lu avec des positions int");
+        }
+        return config;
+    }
+}
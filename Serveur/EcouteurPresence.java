@@ -0,0 +1,27 @@
+package Serveur;
+
+import java.util.List;
+
+/**
+ * EcouteurPresence est notifié par le Registre à chaque arrivée ou départ d'un client.
+ * Les notifications d'un même registre sont émises l'une après l'autre, dans l'ordre des changements.
+ * @see Registre
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public interface EcouteurPresence {
+
+    /**
+     * Méthode appelée quand un client rejoint le serveur.
+     * @param session la session du client qui vient d'arriver.
+     * @param presents la liste des sessions présentes après l'arrivée, le nouveau client compris.
+     */
+    void arrivee(Session session, List<Session> presents);
+
+    /**
+     * Méthode appelée quand un client quitte le serveur.
+     * @param session la session du client qui vient de partir.
+     * @param presents la liste des sessions présentes après le départ.
+     */
+    void depart(Session session, List<Session> presents);
+}
@@ -0,0 +1,222 @@
+package Serveur;
+
+import Protocole.Commande;
+import Trace.Trace;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Faucheuse ferme les connexions à moitié ouvertes : un client qui a disparu sans fermer sa connexion
+ * (ordinateur mis en veille, routeur NAT qui a oublié la connexion) n'envoie plus rien, et son thread de lecture attendrait indéfiniment.
+ * Un client resté silencieux pendant --ping-s secondes reçoit un !ping, auquel il répond par un !pong ;
+ * un client dont rien n'a été reçu pendant --inactif-s secondes est fermé, et son départ annoncé par un !rmcli.
+ * Les échéances sont rangées dans une roue temporelle : une case par seconde, tournée par un seul thread.
+ * Une session n'est pas déplacée à chaque commande reçue : la session note seulement l'instant de sa dernière lecture,
+ * et la faucheuse ne la regarde qu'à son échéance, pour la fermer, la sonder ou la replacer plus loin dans la roue.
+ * Chaque session est donc visitée au plus deux fois par période de --ping-s secondes, quel que soit son débit,
+ * et une session partie est simplement oubliée à son échéance.
+ * Seuls les clients qui ont négocié leurs capacités sont surveillés : un ancien client ne connaît pas !ping.
+ * @see Session
+ * @see Configuration
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Faucheuse implements EcouteurPresence {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Faucheuse.class);
+
+    /**
+     * La durée d'une case de la roue, en nanosecondes.
+     * @see Long
+     */
+    private static final long CASE_NS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * La sonde envoyée aux clients silencieux, encodée une seule fois.
+     * @see Trame
+     */
+    private static final Trame PING = Trame.de(Commande.Type.PING.prefixe);
+
+    /**
+     * Le registre des clients, qui dit si une session est toujours connectée.
+     * @see Registre
+     */
+    private final Registre registre;
+
+    /**
+     * Les métriques du serveur, qui comptent les sondes et les fermetures.
+     * @see Metriques
+     */
+    private final Metriques metriques;
+
+    /**
+     * Le silence au-delà duquel un client est sondé, en nanosecondes, 0 pour ne jamais sonder.
+     * @see Long
+     */
+    private final long pingNs;
+
+    /**
+     * Le silence au-delà duquel un client est fermé, en nanosecondes.
+     * @see Long
+     */
+    private final long inactifNs;
+
+    /**
+     * Les cases de la roue : les sessions dont l'échéance tombe dans chaque seconde. Utilisées par le seul thread de la faucheuse.
+     * @see ArrayList
+     */
+    private final List<ArrayList<Session>> roue;
+
+    /**
+     * La case libre échangée avec la case visitée, pour replacer des sessions pendant la visite.
+     * @see ArrayList
+     */
+    private ArrayList<Session> libre;
+
+    /**
+     * Le numéro de la prochaine case à visiter, qui croît d'une unité par seconde.
+     * @see Long
+     */
+    private long tour;
+
+    /**
+     * Les sessions arrivées depuis la dernière visite, déposées par les threads des sessions.
+     * @see ConcurrentLinkedQueue
+     */
+    private final ConcurrentLinkedQueue<Session> arrivees;
+
+    /**
+     * Méthode qui initialise la faucheuse, sans la démarrer.
+     * @param registre le registre des clients du serveur.
+     * @param metriques les métriques du serveur.
+     * @param pingS le silence au-delà duquel un client est sondé, en secondes, 0 pour ne jamais sonder.
+     * @param inactifS le silence au-delà duquel un client est fermé, en secondes.
+     * @throws IllegalArgumentException si inactifS n'est pas positif.
+     */
+    public Faucheuse(Registre registre, Metriques metriques, long pingS, long inactifS){
+        if(inactifS <= 0){
+            throw new IllegalArgumentException("Délai d'inactivité invalide : " + inactifS);
+        }
+        this.registre = registre;
+        this.metriques = metriques;
+        this.pingNs = pingS > 0 && pingS < inactifS ? TimeUnit.SECONDS.toNanos(pingS) : 0;
+        this.inactifNs = TimeUnit.SECONDS.toNanos(inactifS);
+
+        int cases = Integer.highestOneBit((int) Math.min(inactifS + 2, 1 << 20) * 2 - 1);
+        this.roue = new ArrayList<>(cases);
+        for(int i = 0; i < cases; i++){
+            roue.add(new ArrayList<>());
+        }
+        this.libre = new ArrayList<>();
+        this.arrivees = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Méthode qui démarre le thread de la faucheuse, qui tourne la roue d'une case chaque seconde.
+     */
+    public void demarrer(){
+        ScheduledExecutorService planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "faucheuse");
+            t.setDaemon(true);
+            return t;
+        });
+        planificateur.scheduleAtFixedRate(this::tourner, CASE_NS, CASE_NS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Méthode appelée par le registre à l'arrivée d'un client : un client de ce nœud qui répond aux !ping
+     * est placé dans la roue au prochain tour.
+     * @param session la session du client qui vient d'arriver.
+     * @param presents les sessions présentes.
+     */
+    @Override
+    public void arrivee(Session session, List<Session> presents){
+        if(! session.estDistante() && session.repondAuPing()){
+            arrivees.add(session);
+        }
+    }
+
+    /**
+     * Méthode appelée par le registre au départ d'un client, qui ne fait rien : la session est oubliée
+     * quand la roue arrive à son échéance, la retirer de sa case coûterait une recherche.
+     * @param session la session du client qui vient de partir.
+     * @param presents les sessions encore présentes.
+     */
+    @Override
+    public void depart(Session session, List<Session> presents){
+    }
+
+    /**
+     * Méthode exécutée chaque seconde par le thread de la faucheuse : place les sessions arrivées dans la roue,
+     * puis visite les sessions de la case courante.
+     */
+    private void tourner(){
+        long maintenant = System.nanoTime();
+        Session session;
+        while((session = arrivees.poll()) != null){
+            planifier(session, session.getDerniereActivite() + (pingNs > 0 ? pingNs : inactifNs), maintenant);
+        }
+
+        int indice = (int) (tour & (roue.size() - 1));
+        ArrayList<Session> echues = roue.get(indice);
+        roue.set(indice, libre);
+        tour++;
+        for(Session echue : echues){
+            try {
+                visiter(echue, maintenant);
+            } catch (RuntimeException e) {
+                TRACE.erreur("Erreur de la faucheuse", e);
+            }
+        }
+        echues.clear();
+        libre = echues;
+    }
+
+    /**
+     * Méthode qui décide du sort d'une session arrivée à échéance : oubliée si elle est partie,
+     * fermée si elle est silencieuse depuis trop longtemps, sondée si elle est silencieuse depuis --ping-s secondes,
+     * et replacée dans la roue à sa prochaine échéance sinon.
+     * Le !ping est annoncé sans jamais attendre : un client dont la file est pleine est déconnecté au lieu de bloquer la faucheuse.
+     * @param session la session.
+     * @param maintenant l'instant de la visite, en nanosecondes de System.nanoTime().
+     */
+    private void visiter(Session session, long maintenant){
+        if(registre.parId(session.getClientId()) != session){
+            return;
+        }
+        long derniere = session.getDerniereActivite();
+        long silence = maintenant - derniere;
+        if(silence >= inactifNs){
+            TRACE.info("Client inactif déconnecté : {} (silencieux depuis {} s)", session.getClientName(),
+                    TimeUnit.NANOSECONDS.toSeconds(silence));
+            metriques.inactif();
+            session.fermer();
+        }else if(pingNs > 0 && silence >= pingNs){
+            session.annoncer(PING);
+            metriques.ping();
+            planifier(session, derniere + inactifNs, maintenant);
+        }else{
+            planifier(session, derniere + (pingNs > 0 ? pingNs : inactifNs), maintenant);
+        }
+    }
+
+    /**
+     * Méthode qui range une session dans la case de son échéance, au moins à la case suivante.
+     * @param session la session.
+     * @param echeance l'instant de sa prochaine visite, en nanosecondes de System.nanoTime().
+     * @param maintenant l'instant présent, en nanosecondes de System.nanoTime().
+     */
+    private void planifier(Session session, long echeance, long maintenant){
+        long attente = (echeance - maintenant + CASE_NS - 1) / CASE_NS;
+        long cases = Math.max(0, Math.min(attente, roue.size() - 1));
+        roue.get((int) ((tour + cases) & (roue.size() - 1))).add(session);
+    }
+}
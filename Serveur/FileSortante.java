@@ -0,0 +1,354 @@
+package Serveur;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FileSortante est la file bornée des lignes en attente d'envoi vers un client, déjà encodées en trames.
+ * Chaque session possède sa propre file, vidée par son propre écrivain : un client lent ne bloque
+ * donc plus le thread qui diffuse un message. Quand la file est pleine, la politique choisie
+ * au démarrage décide du sort de la nouvelle ligne.
+ * L'écrivain retire les lignes par lots pour n'écrire et ne vider le flux qu'une fois par lot.
+ * @see Session
+ * @see Politique
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class FileSortante {
+
+    /**
+     * Politique appliquée quand la file d'un client est pleine.
+     */
+    public enum Politique {
+        /**
+         * La ligne la plus ancienne de la file est supprimée pour faire de la place.
+         */
+        ANCIEN,
+        /**
+         * Le client trop lent est déconnecté.
+         */
+        DECONNECTER,
+        /**
+         * L'émetteur attend qu'une place se libère, pendant un délai maximum au-delà duquel le client est déconnecté.
+         */
+        BLOQUER
+    }
+
+    /**
+     * Les trames en attente d'envoi.
+     * @see ArrayDeque
+     * @see Trame
+     */
+    private final ArrayDeque<Trame> file;
+
+    /**
+     * Le nombre maximum de lignes en attente.
+     * @see Integer
+     */
+    private final int capacite;
+
+    /**
+     * La politique appliquée quand la file est pleine.
+     * @see Politique
+     */
+    private final Politique politique;
+
+    /**
+     * Le délai maximum d'attente d'un émetteur avec la politique BLOQUER, en millisecondes.
+     * @see Long
+     */
+    private final long blocageMs;
+
+    /**
+     * Le nombre maximum de lignes retirées en un seul lot.
+     * @see Integer
+     */
+    private final int lotMax;
+
+    /**
+     * Le temps maximum d'attente de lignes supplémentaires pour compléter un lot, en nanosecondes.
+     * @see Long
+     */
+    private final long latenceNs;
+
+    /**
+     * Le verrou qui protège la file.
+     * @see ReentrantLock
+     */
+    private final ReentrantLock verrou;
+
+    /**
+     * Condition signalée quand une ligne est ajoutée ou que la file est fermée.
+     * @see Condition
+     */
+    private final Condition nonVide;
+
+    /**
+     * Condition signalée quand une place se libère ou que la file est fermée.
+     * @see Condition
+     */
+    private final Condition nonPleine;
+
+    /**
+     * Vrai si la file est fermée : plus aucune ligne n'est acceptée.
+     */
+    private boolean fermee;
+
+    /**
+     * Le nombre de lignes acceptées dans la file.
+     * @see Long
+     */
+    private volatile long enfilees;
+
+    /**
+     * Le nombre de lignes perdues parce que la file était pleine.
+     * @see Long
+     */
+    private volatile long perdues;
+
+    /**
+     * Le nombre de vidages du flux vers le client.
+     * @see Long
+     */
+    private volatile long vidages;
+
+    /**
+     * Le nombre de lignes écrites par l'ensemble des vidages.
+     * @see Long
+     */
+    private volatile long lignesVidees;
+
+    /**
+     * Méthode qui initialise une file vide.
+     * @param capacite le nombre maximum de lignes en attente.
+     * @param politique la politique appliquée quand la file est pleine.
+     * @param blocageMs le délai maximum d'attente avec la politique BLOQUER, en millisecondes.
+     * @param lotMax le nombre maximum de lignes retirées en un seul lot.
+     * @param latenceNs le temps maximum d'attente de lignes supplémentaires pour compléter un lot, en nanosecondes.
+     */
+    public FileSortante(int capacite, Politique politique, long blocageMs, int lotMax, long latenceNs){
+        this.file = new ArrayDeque<>();
+        this.capacite = capacite;
+        this.politique = politique;
+        this.blocageMs = blocageMs;
+        this.lotMax = lotMax;
+        this.latenceNs = latenceNs;
+        this.verrou = new ReentrantLock();
+        this.nonVide = verrou.newCondition();
+        this.nonPleine = verrou.newCondition();
+        this.fermee = false;
+    }
+
+    /**
+     * Méthode qui ajoute une trame à la file en appliquant la politique si elle est pleine.
+     * @param trame la trame à envoyer, partagée avec les autres destinataires.
+     * @return faux si le client doit être déconnecté parce qu'il ne suit pas, vrai sinon.
+     */
+    public boolean enfiler(Trame trame){
+        return enfiler(trame, true);
+    }
+
+    /**
+     * Méthode qui ajoute une trame à la file en appliquant la politique si elle est pleine.
+     * Sans attente, la politique BLOQUER se comporte comme DECONNECTER : l'appelant tient un verrou partagé
+     * ou fait tourner une boucle d'événements, et ne doit pas attendre un client.
+     * @param trame la trame à envoyer, partagée avec les autres destinataires.
+     * @param attendre faux pour ne jamais attendre, même avec la politique BLOQUER.
+     * @return faux si le client doit être déconnecté parce qu'il ne suit pas, vrai sinon.
+     */
+    public boolean enfiler(Trame trame, boolean attendre){
+        verrou.lock();
+        try {
+            if(fermee){
+                return true;
+            }
+            if(file.size() >= capacite){
+                switch (politique) {
+                    case ANCIEN -> {
+                        file.poll();
+                        perdues++;
+                    }
+                    case DECONNECTER -> {
+                        perdues++;
+                        return false;
+                    }
+                    case BLOQUER -> {
+                        if(! attendre || ! attendrePlace()){
+                            perdues++;
+                            return false;
+                        }
+                        if(fermee){
+                            return true;
+                        }
+                    }
+                }
+            }
+            file.offer(trame);
+            enfilees++;
+            nonVide.signal();
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui attend qu'une place se libère dans la file, au plus blocageMs millisecondes.
+     * Elle doit être appelée avec le verrou.
+     * @return vrai si une place s'est libérée ou si la file a été fermée pendant l'attente.
+     */
+    private boolean attendrePlace(){
+        long reste = TimeUnit.MILLISECONDS.toNanos(blocageMs);
+        try {
+            while(file.size() >= capacite && ! fermee){
+                if(reste <= 0){
+                    return false;
+                }
+                reste = nonPleine.awaitNanos(reste);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Méthode qui retire un lot de lignes en attendant qu'il y en ait au moins une.
+     * Après la première ligne, elle attend au plus la latence configurée que d'autres lignes arrivent,
+     * jusqu'à lotMax lignes.
+     * @param lot la liste, vide, qui reçoit les trames retirées.
+     * @return le nombre de lignes retirées, 0 si la file est fermée.
+     * @throws InterruptedException si le thread est interrompu pendant l'attente.
+     */
+    public int prendreLot(List<Trame> lot) throws InterruptedException {
+        verrou.lock();
+        try {
+            while(file.isEmpty() && ! fermee){
+                nonVide.await();
+            }
+            long reste = latenceNs;
+            while(! fermee){
+                while(lot.size() < lotMax && ! file.isEmpty()){
+                    lot.add(file.poll());
+                }
+                if(lot.size() >= lotMax || reste <= 0){
+                    break;
+                }
+                reste = nonVide.awaitNanos(reste);
+            }
+            if(fermee){
+                lot.clear();
+                return 0;
+            }
+            nonPleine.signalAll();
+            return lot.size();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retire la prochaine trame sans attendre.
+     * @return la prochaine trame, null si la file est vide ou fermée.
+     */
+    public Trame retirer(){
+        verrou.lock();
+        try {
+            if(fermee || file.isEmpty()){
+                return null;
+            }
+            nonPleine.signalAll();
+            return file.poll();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui ferme la file, vide les lignes en attente et réveille les threads qui attendent.
+     */
+    public void fermer(){
+        verrou.lock();
+        try {
+            fermee = true;
+            file.clear();
+            nonVide.signalAll();
+            nonPleine.signalAll();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retourne le nombre de lignes en attente.
+     * @return le nombre de lignes en attente.
+     */
+    public int profondeur(){
+        verrou.lock();
+        try {
+            return file.size();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retourne le nombre de lignes qui peuvent encore être ajoutées sans saturer la file.
+     * @return le nombre de places libres.
+     */
+    public int placesLibres(){
+        verrou.lock();
+        try {
+            return capacite - file.size();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui enregistre un vidage du flux vers le client.
+     * Elle n'est appelée que par l'écrivain de la session.
+     * @param lignes le nombre de lignes écrites par ce vidage.
+     */
+    public void noterVidage(int lignes){
+        vidages++;
+        lignesVidees += lignes;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de vidages du flux vers le client.
+     * @return le nombre de vidages.
+     */
+    public long getVidages(){
+        return vidages;
+    }
+
+    /**
+     * Méthode qui retourne le nombre moyen de lignes écrites par vidage.
+     * @return le nombre moyen de lignes par vidage, 0 si aucun vidage.
+     */
+    public double getLignesParVidage(){
+        long v = vidages;
+        return v == 0 ? 0 : (double) lignesVidees / v;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de lignes acceptées depuis la création de la file.
+     * @return le nombre de lignes acceptées.
+     */
+    public long getEnfilees(){
+        return enfilees;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de lignes perdues parce que la file était pleine.
+     * @return le nombre de lignes perdues.
+     */
+    public long getPerdues(){
+        return perdues;
+    }
+}
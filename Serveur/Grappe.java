@@ -0,0 +1,680 @@
+package Serveur;
+
+import Trace.Niveau;
+import Trace.Trace;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Grappe relie ce serveur aux autres nœuds de la grappe par des connexions TCP directes, une par nœud.
+ * Chaque nœud annonce aux autres les arrivées et départs de ses propres clients : ils apparaissent dans le registre
+ * des autres nœuds comme des sessions distantes, ce qui rend la présence commune à toute la grappe.
+ * Un !msg est transmis une seule fois à chaque nœud, qui le remet à ses propres clients ;
+ * un message adressé à une session distante (!pv, réponse à un !errNoCli...) n'est transmis qu'au nœud du destinataire.
+ * Chaque salon nommé appartient à un nœud, choisi par l'anneau de hachage cohérent des nœuds reliés.
+ * Un nœud abonne le propriétaire d'un salon dès qu'il a un membre local du salon, et le désabonne quand il n'en a plus ;
+ * un !room est envoyé par son nœud au propriétaire, qui le transmet aux seuls nœuds abonnés.
+ * Les trames échangées sont de la forme [longueur : int][type : 1 octet][identifiant : int][suite], où la suite dépend du type :
+ * ARRIVEE (le nom du client), DEPART (rien), DIFFUSION et ENVOI (la trame binaire du client),
+ * PUBLIER et SALON ([longueur du nom : short][nom du salon][trame binaire du client]),
+ * ABONNER et DESABONNER ([longueur du nom : short][nom du salon]).
+ * Deux nœuds peuvent s'appeler en même temps : ils gardent tous les deux la connexion ouverte par le plus petit numéro.
+ * @see Lien
+ * @see SessionDistante
+ * @see Anneau
+ * @see Routeur
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Grappe implements EcouteurPresence, Salons.EcouteurSalon {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Grappe.class);
+
+    /**
+     * EcouteurGrappe reçoit les messages que les autres nœuds transmettent à ce nœud.
+     */
+    public interface EcouteurGrappe {
+
+        /**
+         * Méthode appelée à la réception d'un message diffusé à tous les clients par un autre nœud.
+         * @param source l'identifiant du client qui a émis le message.
+         * @param trame la trame binaire du message, à remettre aux clients de ce nœud.
+         */
+        void diffusion(int source, byte[] trame);
+
+        /**
+         * Méthode appelée à la réception d'un message de salon par un autre nœud.
+         * @param source l'identifiant du client qui a émis le message.
+         * @param salon le nom du salon.
+         * @param trame la trame binaire du message, à remettre aux membres du salon sur ce nœud.
+         */
+        void salon(int source, String salon, byte[] trame);
+    }
+
+    /**
+     * Le type d'une trame qui annonce l'arrivée d'un client.
+     */
+    private static final byte ARRIVEE = 1;
+
+    /**
+     * Le type d'une trame qui annonce le départ d'un client.
+     */
+    private static final byte DEPART = 2;
+
+    /**
+     * Le type d'une trame diffusée à tous les clients.
+     */
+    private static final byte DIFFUSION = 3;
+
+    /**
+     * Le type d'une trame adressée à un seul client.
+     */
+    private static final byte ENVOI = 4;
+
+    /**
+     * Le type d'une trame adressée par le propriétaire d'un salon aux membres du salon sur un nœud abonné.
+     */
+    private static final byte SALON = 5;
+
+    /**
+     * Le type d'une trame envoyée au propriétaire d'un salon pour qu'il la transmette aux nœuds abonnés.
+     */
+    private static final byte PUBLIER = 6;
+
+    /**
+     * Le type d'une trame qui abonne un nœud aux messages d'un salon auprès de son propriétaire.
+     */
+    private static final byte ABONNER = 7;
+
+    /**
+     * Le type d'une trame qui désabonne un nœud des messages d'un salon.
+     */
+    private static final byte DESABONNER = 8;
+
+    /**
+     * Le délai entre deux tentatives de connexion à un nœud, en millisecondes.
+     * @see Long
+     */
+    private static final long RECONNEXION_MS = 1000;
+
+    /**
+     * Le numéro de ce nœud, unique dans la grappe.
+     * @see Integer
+     */
+    private final int noeud;
+
+    /**
+     * Le port sur lequel ce nœud accepte les connexions des autres nœuds.
+     * @see Integer
+     */
+    private final int port;
+
+    /**
+     * Les adresses des autres nœuds à appeler, sous la forme hote:port.
+     * @see List
+     */
+    private final List<String> pairs;
+
+    /**
+     * Le registre des sessions, locales et distantes.
+     * @see Registre
+     */
+    private final Registre registre;
+
+    /**
+     * Les membres des salons nommés sur ce nœud.
+     * @see Salons
+     */
+    private final Salons salons;
+
+    /**
+     * L'anneau de hachage cohérent de ce nœud et des nœuds reliés.
+     * @see Anneau
+     */
+    private final Anneau anneau;
+
+    /**
+     * Les nœuds abonnés à chaque salon dont ce nœud est ou a été propriétaire.
+     * @see ConcurrentHashMap
+     */
+    private final ConcurrentHashMap<String, Set<Integer>> abonnes;
+
+    /**
+     * Les liens ouverts, indexés par numéro de nœud. Les changements sont faits sous le verrou de cette table.
+     * @see ConcurrentHashMap
+     * @see Lien
+     */
+    private final ConcurrentHashMap<Integer, Lien> liens;
+
+    /**
+     * Les écouteurs des messages transmis par les autres nœuds.
+     * @see CopyOnWriteArrayList
+     * @see EcouteurGrappe
+     */
+    private final CopyOnWriteArrayList<EcouteurGrappe> ecouteurs;
+
+    /**
+     * Méthode qui initialise la grappe.
+     * Elle doit ensuite être ajoutée comme écouteur de présence du registre et comme écouteur des salons, puis démarrée.
+     * @param noeud le numéro de ce nœud.
+     * @param port le port d'écoute des autres nœuds.
+     * @param pairs les adresses des autres nœuds, sous la forme hote:port.
+     * @param registre le registre des sessions.
+     * @param salons les membres des salons nommés sur ce nœud.
+     */
+    public Grappe(int noeud, int port, List<String> pairs, Registre registre, Salons salons){
+        this.noeud = noeud;
+        this.port = port;
+        this.pairs = pairs;
+        this.registre = registre;
+        this.salons = salons;
+        this.anneau = new Anneau(noeud);
+        this.abonnes = new ConcurrentHashMap<>();
+        this.liens = new ConcurrentHashMap<>();
+        this.ecouteurs = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Méthode qui ajoute un écouteur des messages transmis par les autres nœuds.
+     * @param ecouteur l'écouteur à notifier.
+     */
+    public void ajouterEcouteur(EcouteurGrappe ecouteur){
+        ecouteurs.add(ecouteur);
+    }
+
+    /**
+     * Méthode qui ouvre le port de la grappe et démarre les threads d'acceptation et d'appel des autres nœuds.
+     * @throws IOException si le port de la grappe ne peut pas être ouvert.
+     */
+    public void demarrer() throws IOException {
+        ServerSocket ecoute = new ServerSocket(port);
+        demarrer("grappe-accepter", () -> accepter(ecoute));
+        for(String pair : pairs){
+            demarrer("grappe-appeler-" + pair, () -> appeler(pair));
+        }
+        if(TRACE.estActif(Niveau.INFO)){
+            TRACE.info("Nœud " + noeud + " : grappe sur le port " + port + ", pairs " + pairs);
+        }
+    }
+
+    /**
+     * Méthode qui démarre un thread démon.
+     * @param nom le nom du thread.
+     * @param tache la tâche du thread.
+     */
+    private static void demarrer(String nom, Runnable tache){
+        Thread t = new Thread(tache, nom);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Méthode exécutée par le thread d'acceptation : chaque connexion d'un autre nœud est servie par son propre thread.
+     * @param ecoute la socket d'écoute de la grappe.
+     */
+    private void accepter(ServerSocket ecoute){
+        while(true){
+            try {
+                Socket socket = ecoute.accept();
+                demarrer("grappe-lien", () -> servir(socket, false));
+            } catch (IOException e) {
+                TRACE.erreur("Erreur d'acceptation d'un nœud", e);
+            }
+        }
+    }
+
+    /**
+     * Méthode exécutée par le thread d'appel d'un nœud : elle le rappelle chaque fois que son lien est fermé.
+     * @param pair l'adresse du nœud, sous la forme hote:port.
+     */
+    private void appeler(String pair){
+        int sep = pair.lastIndexOf(':');
+        InetSocketAddress adresse = new InetSocketAddress(pair.substring(0, sep), Integer.parseInt(pair.substring(sep + 1)));
+        while(true){
+            try {
+                Socket socket = new Socket();
+                socket.connect(adresse, (int) RECONNEXION_MS);
+                servir(socket, true);
+            } catch (IOException e) {
+                // Le nœud n'est pas encore démarré, ou il vient de s'arrêter.
+            }
+            try {
+                Thread.sleep(RECONNEXION_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Méthode qui établit un lien sur une connexion ouverte puis traite ses trames jusqu'à sa fermeture.
+     * @param socket la connexion avec l'autre nœud.
+     * @param sortant vrai si ce nœud a ouvert la connexion.
+     */
+    private void servir(Socket socket, boolean sortant){
+        Lien lien;
+        int autre;
+        try {
+            lien = new Lien(socket, sortant);
+            autre = lien.saluer(noeud);
+        } catch (IOException e) {
+            fermer(socket);
+            return;
+        }
+        if(autre == noeud || ! installer(lien)){
+            lien.fermer();
+            return;
+        }
+        TRACE.info("Nœud {} relié ({})", autre, sortant ? "sortant" : "entrant");
+
+        try {
+            while(true){
+                recevoir(lien, lien.lire());
+            }
+        } catch (IOException e) {
+            // Fin de la connexion.
+        } finally {
+            lien.fermer();
+            synchronized (liens){
+                if(liens.remove(autre, lien)){
+                    TRACE.avertissement("Nœud {} perdu", autre);
+                    for(Set<Integer> noeuds : abonnes.values()){
+                        noeuds.remove(autre);
+                    }
+                    Anneau.Instantane avant = anneau.instantane();
+                    anneau.retirer(autre);
+                    redistribuer(avant);
+                }
+                oublier(lien);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui installe un nouveau lien, sauf si un lien préféré vers le même nœud existe déjà.
+     * Les clients de ce nœud sont annoncés sur le nouveau lien sous le verrou du registre,
+     * pour qu'aucune arrivée ou départ ne soit perdu ou annoncé deux fois.
+     * @param lien le lien dont l'échange des numéros est terminé.
+     * @return faux si le lien doit être fermé.
+     */
+    private boolean installer(Lien lien){
+        synchronized (liens){
+            Lien ancien = liens.get(lien.getNoeud());
+            if(ancien != null){
+                if(! prefere(lien)){
+                    return false;
+                }
+                ancien.fermer();
+                oublier(ancien);
+            }
+            lien.demarrer();
+            registre.instantane(presents -> {
+                liens.put(lien.getNoeud(), lien);
+                for(Session session : presents){
+                    if(! session.estDistante()){
+                        lien.envoyer(arrivee(session));
+                    }
+                }
+            });
+            Anneau.Instantane avant = anneau.instantane();
+            anneau.ajouter(lien.getNoeud());
+            redistribuer(avant);
+            return true;
+        }
+    }
+
+    /**
+     * Méthode appelée après chaque changement de l'anneau : abonne le propriétaire actuel de chaque salon qui a des membres sur ce nœud,
+     * et désabonne l'ancien propriétaire de chaque salon qui a changé de propriétaire, pour qu'il ne lui transmette plus ses messages.
+     * Un abonnement déjà connu du propriétaire est sans effet.
+     * Elle doit être appelée sous le verrou de la table des liens.
+     * @param avant l'état de l'anneau avant le changement.
+     */
+    private void redistribuer(Anneau.Instantane avant){
+        TRACE.info("Anneau : {}", anneau);
+        Anneau.Instantane apres = anneau.instantane();
+        for(String salon : salons.noms()){
+            int ancien = avant.proprietaire(salon);
+            int proprietaire = apres.proprietaire(salon);
+            if(ancien != proprietaire){
+                abonnement(DESABONNER, salon, ancien);
+            }
+            abonnement(ABONNER, salon, proprietaire);
+        }
+    }
+
+    /**
+     * Méthode qui envoie un abonnement ou un désabonnement au propriétaire actuel d'un salon, s'il n'est pas ce nœud.
+     * @param type ABONNER ou DESABONNER.
+     * @param salon le nom du salon.
+     */
+    private void abonnement(byte type, String salon){
+        abonnement(type, salon, anneau.proprietaire(salon));
+    }
+
+    /**
+     * Méthode qui envoie un abonnement ou un désabonnement à un nœud, s'il n'est pas ce nœud et qu'il est relié.
+     * @param type ABONNER ou DESABONNER.
+     * @param salon le nom du salon.
+     * @param proprietaire le numéro du nœud propriétaire, actuel ou ancien, du salon.
+     */
+    private void abonnement(byte type, String salon, int proprietaire){
+        Lien lien = liens.get(proprietaire);
+        if(proprietaire != noeud && lien != null){
+            lien.envoyer(cadre(type, noeud, salon.getBytes(StandardCharsets.UTF_8), null));
+        }
+    }
+
+    /**
+     * Méthode qui indique si un lien a été ouvert par le plus petit des deux numéros de nœud.
+     * Les deux nœuds font le même choix quand ils se sont appelés en même temps.
+     * @param lien le lien.
+     * @return vrai si le lien doit être gardé.
+     */
+    private boolean prefere(Lien lien){
+        int appelant = lien.estSortant() ? noeud : lien.getNoeud();
+        return appelant == Math.min(noeud, lien.getNoeud());
+    }
+
+    /**
+     * Méthode qui retire du registre toutes les sessions distantes d'un lien, à sa fermeture ou à son remplacement.
+     * Elle doit être appelée sous le verrou de la table des liens.
+     * @param lien le lien fermé.
+     */
+    private void oublier(Lien lien){
+        for(SessionDistante session : new ArrayList<>(lien.getSessions().values())){
+            lien.getSessions().remove(session.getClientId());
+            registre.quitter(session);
+        }
+    }
+
+    /**
+     * Méthode qui traite une trame reçue d'un autre nœud.
+     * @param lien le lien qui a reçu la trame.
+     * @param trame les octets de la trame, sans sa longueur.
+     */
+    private void recevoir(Lien lien, byte[] trame){
+        ByteBuffer buf = ByteBuffer.wrap(trame);
+        byte type = buf.get();
+        int id = buf.getInt();
+        switch (type) {
+            case ARRIVEE -> {
+                String nom = new String(trame, buf.position(), buf.remaining(), StandardCharsets.UTF_8);
+                synchronized (liens){
+                    if(liens.get(lien.getNoeud()) != lien){
+                        return;
+                    }
+                    SessionDistante session = new SessionDistante(lien, id, nom);
+                    if(registre.rejoindre(session)){
+                        lien.getSessions().put(id, session);
+                    }else{
+                        TRACE.avertissement("Identifiant {} du nœud {} déjà utilisé", id, lien.getNoeud());
+                    }
+                }
+            }
+            case DEPART -> {
+                synchronized (liens){
+                    SessionDistante session = lien.getSessions().remove(id);
+                    if(session != null){
+                        registre.quitter(session);
+                    }
+                }
+            }
+            case DIFFUSION -> {
+                byte[] octets = reste(trame, buf.position());
+                for(EcouteurGrappe ecouteur : ecouteurs){
+                    ecouteur.diffusion(id, octets);
+                }
+            }
+            case ENVOI -> {
+                Session session = registre.parId(id);
+                if(session != null && ! session.estDistante()){
+                    session.envoyer(Trame.binaire(reste(trame, buf.position())));
+                }
+            }
+            case SALON, PUBLIER -> {
+                int longueur = buf.getShort() & 0xFFFF;
+                String salon = new String(trame, buf.position(), longueur, StandardCharsets.UTF_8);
+                byte[] octets = reste(trame, buf.position() + longueur);
+                for(EcouteurGrappe ecouteur : ecouteurs){
+                    ecouteur.salon(id, salon, octets);
+                }
+                if(type == PUBLIER){
+                    transmettre(salon, lien.getNoeud(), cadre(SALON, id, salon.getBytes(StandardCharsets.UTF_8), octets));
+                }
+            }
+            case ABONNER, DESABONNER -> {
+                int longueur = buf.getShort() & 0xFFFF;
+                String salon = new String(trame, buf.position(), longueur, StandardCharsets.UTF_8);
+                if(type == ABONNER){
+                    abonnes.computeIfAbsent(salon, nom -> ConcurrentHashMap.newKeySet()).add(lien.getNoeud());
+                }else{
+                    abonnes.computeIfPresent(salon, (nom, noeuds) -> {
+                        noeuds.remove(lien.getNoeud());
+                        return noeuds.isEmpty() ? null : noeuds;
+                    });
+                }
+            }
+            default -> TRACE.avertissement("Trame de grappe inconnue : {}", type);
+        }
+    }
+
+    /**
+     * Méthode appelée par le registre à l'arrivée d'un client : annonce les clients de ce nœud aux autres nœuds.
+     * @param session la session du client qui vient d'arriver.
+     * @param presents les sessions présentes.
+     */
+    @Override
+    public void arrivee(Session session, List<Session> presents){
+        if(! session.estDistante()){
+            envoyerATous(arrivee(session));
+        }
+    }
+
+    /**
+     * Méthode appelée par le registre au départ d'un client : annonce les départs des clients de ce nœud aux autres nœuds.
+     * @param session la session du client qui vient de partir.
+     * @param presents les sessions encore présentes.
+     */
+    @Override
+    public void depart(Session session, List<Session> presents){
+        if(! session.estDistante()){
+            envoyerATous(cadre(DEPART, session.getClientId(), null, null));
+        }
+    }
+
+    /**
+     * Méthode qui transmet à tous les autres nœuds un message diffusé à tous les clients.
+     * @param source l'identifiant du client qui a émis le message.
+     * @param trame la trame du message.
+     */
+    public void diffuser(int source, Trame trame){
+        if(! liens.isEmpty()){
+            envoyerATous(cadre(DIFFUSION, source, null, trame.octets(Trame.Format.BINAIRE)));
+        }
+    }
+
+    /**
+     * Méthode qui transmet un message de salon, déjà envoyé aux membres de ce nœud, aux autres nœuds qui ont des membres du salon.
+     * Si ce nœud est le propriétaire du salon, il l'envoie directement aux nœuds abonnés ; sinon il l'envoie au propriétaire.
+     * @param source l'identifiant du client qui a émis le message.
+     * @param salon le nom du salon.
+     * @param trame la trame du message.
+     */
+    public void diffuserSalon(int source, String salon, Trame trame){
+        if(liens.isEmpty()){
+            return;
+        }
+        byte[] nom = salon.getBytes(StandardCharsets.UTF_8);
+        int proprietaire = anneau.proprietaire(salon);
+        if(proprietaire == noeud){
+            transmettre(salon, noeud, cadre(SALON, source, nom, trame.octets(Trame.Format.BINAIRE)));
+            return;
+        }
+        Lien lien = liens.get(proprietaire);
+        if(lien != null){
+            lien.envoyer(cadre(PUBLIER, source, nom, trame.octets(Trame.Format.BINAIRE)));
+        }
+    }
+
+    /**
+     * Méthode qui envoie une trame de salon aux nœuds abonnés au salon, sauf au nœud d'où vient le message.
+     * @param salon le nom du salon.
+     * @param origine le numéro du nœud d'où vient le message, qui l'a déjà envoyé à ses membres.
+     * @param cadre les octets de la trame de grappe.
+     */
+    private void transmettre(String salon, int origine, byte[] cadre){
+        for(int abonne : abonnes.getOrDefault(salon, Set.of())){
+            Lien lien = liens.get(abonne);
+            if(abonne != origine && lien != null){
+                lien.envoyer(cadre);
+            }
+        }
+    }
+
+    /**
+     * Méthode appelée à l'entrée d'une session dans un salon : abonne ce nœud au salon à l'entrée de son premier membre local.
+     * @param salon le nom du salon.
+     * @param session la session qui vient d'entrer.
+     * @param membres les membres du salon sur ce nœud.
+     */
+    @Override
+    public void entree(String salon, Session session, List<Session> membres){
+        if(membres.size() == 1){
+            abonnement(ABONNER, salon);
+        }
+    }
+
+    /**
+     * Méthode appelée à la sortie d'une session d'un salon : désabonne ce nœud du salon à la sortie de son dernier membre local.
+     * @param salon le nom du salon.
+     * @param session la session qui vient de sortir.
+     * @param membres les membres restants du salon sur ce nœud.
+     */
+    @Override
+    public void sortie(String salon, Session session, List<Session> membres){
+        if(membres.isEmpty()){
+            abonnement(DESABONNER, salon);
+        }
+    }
+
+    /**
+     * Méthode qui retourne l'anneau de hachage cohérent, pour consulter les nœuds et le propriétaire de chaque salon.
+     * @return l'anneau de la grappe.
+     */
+    public Anneau getAnneau(){
+        return anneau;
+    }
+
+    /**
+     * Méthode qui retourne les nœuds abonnés à un salon dont ce nœud est propriétaire.
+     * @param salon le nom du salon.
+     * @return les numéros des nœuds abonnés, vide si aucun.
+     */
+    public Set<Integer> abonnes(String salon){
+        return Set.copyOf(abonnes.getOrDefault(salon, Set.of()));
+    }
+
+    /**
+     * Méthode qui construit la trame qui transmet un message à un seul client d'un autre nœud.
+     * @param id l'identifiant du destinataire.
+     * @param trame la trame du message.
+     * @return les octets de la trame de grappe.
+     */
+    public static byte[] envoi(int id, Trame trame){
+        return cadre(ENVOI, id, null, trame.octets(Trame.Format.BINAIRE));
+    }
+
+    /**
+     * Méthode qui retourne le nombre de nœuds reliés à ce nœud.
+     * @return le nombre de liens ouverts.
+     */
+    public int taille(){
+        return liens.size();
+    }
+
+    /**
+     * Méthode qui retourne le numéro de ce nœud.
+     * @return le numéro du nœud.
+     */
+    public int getNoeud(){
+        return noeud;
+    }
+
+    /**
+     * Méthode qui place une trame dans la file de chaque lien.
+     * @param cadre les octets de la trame de grappe, partagés par tous les liens.
+     */
+    private void envoyerATous(byte[] cadre){
+        for(Lien lien : liens.values()){
+            lien.envoyer(cadre);
+        }
+    }
+
+    /**
+     * Méthode qui construit la trame qui annonce l'arrivée d'un client.
+     * @param session la session du client.
+     * @return les octets de la trame de grappe.
+     */
+    private static byte[] arrivee(Session session){
+        return cadre(ARRIVEE, session.getClientId(), null, session.getClientName().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Méthode qui construit une trame de grappe.
+     * @param type le type de la trame.
+     * @param id l'identifiant du client concerné.
+     * @param salon le nom du salon en UTF-8, ou null si la trame n'en a pas.
+     * @param suite les octets de la suite de la trame, ou null.
+     * @return les octets de la trame, précédés de sa longueur.
+     */
+    private static byte[] cadre(byte type, int id, byte[] salon, byte[] suite){
+        int longueur = 5 + (salon != null ? 2 + salon.length : 0) + (suite != null ? suite.length : 0);
+        ByteBuffer buf = ByteBuffer.allocate(4 + longueur);
+        buf.putInt(longueur).put(type).putInt(id);
+        if(salon != null){
+            buf.putShort((short) salon.length).put(salon);
+        }
+        if(suite != null){
+            buf.put(suite);
+        }
+        return buf.array();
+    }
+
+    /**
+     * Méthode qui copie la fin d'une trame.
+     * @param trame les octets de la trame.
+     * @param debut la position du premier octet à copier.
+     * @return une copie des octets de debut à la fin.
+     */
+    private static byte[] reste(byte[] trame, int debut){
+        byte[] octets = new byte[trame.length - debut];
+        System.arraycopy(trame, debut, octets, 0, octets.length);
+        return octets;
+    }
+
+    /**
+     * Méthode qui ferme une socket sans lever d'exception.
+     * @param socket la socket à fermer.
+     */
+    private static void fermer(Socket socket){
+        try {
+            socket.close();
+        } catch (IOException e) {
+            TRACE.erreur("Fermeture de la connexion impossible", e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package Serveur;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme enregistre des durées en nanosecondes dans des intervalles de largeur logarithmique,
+ * sans verrou ni allocation : chaque puissance de 2 est découpée en 8 intervalles, soit une précision d'environ 12 %.
+ * Les percentiles sont calculés à la demande, sur tout l'historique ou sur la différence entre deux instantanés.
+ * @see Metriques
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Histogramme {
+
+    /**
+     * Le nombre de bits de la valeur qui choisissent l'intervalle dans une puissance de 2.
+     * @see Integer
+     */
+    private static final int SOUS_BITS = 3;
+
+    /**
+     * Le nombre d'intervalles par puissance de 2.
+     * @see Integer
+     */
+    private static final int SOUS_INTERVALLES = 1 << SOUS_BITS;
+
+    /**
+     * Le nombre d'intervalles de l'histogramme, pour toutes les valeurs positives d'un long.
+     * @see Integer
+     */
+    private static final int INTERVALLES = (Long.SIZE - SOUS_BITS) * SOUS_INTERVALLES;
+
+    /**
+     * Le nombre de valeurs de chaque intervalle.
+     * @see AtomicLongArray
+     */
+    private final AtomicLongArray comptes;
+
+    /**
+     * La somme des valeurs enregistrées.
+     * @see LongAdder
+     */
+    private final LongAdder somme;
+
+    /**
+     * La plus grande valeur enregistrée.
+     * @see LongAccumulator
+     */
+    private final LongAccumulator max;
+
+    /**
+     * Méthode qui initialise un histogramme vide.
+     */
+    public Histogramme(){
+        this.comptes = new AtomicLongArray(INTERVALLES);
+        this.somme = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Méthode qui enregistre une valeur.
+     * @param valeur la valeur, en nanosecondes ; une valeur négative compte pour 0.
+     */
+    public void enregistrer(long valeur){
+        valeur = Math.max(0, valeur);
+        comptes.incrementAndGet(intervalle(valeur));
+        somme.add(valeur);
+        max.accumulate(valeur);
+    }
+
+    /**
+     * Méthode qui retourne l'intervalle d'une valeur.
+     * @param valeur la valeur, positive.
+     * @return l'indice de l'intervalle.
+     */
+    private static int intervalle(long valeur){
+        if(valeur < SOUS_INTERVALLES){
+            return (int) valeur;
+        }
+        int exposant = Long.SIZE - 1 - Long.numberOfLeadingZeros(valeur);
+        int sous = (int) (valeur >>> (exposant - SOUS_BITS)) & (SOUS_INTERVALLES - 1);
+        return (exposant - SOUS_BITS + 1) * SOUS_INTERVALLES + sous;
+    }
+
+    /**
+     * Méthode qui retourne la plus grande valeur d'un intervalle.
+     * @param intervalle l'indice de l'intervalle.
+     * @return la borne supérieure de l'intervalle, incluse.
+     */
+    private static long borne(int intervalle){
+        if(intervalle < SOUS_INTERVALLES){
+            return intervalle;
+        }
+        int exposant = intervalle / SOUS_INTERVALLES + SOUS_BITS - 1;
+        long debut = (long) (SOUS_INTERVALLES + intervalle % SOUS_INTERVALLES) << (exposant - SOUS_BITS);
+        return debut + (1L << (exposant - SOUS_BITS)) - 1;
+    }
+
+    /**
+     * Méthode qui copie le nombre de valeurs de chaque intervalle.
+     * @return les comptes, à passer à percentile() seuls ou après soustraction d'un instantané précédent.
+     */
+    public long[] instantane(){
+        long[] copie = new long[INTERVALLES];
+        for(int i = 0; i < INTERVALLES; i++){
+            copie[i] = comptes.get(i);
+        }
+        return copie;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de valeurs enregistrées.
+     * @return le nombre de valeurs.
+     */
+    public long getTotal(){
+        return total(instantane());
+    }
+
+    /**
+     * Méthode qui retourne la somme des valeurs enregistrées.
+     * @return la somme, en nanosecondes.
+     */
+    public long getSomme(){
+        return somme.sum();
+    }
+
+    /**
+     * Méthode qui retourne la plus grande valeur enregistrée.
+     * @return la plus grande valeur, en nanosecondes, 0 si l'histogramme est vide.
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de valeurs d'un instantané.
+     * @param comptes les comptes d'un instantané.
+     * @return le nombre de valeurs.
+     */
+    public static long total(long[] comptes){
+        long total = 0;
+        for(long compte : comptes){
+            total += compte;
+        }
+        return total;
+    }
+
+    /**
+     * Méthode qui calcule un percentile des valeurs d'un instantané.
+     * @param comptes les comptes d'un instantané, ou la différence entre deux instantanés.
+     * @param percentile le percentile, entre 0 et 100.
+     * @return la borne supérieure de l'intervalle qui contient le percentile, 0 si l'instantané est vide.
+     */
+    public static long percentile(long[] comptes, double percentile){
+        long total = total(comptes);
+        if(total == 0){
+            return 0;
+        }
+        long rang = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long cumul = 0;
+        for(int i = 0; i < comptes.length; i++){
+            cumul += comptes[i];
+            if(cumul >= rang){
+                return borne(i);
+            }
+        }
+        return borne(comptes.length - 1);
+    }
+
+    /**
+     * Méthode qui calcule la différence entre deux instantanés.
+     * @param apres l'instantané le plus récent.
+     * @param avant l'instantané précédent.
+     * @return les comptes des valeurs enregistrées entre les deux instantanés.
+     */
+    public static long[] difference(long[] apres, long[] avant){
+        long[] difference = new long[apres.length];
+        for(int i = 0; i < apres.length; i++){
+            difference[i] = apres[i] - avant[i];
+        }
+        return difference;
+    }
+}
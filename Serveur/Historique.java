@@ -0,0 +1,89 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Trace;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Historique rejoue à un client qui arrive les derniers !msg du journal : ceux des N derniers enregistrements,
+ * éventuellement limités aux T dernières minutes. Les !pv ne sont jamais rejoués.
+ * Les segments sont projetés en mémoire et chaque message est envoyé comme une projection de son enregistrement :
+ * relire 10 000 messages ne crée aucun objet par message en dehors de la Trame, et le moteur NIO copie
+ * directement du segment vers ses tampons d'envoi.
+ * Seuls les messages déjà écrits par le journal sont rejoués, et jamais plus que les places libres
+ * de la file sortante du client, pour qu'aucune politique de saturation ne se déclenche.
+ * Les messages sont lus avant que le client rejoigne le registre, hors de son verrou, puis envoyés
+ * juste après la liste des connectés, avant tout message diffusé.
+ * @see LecteurJournal
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Historique {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Historique.class);
+
+    /**
+     * Le lecteur des segments du journal.
+     * @see LecteurJournal
+     */
+    private final LecteurJournal lecteur;
+
+    /**
+     * Le nombre maximum de messages rejoués.
+     * @see Integer
+     */
+    private final int messages;
+
+    /**
+     * L'ancienneté maximum des messages rejoués en millisecondes, 0 pour ne pas la limiter.
+     * @see Long
+     */
+    private final long dureeMs;
+
+    /**
+     * Méthode qui initialise une instance de la classe Historique.
+     * @param lecteur le lecteur des segments du journal.
+     * @param messages le nombre maximum de messages rejoués.
+     * @param minutes l'ancienneté maximum des messages rejoués en minutes, 0 pour ne pas la limiter.
+     */
+    public Historique(LecteurJournal lecteur, int messages, long minutes){
+        this.lecteur = lecteur;
+        this.messages = messages;
+        this.dureeMs = minutes * 60_000;
+    }
+
+    /**
+     * Méthode qui lit les derniers messages publics du journal, dans l'ordre, sans les envoyer.
+     * @param places le nombre de places libres dans la file sortante du client.
+     * @return les messages à rejouer, projetés depuis les segments du journal.
+     */
+    public List<Trame> lire(int places){
+        long fin = lecteur.getJournal().getEcrite();
+        places = Math.min(messages, places);
+        if(fin == 0 || places <= 0){
+            return List.of();
+        }
+        long debut = Math.max(1, fin - places + 1);
+        long depuis = dureeMs > 0 ? System.currentTimeMillis() - dureeMs : 0;
+
+        byte code = (byte) Binaire.code(Commande.Type.MSG);
+        ArrayList<Trame> rejoues = new ArrayList<>(places);
+        try {
+            lecteur.parcourir(debut, fin, depuis, (sequence, horodatage, source, trame) -> {
+                if(trame.get(0) == code){
+                    rejoues.add(Trame.projetee(trame));
+                }
+            });
+        } catch (IOException e) {
+            TRACE.erreur("Erreur de lecture de l'historique : {}", e.getMessage());
+        }
+        return rejoues;
+    }
+}
@@ -0,0 +1,90 @@
+package Serveur;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Identifiants attribue les identifiants des clients d'un nœud, uniques dans toute la grappe.
+ * Un identifiant reste un entier du protocole (!newcli, !rmcli, !pv...) : ses 8 bits de poids fort sont le numéro du nœud
+ * et ses 24 bits de poids faible une séquence croissante propre au nœud.
+ * L'attribution ne prend aucun verrou : chaque connexion acceptée incrémente un compteur atomique.
+ * La séquence commence à 1 et ne vaut jamais 0 : le client traite l'identifiant 0 comme inconnu.
+ * Après 2^24 - 1 connexions, elle repart de 1 et saute les identifiants encore utilisés.
+ * @see Routeur
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Identifiants {
+
+    /**
+     * Le nombre de bits de la séquence dans un identifiant.
+     * @see Integer
+     */
+    public static final int BITS_SEQUENCE = 24;
+
+    /**
+     * Le plus grand numéro de nœud possible.
+     * @see Integer
+     */
+    public static final int NOEUD_MAX = (1 << (Integer.SIZE - BITS_SEQUENCE)) - 1;
+
+    /**
+     * Le masque de la séquence dans un identifiant.
+     * @see Integer
+     */
+    private static final int MASQUE = (1 << BITS_SEQUENCE) - 1;
+
+    /**
+     * Les bits de poids fort de tous les identifiants de ce nœud.
+     * @see Integer
+     */
+    private final int prefixe;
+
+    /**
+     * La séquence du prochain identifiant.
+     * @see AtomicInteger
+     */
+    private final AtomicInteger sequence;
+
+    /**
+     * Méthode qui initialise les identifiants d'un nœud.
+     * @param noeud le numéro du nœud, entre 0 et NOEUD_MAX.
+     * @throws IllegalArgumentException si le numéro du nœud ne tient pas dans un identifiant.
+     */
+    public Identifiants(int noeud){
+        if(noeud < 0 || noeud > NOEUD_MAX){
+            throw new IllegalArgumentException("Numéro de nœud hors de [0, " + NOEUD_MAX + "] : " + noeud);
+        }
+        this.prefixe = noeud << BITS_SEQUENCE;
+        this.sequence = new AtomicInteger(1);
+    }
+
+    /**
+     * Méthode qui retourne un nouvel identifiant de client.
+     * @param libre indique si un identifiant est libre ; les identifiants encore utilisés sont sautés.
+     * @return un identifiant libre de ce nœud.
+     * @throws IllegalStateException si aucun identifiant n'est libre après un tour complet de la séquence.
+     */
+    public int suivant(IntPredicate libre){
+        for(int essais = 0; essais < MASQUE; essais++){
+            int valeur;
+            do {
+                valeur = sequence.getAndIncrement() & MASQUE;
+            } while(valeur == 0);
+            int id = prefixe | valeur;
+            if(libre.test(id)){
+                return id;
+            }
+        }
+        throw new IllegalStateException("Aucun identifiant libre sur le nœud " + noeud(prefixe));
+    }
+
+    /**
+     * Méthode qui retourne le numéro du nœud qui a attribué un identifiant.
+     * @param id l'identifiant d'un client.
+     * @return le numéro du nœud.
+     */
+    public static int noeud(int id){
+        return id >>> BITS_SEQUENCE;
+    }
+}
@@ -0,0 +1,129 @@
+package Serveur;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * IndexJournal est l'index creux des enregistrements du journal : il ne retient la position que d'un enregistrement
+ * sur PAS, plus le premier de chaque segment. Pour retrouver un message, on part du repère qui le précède
+ * et on parcourt au plus PAS enregistrements.
+ * L'index est alimenté par le thread du journal à chaque lot écrit et lu sans verrou par les autres threads.
+ * @see Journal
+ * @see Historique
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class IndexJournal {
+
+    /**
+     * Le nombre d'enregistrements entre deux repères.
+     * @see Integer
+     */
+    public static final int PAS = 64;
+
+    /**
+     * Un repère de l'index : la position d'un enregistrement dans son segment.
+     * @param segment le chemin du segment.
+     * @param sequence la séquence de l'enregistrement.
+     * @param horodatage la date de réception du message, en millisecondes.
+     * @param position la position de l'enregistrement dans le segment.
+     */
+    public record Repere(Path segment, long sequence, long horodatage, long position) {}
+
+    /**
+     * Les repères par séquence.
+     * @see ConcurrentSkipListMap
+     */
+    private final ConcurrentSkipListMap<Long, Repere> parSequence;
+
+    /**
+     * Les repères par date de réception, le premier repère de chaque milliseconde seulement.
+     * @see ConcurrentSkipListMap
+     */
+    private final ConcurrentSkipListMap<Long, Repere> parHorodatage;
+
+    /**
+     * Méthode qui initialise un index vide.
+     */
+    public IndexJournal(){
+        this.parSequence = new ConcurrentSkipListMap<>();
+        this.parHorodatage = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Méthode qui note la position d'un enregistrement si c'est un repère : le premier de son segment
+     * ou un enregistrement sur PAS.
+     * @param segment le chemin du segment.
+     * @param sequence la séquence de l'enregistrement.
+     * @param horodatage la date de réception du message, en millisecondes.
+     * @param position la position de l'enregistrement dans le segment.
+     */
+    public void noter(Path segment, long sequence, long horodatage, long position){
+        if(position != 0 && sequence % PAS != 0){
+            return;
+        }
+        Repere repere = new Repere(segment, sequence, horodatage, position);
+        parSequence.put(sequence, repere);
+        parHorodatage.putIfAbsent(horodatage, repere);
+    }
+
+    /**
+     * Méthode qui indexe un segment complet, sans vérifier les sommes de contrôle, en ne lisant que les en-têtes.
+     * @param segment le chemin du segment.
+     * @throws IOException si la lecture échoue.
+     */
+    public void indexer(Path segment) throws IOException {
+        try (FileChannel canal = FileChannel.open(segment, StandardOpenOption.READ)) {
+            ByteBuffer entete = ByteBuffer.allocate(Journal.ENTETE);
+            long taille = canal.size();
+            long position = 0;
+            while(position + Journal.ENTETE <= taille){
+                entete.clear();
+                canal.read(entete, position);
+                entete.flip();
+                int longueur = entete.getInt();
+                noter(segment, entete.getLong(), entete.getLong(), position);
+                position += Journal.ENTETE + longueur;
+            }
+        }
+    }
+
+    /**
+     * Méthode qui retourne le dernier repère dont la séquence ne dépasse pas celle demandée.
+     * @param sequence la séquence recherchée.
+     * @return le repère, ou le premier repère si la séquence est plus ancienne, null si l'index est vide.
+     */
+    public Repere avant(long sequence){
+        Map.Entry<Long, Repere> entree = parSequence.floorEntry(sequence);
+        if(entree == null){
+            entree = parSequence.firstEntry();
+        }
+        return entree == null ? null : entree.getValue();
+    }
+
+    /**
+     * Méthode qui retourne le dernier repère reçu avant une date.
+     * @param horodatage la date recherchée, en millisecondes.
+     * @return le repère, ou le premier repère si la date est plus ancienne, null si l'index est vide.
+     */
+    public Repere avantDate(long horodatage){
+        Map.Entry<Long, Repere> entree = parHorodatage.floorEntry(horodatage);
+        if(entree == null){
+            entree = parHorodatage.firstEntry();
+        }
+        return entree == null ? null : entree.getValue();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de repères de l'index.
+     * @return le nombre de repères.
+     */
+    public int taille(){
+        return parSequence.size();
+    }
+}
@@ -0,0 +1,610 @@
+package Serveur;
+
+import Trace.Trace;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal est le journal persistant, en ajout seul, des messages !msg et !pv reçus par le serveur.
+ * Les messages sont placés dans une file bornée par le routeur puis écrits par un seul thread,
+ * par lots : un lot est écrit en un seul appel système et, selon la durabilité choisie, suivi d'un seul fsync
+ * pour tous les messages du lot (validation groupée).
+ * Le journal est découpé en segments nommés d'après la séquence de leur premier message.
+ * Chaque enregistrement est de la forme [longueur : int][séquence : long][horodatage : long][source : int]
+ * [crc32c : int][trame binaire] ; au démarrage, la fin du dernier segment est vérifiée et un enregistrement
+ * incomplet, laissé par un arrêt brutal, est tronqué.
+ * Le journal tient à jour un index creux des enregistrements, utilisé pour relire l'historique.
+ * @see Durabilite
+ * @see IndexJournal
+ * @see Routeur
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Journal implements Runnable {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Journal.class);
+
+    /**
+     * Moment où un message est considéré comme enregistré.
+     */
+    public enum Durabilite {
+        /**
+         * Le routeur attend que le message soit sur le disque avant de le diffuser.
+         * Les messages reçus pendant un fsync sont validés ensemble par le fsync suivant.
+         */
+        MESSAGE,
+        /**
+         * Le routeur n'attend pas ; chaque lot écrit est suivi d'un fsync.
+         */
+        LOT,
+        /**
+         * Le routeur n'attend pas et le système vide les écritures quand il le décide.
+         */
+        ASYNC
+    }
+
+    /**
+     * La taille de l'en-tête d'un enregistrement, en octets.
+     * @see Integer
+     */
+    public static final int ENTETE = 4 + 8 + 8 + 4 + 4;
+
+    /**
+     * L'extension des fichiers de segment.
+     * @see String
+     */
+    public static final String EXTENSION = ".journal";
+
+    /**
+     * Le nombre maximum de messages en attente d'écriture.
+     * @see Integer
+     */
+    static final int CAPACITE = 65536;
+
+    /**
+     * Le nombre maximum de messages écrits en un seul lot.
+     * @see Integer
+     */
+    private static final int LOT_MAX = 4096;
+
+    /**
+     * Le nombre de messages perdus entre deux avertissements, après le premier.
+     * @see Long
+     */
+    private static final long PERTES_RAPPORT = 10_000;
+
+    /**
+     * Un message en attente d'écriture.
+     * @param sequence le numéro du message dans le journal.
+     * @param horodatage la date de réception, en millisecondes.
+     * @param source l'identifiant du client émetteur.
+     * @param trame la trame binaire du message.
+     */
+    private record Entree(long sequence, long horodatage, int source, byte[] trame) {}
+
+    /**
+     * Le dossier des segments.
+     * @see Path
+     */
+    private final Path dossier;
+
+    /**
+     * La durabilité choisie au démarrage.
+     * @see Durabilite
+     */
+    private final Durabilite durabilite;
+
+    /**
+     * La taille au-delà de laquelle un nouveau segment est commencé, en octets.
+     * @see Long
+     */
+    private final long tailleSegment;
+
+    /**
+     * Les messages en attente d'écriture.
+     * @see ArrayDeque
+     */
+    private final ArrayDeque<Entree> file;
+
+    /**
+     * Le verrou qui protège la file et les compteurs de séquence.
+     * @see ReentrantLock
+     */
+    private final ReentrantLock verrou;
+
+    /**
+     * Condition signalée quand un message est ajouté à la file.
+     * @see Condition
+     */
+    private final Condition nonVide;
+
+    /**
+     * Condition signalée quand l'écrivain libère de la place dans la file.
+     * @see Condition
+     */
+    private final Condition nonPleine;
+
+    /**
+     * Condition signalée quand un lot est sur le disque.
+     * @see Condition
+     */
+    private final Condition durable;
+
+    /**
+     * La séquence du dernier message ajouté à la file.
+     * @see Long
+     */
+    private long derniere;
+
+    /**
+     * La séquence du dernier message écrit, et validé sur le disque sauf en durabilité ASYNC.
+     * @see Long
+     */
+    private long ecrite;
+
+    /**
+     * Le nombre de messages non journalisés parce que la file était pleine et que l'appelant ne pouvait pas attendre.
+     * @see Long
+     */
+    private volatile long perdus;
+
+    /**
+     * Vrai quand le journal est fermé ou que l'écriture a échoué.
+     */
+    private boolean ferme;
+
+    /**
+     * Vrai quand le thread du journal s'est arrêté : plus aucun message ne sera écrit.
+     */
+    private boolean arrete;
+
+    /**
+     * Le canal du segment en cours, utilisé uniquement par le thread du journal après l'ouverture.
+     * @see FileChannel
+     */
+    private FileChannel segment;
+
+    /**
+     * Le chemin du segment en cours.
+     * @see Path
+     */
+    private Path cheminSegment;
+
+    /**
+     * L'index creux des enregistrements de tous les segments.
+     * @see IndexJournal
+     */
+    private final IndexJournal index;
+
+    /**
+     * Le tampon d'un lot, réutilisé d'un lot à l'autre par le thread du journal.
+     * @see ByteBuffer
+     */
+    private ByteBuffer tampon;
+
+    /**
+     * Le calcul des sommes de contrôle, réutilisé par le thread du journal.
+     * @see CRC32C
+     */
+    private final CRC32C crc;
+
+    /**
+     * Le thread qui écrit les lots.
+     * @see Thread
+     */
+    private Thread ecrivain;
+
+    /**
+     * Méthode qui initialise une instance de la classe Journal et reprend le dernier segment existant.
+     * Le journal n'écrit rien tant que demarrer() n'a pas été appelée.
+     * @param dossier le dossier des segments, créé s'il n'existe pas.
+     * @param durabilite la durabilité des messages.
+     * @param tailleSegment la taille maximum d'un segment, en octets.
+     * @throws IOException si le dossier ou le dernier segment ne peut pas être ouvert.
+     */
+    public Journal(Path dossier, Durabilite durabilite, long tailleSegment) throws IOException {
+        this.dossier = dossier;
+        this.durabilite = durabilite;
+        this.tailleSegment = tailleSegment;
+        this.file = new ArrayDeque<>();
+        this.verrou = new ReentrantLock();
+        this.nonVide = verrou.newCondition();
+        this.nonPleine = verrou.newCondition();
+        this.durable = verrou.newCondition();
+        this.tampon = ByteBuffer.allocateDirect(1 << 20);
+        this.crc = new CRC32C();
+        this.index = new IndexJournal();
+
+        Files.createDirectories(dossier);
+        List<Path> segments = segments(dossier);
+        if(segments.isEmpty()){
+            this.derniere = 0;
+            this.segment = ouvrirSegment(1);
+        }else{
+            for(Path ancien : segments.subList(0, segments.size() - 1)){
+                index.indexer(ancien);
+            }
+            this.cheminSegment = segments.get(segments.size() - 1);
+            this.segment = FileChannel.open(cheminSegment, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.derniere = reprendre(segment, premiereSequence(cheminSegment) - 1);
+        }
+        this.ecrite = derniere;
+    }
+
+    /**
+     * Méthode qui démarre le thread d'écriture du journal.
+     */
+    public void demarrer(){
+        ecrivain = new Thread(this, "journal");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+    }
+
+    /**
+     * Méthode qui ajoute un message au journal.
+     * Elle attend qu'une place se libère si la file est pleine, et en durabilité MESSAGE elle attend
+     * que le message soit sur le disque.
+     * @param source l'identifiant du client émetteur.
+     * @param trame la trame binaire du message, qui ne doit plus être modifiée.
+     * @return la séquence du message dans le journal, 0 si le journal est fermé.
+     */
+    public long ajouter(int source, byte[] trame){
+        return ajouter(source, trame, true);
+    }
+
+    /**
+     * Méthode qui ajoute un message au journal, en attendant ou non.
+     * Sans attente, un message qui ne trouve pas de place dans la file est compté comme perdu et n'est pas journalisé,
+     * comme une trame refusée par FileSortante.enfiler : c'est le cas d'une boucle NIO ou du lecteur d'un lien de la grappe,
+     * qui ne doivent jamais se bloquer. Elle n'attend pas non plus l'écriture sur le disque en durabilité MESSAGE.
+     * @param source l'identifiant du client émetteur.
+     * @param trame la trame binaire du message, qui ne doit plus être modifiée.
+     * @param attendre faux pour ne jamais attendre.
+     * @return la séquence du message dans le journal, 0 si le journal est fermé ou si le message est perdu.
+     */
+    public long ajouter(int source, byte[] trame, boolean attendre){
+        long perte = 0;
+        verrou.lock();
+        try {
+            while(file.size() >= CAPACITE && ! ferme){
+                if(! attendre){
+                    perte = ++perdus;
+                    return 0;
+                }
+                nonPleine.awaitUninterruptibly();
+            }
+            if(ferme){
+                return 0;
+            }
+            long sequence = ++derniere;
+            file.addLast(new Entree(sequence, System.currentTimeMillis(), source, trame));
+            nonVide.signal();
+
+            if(durabilite == Durabilite.MESSAGE && attendre){
+                while(ecrite < sequence && ! ferme){
+                    durable.awaitUninterruptibly();
+                }
+            }
+            return sequence;
+        } finally {
+            verrou.unlock();
+            if(perte > 0 && (perte == 1 || perte % PERTES_RAPPORT == 0)){
+                TRACE.avertissement("Journal plein : {} message(s) non journalisé(s)", perte);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui retourne le nombre de messages non journalisés parce que la file était pleine.
+     * @return le nombre de messages perdus.
+     */
+    public long getPerdus(){
+        return perdus;
+    }
+
+    /**
+     * Méthode qui retourne la séquence du dernier message écrit.
+     * @return la séquence du dernier message écrit, validé sur le disque sauf en durabilité ASYNC.
+     */
+    public long getEcrite(){
+        verrou.lock();
+        try {
+            return ecrite;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui attend que le journal ait écrit des messages au-delà d'une séquence.
+     * @param apres la séquence déjà connue de l'appelant.
+     * @param delaiMs le temps maximum d'attente, en millisecondes.
+     * @return la séquence du dernier message écrit, qui peut ne pas dépasser apres si le délai est écoulé
+     * ou si le journal est arrêté.
+     * @throws InterruptedException si le thread est interrompu pendant l'attente.
+     */
+    public long attendre(long apres, long delaiMs) throws InterruptedException {
+        long restant = TimeUnit.MILLISECONDS.toNanos(delaiMs);
+        verrou.lock();
+        try {
+            while(ecrite <= apres && ! arrete && restant > 0){
+                restant = durable.awaitNanos(restant);
+            }
+            return ecrite;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui indique si le journal est arrêté, fermé ou après une erreur d'écriture :
+     * la séquence retournée par getEcrite() ne changera plus.
+     * @return vrai si plus aucun message ne sera écrit.
+     */
+    public boolean estFerme(){
+        verrou.lock();
+        try {
+            return arrete;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retourne l'index creux des enregistrements du journal.
+     * @return l'index du journal.
+     */
+    public IndexJournal getIndex(){
+        return index;
+    }
+
+    /**
+     * Méthode qui ferme le journal après avoir écrit et validé les messages en attente.
+     */
+    public void fermer(){
+        verrou.lock();
+        try {
+            ferme = true;
+            if(ecrivain == null){
+                arrete = true;
+                durable.signalAll();
+            }
+            nonVide.signal();
+            nonPleine.signalAll();
+        } finally {
+            verrou.unlock();
+        }
+        if(ecrivain != null){
+            try {
+                ecrivain.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Méthode exécutée par le thread du journal : retire les messages par lots, les écrit
+     * et valide chaque lot selon la durabilité choisie.
+     * @see Runnable
+     */
+    @Override
+    public void run() {
+        ArrayList<Entree> lot = new ArrayList<>();
+        try {
+            while(prendreLot(lot)){
+                ecrireLot(lot);
+                if(durabilite != Durabilite.ASYNC){
+                    segment.force(false);
+                }
+                noterEcrite(lot.get(lot.size() - 1).sequence());
+                lot.clear();
+            }
+            segment.force(false);
+            segment.close();
+        } catch (IOException e) {
+            TRACE.erreur("Erreur d'écriture du journal : {}", e.getMessage());
+            verrou.lock();
+            try {
+                ferme = true;
+                file.clear();
+                nonPleine.signalAll();
+            } finally {
+                verrou.unlock();
+            }
+        } finally {
+            verrou.lock();
+            try {
+                arrete = true;
+                durable.signalAll();
+            } finally {
+                verrou.unlock();
+            }
+        }
+    }
+
+    /**
+     * Méthode qui attend au moins un message et retire tous les messages disponibles, dans la limite d'un lot.
+     * @param lot la liste vide dans laquelle les messages sont ajoutés.
+     * @return faux si le journal est fermé et que tous les messages ont été écrits.
+     */
+    private boolean prendreLot(List<Entree> lot){
+        verrou.lock();
+        try {
+            while(file.isEmpty()){
+                if(ferme){
+                    return false;
+                }
+                nonVide.awaitUninterruptibly();
+            }
+            while(! file.isEmpty() && lot.size() < LOT_MAX){
+                lot.add(file.pollFirst());
+            }
+            nonPleine.signalAll();
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui publie la séquence du dernier message écrit et réveille les émetteurs qui l'attendent.
+     * @param sequence la séquence du dernier message du lot.
+     */
+    private void noterEcrite(long sequence){
+        verrou.lock();
+        try {
+            ecrite = sequence;
+            durable.signalAll();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui écrit un lot dans le segment en cours, en commençant un nouveau segment si nécessaire.
+     * @param lot les messages du lot, dans l'ordre de leurs séquences.
+     * @throws IOException si l'écriture échoue.
+     */
+    private void ecrireLot(List<Entree> lot) throws IOException {
+        long taille = segment.size();
+        tampon.clear();
+        for(Entree entree : lot){
+            int longueur = ENTETE + entree.trame().length;
+            if(taille + tampon.position() + longueur > tailleSegment && taille + tampon.position() > 0){
+                vider();
+                segment.force(false);
+                segment.close();
+                segment = ouvrirSegment(entree.sequence());
+                taille = 0;
+            }
+            if(longueur > tampon.remaining()){
+                vider();
+                taille = segment.size();
+                if(longueur > tampon.capacity()){
+                    tampon = ByteBuffer.allocateDirect(Integer.highestOneBit(longueur) << 1);
+                }
+            }
+            index.noter(cheminSegment, entree.sequence(), entree.horodatage(), taille + tampon.position());
+            crc.reset();
+            crc.update(entree.trame());
+            tampon.putInt(entree.trame().length)
+                    .putLong(entree.sequence())
+                    .putLong(entree.horodatage())
+                    .putInt(entree.source())
+                    .putInt((int) crc.getValue())
+                    .put(entree.trame());
+        }
+        vider();
+    }
+
+    /**
+     * Méthode qui écrit le contenu du tampon à la fin du segment en cours et vide le tampon.
+     * @throws IOException si l'écriture échoue.
+     */
+    private void vider() throws IOException {
+        tampon.flip();
+        while(tampon.hasRemaining()){
+            segment.write(tampon);
+        }
+        tampon.clear();
+    }
+
+    /**
+     * Méthode qui crée un nouveau segment.
+     * @param premiere la séquence du premier message du segment.
+     * @return le canal du segment, positionné à la fin.
+     * @throws IOException si le fichier ne peut pas être créé.
+     */
+    private FileChannel ouvrirSegment(long premiere) throws IOException {
+        cheminSegment = dossier.resolve(String.format("%020d", premiere) + EXTENSION);
+        return FileChannel.open(cheminSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Méthode qui parcourt un segment existant, tronque un éventuel enregistrement incomplet ou corrompu
+     * à la fin, indexe les enregistrements valides et positionne le canal à la fin du dernier.
+     * @param canal le canal du segment.
+     * @param precedente la séquence du message qui précède le segment.
+     * @return la séquence du dernier message valide.
+     * @throws IOException si la lecture échoue.
+     */
+    private long reprendre(FileChannel canal, long precedente) throws IOException {
+        long position = 0;
+        long sequence = precedente;
+        ByteBuffer entete = ByteBuffer.allocate(ENTETE);
+        long taille = canal.size();
+        while(position + ENTETE <= taille){
+            entete.clear();
+            canal.read(entete, position);
+            entete.flip();
+            int longueur = entete.getInt();
+            long lue = entete.getLong();
+            long horodatage = entete.getLong();
+            entete.getInt();
+            int somme = entete.getInt();
+            if(longueur < 0 || position + ENTETE + longueur > taille || lue != sequence + 1){
+                break;
+            }
+            ByteBuffer trame = ByteBuffer.allocate(longueur);
+            canal.read(trame, position + ENTETE);
+            crc.reset();
+            crc.update(trame.flip());
+            if((int) crc.getValue() != somme){
+                break;
+            }
+            index.noter(cheminSegment, lue, horodatage, position);
+            sequence = lue;
+            position += ENTETE + longueur;
+        }
+        if(position < taille){
+            TRACE.avertissement("Journal : {} octets incomplets tronqués", taille - position);
+            canal.truncate(position);
+        }
+        canal.position(position);
+        return sequence;
+    }
+
+    /**
+     * Méthode qui retourne la séquence du premier message d'un segment, d'après son nom.
+     * @param segment le chemin du segment.
+     * @return la séquence du premier message du segment.
+     */
+    public static long premiereSequence(Path segment){
+        String nom = segment.getFileName().toString();
+        return Long.parseLong(nom.substring(0, nom.length() - EXTENSION.length()));
+    }
+
+    /**
+     * Méthode qui liste les segments d'un dossier dans l'ordre de leurs séquences.
+     * @param dossier le dossier du journal.
+     * @return les chemins des segments.
+     * @throws IOException si le dossier ne peut pas être lu.
+     */
+    public static List<Path> segments(Path dossier) throws IOException {
+        try (Stream<Path> fichiers = Files.list(dossier)) {
+            return fichiers.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                    .sorted()
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
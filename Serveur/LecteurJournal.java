@@ -0,0 +1,142 @@
+package Serveur;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * LecteurJournal lit les enregistrements du journal à travers des projections en mémoire de ses segments.
+ * Un parcours part du repère de l'index creux qui précède la première séquence demandée, et chaque trame
+ * est présentée comme une tranche en lecture seule de la projection, sans copie.
+ * Il est partagé par l'historique et la recherche, et peut être utilisé par plusieurs threads à la fois.
+ * @see Journal
+ * @see IndexJournal
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class LecteurJournal {
+
+    /**
+     * Visiteur reçoit les enregistrements d'un parcours, dans l'ordre des séquences.
+     */
+    @FunctionalInterface
+    public interface Visiteur {
+
+        /**
+         * Méthode appelée pour chaque enregistrement du parcours.
+         * @param sequence la séquence de l'enregistrement.
+         * @param horodatage la date de réception du message, en millisecondes.
+         * @param source l'identifiant du client émetteur.
+         * @param trame la trame binaire du message, tranche en lecture seule de la projection du segment.
+         */
+        void enregistrement(long sequence, long horodatage, int source, ByteBuffer trame);
+    }
+
+    /**
+     * Le journal lu.
+     * @see Journal
+     */
+    private final Journal journal;
+
+    /**
+     * Les projections en mémoire des segments déjà lus. La projection du segment en cours
+     * est remplacée quand il a grandi.
+     * @see ConcurrentHashMap
+     */
+    private final ConcurrentHashMap<Path, MappedByteBuffer> projections;
+
+    /**
+     * Méthode qui initialise une instance de la classe LecteurJournal.
+     * @param journal le journal à lire.
+     */
+    public LecteurJournal(Journal journal){
+        this.journal = journal;
+        this.projections = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Méthode qui retourne le journal lu.
+     * @return le journal.
+     */
+    public Journal getJournal(){
+        return journal;
+    }
+
+    /**
+     * Méthode qui parcourt les enregistrements entre deux séquences, bornes comprises.
+     * Seuls les enregistrements déjà écrits par le journal peuvent être lus : fin ne doit pas dépasser getEcrite().
+     * @param debut la première séquence, ou une séquence plus ancienne que tout le journal.
+     * @param fin la dernière séquence.
+     * @param depuis la date en millisecondes avant laquelle les enregistrements sont ignorés, 0 pour aucune.
+     * @param visiteur le visiteur des enregistrements.
+     * @throws IOException si un segment ne peut pas être projeté.
+     */
+    public void parcourir(long debut, long fin, long depuis, Visiteur visiteur) throws IOException {
+        IndexJournal index = journal.getIndex();
+        IndexJournal.Repere repere = index.avant(debut);
+        if(repere == null || debut > fin){
+            return;
+        }
+        if(depuis > 0){
+            IndexJournal.Repere parDate = index.avantDate(depuis);
+            if(parDate.sequence() > repere.sequence()){
+                repere = parDate;
+            }
+        }
+
+        ByteBuffer segment = projection(repere.segment(), 0);
+        int position = (int) repere.position();
+        long sequence = repere.sequence() - 1;
+        while(sequence < fin){
+            if(position + Journal.ENTETE > segment.limit()){
+                segment = projection(repere.segment(), position + Journal.ENTETE);
+                if(position + Journal.ENTETE > segment.limit()){
+                    IndexJournal.Repere suivant = index.avant(sequence + 1);
+                    if(suivant.segment().equals(repere.segment())){
+                        return;
+                    }
+                    repere = suivant;
+                    segment = projection(repere.segment(), 0);
+                    position = (int) repere.position();
+                    continue;
+                }
+            }
+            int longueur = segment.getInt(position);
+            sequence = segment.getLong(position + 4);
+            long horodatage = segment.getLong(position + 12);
+            int source = segment.getInt(position + 20);
+            int debutTrame = position + Journal.ENTETE;
+            position = debutTrame + longueur;
+            if(position > segment.limit()){
+                segment = projection(repere.segment(), position);
+            }
+
+            if(sequence >= debut && horodatage >= depuis && longueur > 0){
+                visiteur.enregistrement(sequence, horodatage, source, segment.slice(debutTrame, longueur));
+            }
+        }
+    }
+
+    /**
+     * Méthode qui retourne la projection en mémoire d'un segment, en la refaisant si elle est trop courte.
+     * @param segment le chemin du segment.
+     * @param minimum le nombre d'octets dont la projection a besoin.
+     * @return la projection du segment, en lecture seule.
+     * @throws IOException si le segment ne peut pas être projeté.
+     */
+    private ByteBuffer projection(Path segment, int minimum) throws IOException {
+        MappedByteBuffer projection = projections.get(segment);
+        if(projection != null && projection.limit() >= minimum){
+            return projection;
+        }
+        try (FileChannel canal = FileChannel.open(segment, StandardOpenOption.READ)) {
+            projection = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        projections.put(segment, projection);
+        return projection;
+    }
+}
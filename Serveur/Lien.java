@@ -0,0 +1,211 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Trace.Trace;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lien est la connexion TCP entre ce nœud et un autre nœud de la grappe.
+ * Les deux nœuds s'échangent d'abord leur numéro, puis des trames de la forme [longueur : int][type : 1 octet][contenu]
+ * dont le contenu est décrit dans Grappe.
+ * Les trames sortantes passent par une FileSortante vidée par un thread d'écriture, comme pour une session,
+ * et le thread qui appelle lire() traite les trames reçues jusqu'à la fin de la connexion.
+ * Un lien est alimenté sous le verrou du registre et par les boucles NIO : il n'attend jamais une place dans sa file.
+ * Si l'autre nœud ne suit plus, le lien est fermé ; le nœud qui l'avait ouvert le rappelle, et chaque nœud
+ * annonce de nouveau ses clients et ses abonnements sur le nouveau lien.
+ * @see Grappe
+ * @see SessionDistante
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Lien {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Lien.class);
+
+    /**
+     * Le nombre maximum de trames en attente d'envoi vers l'autre nœud.
+     * @see Integer
+     */
+    private static final int FILE_MAX = 65536;
+
+    /**
+     * La socket de la connexion.
+     * @see Socket
+     */
+    private final Socket socket;
+
+    /**
+     * Vrai si ce nœud a ouvert la connexion.
+     */
+    private final boolean sortant;
+
+    /**
+     * Le numéro de l'autre nœud, connu après l'échange des numéros.
+     * @see Integer
+     */
+    private int noeud;
+
+    /**
+     * La file des trames à envoyer à l'autre nœud.
+     * @see FileSortante
+     */
+    private final FileSortante file;
+
+    /**
+     * Le flux de sortie, utilisé par le thread d'écriture après l'échange des numéros.
+     * @see BufferedOutputStream
+     */
+    private final BufferedOutputStream sortie;
+
+    /**
+     * Le flux d'entrée.
+     * @see DataInputStream
+     */
+    private final DataInputStream entree;
+
+    /**
+     * Les sessions de l'autre nœud, indexées par identifiant de client.
+     * @see ConcurrentHashMap
+     * @see SessionDistante
+     */
+    private final ConcurrentHashMap<Integer, SessionDistante> sessions;
+
+    /**
+     * Méthode qui initialise un lien sur une connexion ouverte.
+     * @param socket la socket de la connexion.
+     * @param sortant vrai si ce nœud a ouvert la connexion.
+     * @throws IOException si les flux de la socket ne peuvent pas être ouverts.
+     */
+    public Lien(Socket socket, boolean sortant) throws IOException {
+        this.socket = socket;
+        this.sortant = sortant;
+        this.file = new FileSortante(FILE_MAX, FileSortante.Politique.DECONNECTER, 0, 256, 0);
+        this.sortie = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        this.entree = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        this.sessions = new ConcurrentHashMap<>();
+        socket.setTcpNoDelay(true);
+    }
+
+    /**
+     * Méthode qui échange les numéros des deux nœuds.
+     * @param moi le numéro de ce nœud.
+     * @return le numéro de l'autre nœud.
+     * @throws IOException si l'échange échoue.
+     */
+    public int saluer(int moi) throws IOException {
+        DataOutputStream out = new DataOutputStream(sortie);
+        out.writeInt(moi);
+        out.flush();
+        noeud = entree.readInt();
+        return noeud;
+    }
+
+    /**
+     * Méthode qui démarre le thread d'écriture du lien.
+     */
+    public void demarrer(){
+        Thread t = new Thread(this::ecrire, "lien-" + noeud + "-ecriture");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Méthode qui place une trame dans la file du lien, sans attendre. Le lien est fermé si sa file est pleine,
+     * puis rétabli et resynchronisé par la grappe.
+     * @param trame les octets de la trame de grappe, qui ne doivent plus être modifiés.
+     */
+    public void envoyer(byte[] trame){
+        if(! file.enfiler(Trame.binaire(trame))){
+            TRACE.avertissement("Nœud {} trop lent, lien fermé", noeud);
+            fermer();
+        }
+    }
+
+    /**
+     * Méthode exécutée par le thread d'écriture : vide la file par lots et ne vide le flux qu'une fois par lot.
+     */
+    private void ecrire(){
+        ArrayList<Trame> lot = new ArrayList<>();
+        try {
+            while(file.prendreLot(lot) > 0){
+                for(Trame trame : lot){
+                    trame.ecrireDans(sortie, Trame.Format.BINAIRE);
+                }
+                sortie.flush();
+                lot.clear();
+            }
+        } catch (IOException | InterruptedException e) {
+            fermer();
+        }
+    }
+
+    /**
+     * Méthode qui lit une trame de l'autre nœud.
+     * @return les octets de la trame, sans sa longueur.
+     * @throws IOException si la trame est trop longue ou la connexion interrompue.
+     */
+    public byte[] lire() throws IOException {
+        int longueur = entree.readInt();
+        if(longueur < 5 || longueur > Binaire.CONTENU_MAX + 1024){
+            throw new IOException("Trame de grappe invalide : " + longueur);
+        }
+        byte[] trame = new byte[longueur];
+        entree.readFully(trame);
+        return trame;
+    }
+
+    /**
+     * Méthode qui ferme le lien et sa file. Elle peut être appelée plusieurs fois.
+     */
+    public void fermer(){
+        file.fermer();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            TRACE.erreur("Fermeture du lien impossible", e);
+        }
+    }
+
+    /**
+     * Méthode qui retourne le numéro de l'autre nœud.
+     * @return le numéro du nœud.
+     */
+    public int getNoeud(){
+        return noeud;
+    }
+
+    /**
+     * Méthode qui indique si ce nœud a ouvert la connexion.
+     * @return vrai pour une connexion sortante.
+     */
+    public boolean estSortant(){
+        return sortant;
+    }
+
+    /**
+     * Méthode qui retourne la file des trames à envoyer, partagée par les sessions distantes du lien.
+     * @return la file sortante du lien.
+     */
+    public FileSortante getFileSortante(){
+        return file;
+    }
+
+    /**
+     * Méthode qui retourne les sessions de l'autre nœud connues par ce lien.
+     * @return les sessions distantes, indexées par identifiant de client.
+     */
+    public ConcurrentHashMap<Integer, SessionDistante> getSessions(){
+        return sessions;
+    }
+}
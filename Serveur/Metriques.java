@@ -0,0 +1,400 @@
+package Serveur;
+
+import Protocole.Commande;
+import Trace.Trace;
+import com.sun.net.httpserver.HttpServer;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metriques regroupe les compteurs du serveur : commandes reçues par type, octets reçus et envoyés aux clients,
+ * connexions acceptées, arrivées et départs, sondes et clients inactifs fermés, ainsi que la durée de chaque diffusion d'un !msg ou d'un !room à ses destinataires.
+ * En grappe, la part de l'anneau de hachage de chaque nœud est relevée à chaque lecture.
+ * Les compteurs sont des LongAdder : les sessions les incrémentent sans se gêner.
+ * Les sessions présentes et la profondeur des files sortantes ne sont pas comptées en continu mais relevées à chaque lecture.
+ * Les métriques sont servies en texte sur l'interface locale (option --metriques-port) et résumées
+ * périodiquement dans la console (option --metriques-s).
+ * @see Routeur
+ * @see Histogramme
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Metriques implements EcouteurPresence {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Metriques.class);
+
+    /**
+     * Les quantiles publiés pour les durées de diffusion, tels qu'ils sont écrits dans les étiquettes.
+     * @see String
+     */
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+    /**
+     * Le registre des clients, dont les sessions et leurs files sont relevées à chaque lecture.
+     * @see Registre
+     */
+    private final Registre registre;
+
+    /**
+     * Le nombre de commandes reçues des clients, par type de commande.
+     * @see LongAdder
+     */
+    private final LongAdder[] commandes;
+
+    /**
+     * Le nombre d'octets reçus des clients.
+     * @see LongAdder
+     */
+    private final LongAdder octetsRecus;
+
+    /**
+     * Le nombre d'octets envoyés aux clients.
+     * @see LongAdder
+     */
+    private final LongAdder octetsEnvoyes;
+
+    /**
+     * Le nombre de connexions acceptées, poignée de main réussie ou non.
+     * @see LongAdder
+     */
+    private final LongAdder acceptees;
+
+    /**
+     * Le nombre de clients de ce serveur inscrits dans le registre.
+     * @see LongAdder
+     */
+    private final LongAdder arrivees;
+
+    /**
+     * Le nombre de clients de ce serveur retirés du registre.
+     * @see LongAdder
+     */
+    private final LongAdder departs;
+
+    /**
+     * Le nombre de !ping envoyés aux clients silencieux.
+     * @see LongAdder
+     */
+    private final LongAdder pings;
+
+    /**
+     * Le nombre de clients fermés par la faucheuse parce qu'ils sont restés silencieux trop longtemps.
+     * @see LongAdder
+     */
+    private final LongAdder inactifs;
+
+    /**
+     * La durée de l'envoi de chaque !msg à tous les clients de ce serveur, en nanosecondes.
+     * @see Histogramme
+     */
+    private final Histogramme diffusion;
+
+    /**
+     * La durée de l'envoi de chaque !room aux membres du salon sur ce serveur, en nanosecondes.
+     * @see Histogramme
+     */
+    private final Histogramme salon;
+
+    /**
+     * L'anneau de hachage de la grappe, null si ce serveur est seul.
+     * @see Anneau
+     */
+    private volatile Anneau anneau;
+
+    /**
+     * Méthode qui initialise des métriques à zéro.
+     * @param registre le registre des clients du serveur.
+     */
+    public Metriques(Registre registre){
+        this.registre = registre;
+        this.commandes = new LongAdder[Commande.Type.values().length];
+        for(int i = 0; i < commandes.length; i++){
+            commandes[i] = new LongAdder();
+        }
+        this.octetsRecus = new LongAdder();
+        this.octetsEnvoyes = new LongAdder();
+        this.acceptees = new LongAdder();
+        this.arrivees = new LongAdder();
+        this.departs = new LongAdder();
+        this.pings = new LongAdder();
+        this.inactifs = new LongAdder();
+        this.diffusion = new Histogramme();
+        this.salon = new Histogramme();
+    }
+
+    /**
+     * Méthode qui compte une commande reçue d'un client.
+     * @param type le type de la commande.
+     */
+    public void commande(Commande.Type type){
+        commandes[type.ordinal()].increment();
+    }
+
+    /**
+     * Méthode qui compte des octets reçus d'un client.
+     * @param octets le nombre d'octets.
+     */
+    public void recus(long octets){
+        octetsRecus.add(octets);
+    }
+
+    /**
+     * Méthode qui compte des octets envoyés à un client.
+     * @param octets le nombre d'octets.
+     */
+    public void envoyes(long octets){
+        octetsEnvoyes.add(octets);
+    }
+
+    /**
+     * Méthode qui compte une connexion acceptée.
+     */
+    public void acceptee(){
+        acceptees.increment();
+    }
+
+    /**
+     * Méthode qui compte un !ping envoyé à un client silencieux.
+     */
+    public void ping(){
+        pings.increment();
+    }
+
+    /**
+     * Méthode qui compte un client fermé parce qu'il est resté silencieux trop longtemps.
+     */
+    public void inactif(){
+        inactifs.increment();
+    }
+
+    /**
+     * Méthode qui retourne l'histogramme des durées de diffusion des !msg.
+     * @return l'histogramme, en nanosecondes.
+     */
+    public Histogramme getDiffusion(){
+        return diffusion;
+    }
+
+    /**
+     * Méthode qui retourne l'histogramme des durées de diffusion des !room.
+     * @return l'histogramme, en nanosecondes.
+     */
+    public Histogramme getSalon(){
+        return salon;
+    }
+
+    /**
+     * Méthode qui publie avec les métriques la part de l'anneau de chaque nœud de la grappe.
+     * @param anneau l'anneau de hachage de la grappe.
+     */
+    public void suivreAnneau(Anneau anneau){
+        this.anneau = anneau;
+    }
+
+    /**
+     * Méthode qui enveloppe le flux d'entrée d'une connexion pour compter les octets reçus.
+     * Le flux enveloppé doit être placé sous le tampon de lecture : les octets sont comptés par blocs.
+     * @param entree le flux d'entrée du socket.
+     * @return un flux qui compte les octets lus.
+     */
+    public InputStream compter(InputStream entree){
+        return new FilterInputStream(entree) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b >= 0){
+                    octetsRecus.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if(n > 0){
+                    octetsRecus.add(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Méthode appelée par le registre à l'arrivée d'un client : compte les arrivées des clients de ce nœud.
+     * @param session la session du client qui vient d'arriver.
+     * @param presents les sessions présentes.
+     */
+    @Override
+    public void arrivee(Session session, List<Session> presents){
+        if(! session.estDistante()){
+            arrivees.increment();
+        }
+    }
+
+    /**
+     * Méthode appelée par le registre au départ d'un client : compte les départs des clients de ce nœud.
+     * @param session la session du client qui vient de partir.
+     * @param presents les sessions encore présentes.
+     */
+    @Override
+    public void depart(Session session, List<Session> presents){
+        if(! session.estDistante()){
+            departs.increment();
+        }
+    }
+
+    /**
+     * Méthode qui relève les sessions présentes et la profondeur de leurs files sortantes.
+     * @return un tableau : sessions de ce serveur, sessions des autres nœuds, trames en attente, plus longue file, trames perdues.
+     */
+    private long[] releverSessions(){
+        long locales = 0, distantes = 0, attente = 0, plusLongue = 0, perdues = 0;
+        for(Session session : registre.sessions()){
+            if(session.estDistante()){
+                distantes++;
+                continue;
+            }
+            locales++;
+            FileSortante file = session.getFileSortante();
+            if(file != null){
+                int profondeur = file.profondeur();
+                attente += profondeur;
+                plusLongue = Math.max(plusLongue, profondeur);
+                perdues += file.getPerdues();
+            }
+        }
+        return new long[]{locales, distantes, attente, plusLongue, perdues};
+    }
+
+    /**
+     * Méthode qui écrit toutes les métriques dans le format texte de Prometheus, une valeur par ligne.
+     * @return le texte des métriques.
+     */
+    public String texte(){
+        StringBuilder sb = new StringBuilder();
+        for(Commande.Type type : Commande.Type.values()){
+            ligne(sb, "javachat_commandes_total{type=\"" + type.name().toLowerCase(Locale.ROOT) + "\"}", commandes[type.ordinal()].sum());
+        }
+        ligne(sb, "javachat_octets_recus_total", octetsRecus.sum());
+        ligne(sb, "javachat_octets_envoyes_total", octetsEnvoyes.sum());
+        ligne(sb, "javachat_connexions_acceptees_total", acceptees.sum());
+        ligne(sb, "javachat_arrivees_total", arrivees.sum());
+        ligne(sb, "javachat_departs_total", departs.sum());
+        ligne(sb, "javachat_pings_total", pings.sum());
+        ligne(sb, "javachat_inactifs_fermes_total", inactifs.sum());
+
+        long[] sessions = releverSessions();
+        ligne(sb, "javachat_sessions{lieu=\"local\"}", sessions[0]);
+        ligne(sb, "javachat_sessions{lieu=\"distant\"}", sessions[1]);
+        ligne(sb, "javachat_file_sortante_trames", sessions[2]);
+        ligne(sb, "javachat_file_sortante_trames_max", sessions[3]);
+        ligne(sb, "javachat_file_sortante_perdues", sessions[4]);
+
+        Anneau a = anneau;
+        if(a != null){
+            Anneau.Instantane etat = a.instantane();
+            for(int noeud : etat.noeudsDistincts()){
+                sb.append("javachat_anneau_part{noeud=\"").append(noeud).append("\"} ")
+                        .append(String.format(Locale.ROOT, "%.4f", etat.part(noeud))).append('\n');
+            }
+        }
+
+        histogramme(sb, "javachat_diffusion_ns", diffusion);
+        histogramme(sb, "javachat_salon_ns", salon);
+        return sb.toString();
+    }
+
+    /**
+     * Méthode qui ajoute une ligne de métrique au texte.
+     * @param sb le texte des métriques.
+     * @param nom le nom de la métrique, avec ses étiquettes.
+     * @param valeur la valeur.
+     */
+    private static void ligne(StringBuilder sb, String nom, long valeur){
+        sb.append(nom).append(' ').append(valeur).append('\n');
+    }
+
+    /**
+     * Méthode qui ajoute les percentiles, le nombre, la somme et le maximum des valeurs d'un histogramme au texte.
+     * @param sb le texte des métriques.
+     * @param nom le nom de la métrique.
+     * @param histogramme l'histogramme.
+     */
+    private static void histogramme(StringBuilder sb, String nom, Histogramme histogramme){
+        long[] comptes = histogramme.instantane();
+        for(String quantile : QUANTILES){
+            ligne(sb, nom + "{quantile=\"" + quantile + "\"}", Histogramme.percentile(comptes, Double.parseDouble(quantile) * 100));
+        }
+        ligne(sb, nom + "_count", Histogramme.total(comptes));
+        ligne(sb, nom + "_sum", histogramme.getSomme());
+        ligne(sb, nom + "_max", histogramme.getMax());
+    }
+
+    /**
+     * Méthode qui sert les métriques en HTTP sur l'interface locale, à l'adresse /metriques.
+     * Les requêtes sont traitées par un seul thread, qui ne touche à aucun client.
+     * @param port le port d'écoute.
+     * @throws IOException si le port ne peut pas être ouvert.
+     */
+    public void servir(int port) throws IOException {
+        HttpServer serveur = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        serveur.createContext("/metriques", echange -> {
+            byte[] corps = texte().getBytes(StandardCharsets.UTF_8);
+            echange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            echange.sendResponseHeaders(200, corps.length);
+            try (OutputStream out = echange.getResponseBody()){
+                out.write(corps);
+            }
+        });
+        serveur.start();
+        TRACE.info("Métriques : http://{}:{}/metriques", serveur.getAddress().getHostString(), port);
+    }
+
+    /**
+     * Méthode qui affiche un résumé des métriques dans la console toutes les periodeS secondes :
+     * débits de la période, sessions, files sortantes et percentiles des diffusions de la période.
+     * @param periodeS la période, en secondes.
+     */
+    public void journaliser(long periodeS){
+        ScheduledExecutorService planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metriques");
+            t.setDaemon(true);
+            return t;
+        });
+        long[] precedent = new long[5];
+        long[][] diffusionPrecedente = {diffusion.instantane()};
+        planificateur.scheduleAtFixedRate(() -> {
+            long[] actuel = {commandes[Commande.Type.MSG.ordinal()].sum(), commandes[Commande.Type.PV.ordinal()].sum(),
+                    octetsRecus.sum(), octetsEnvoyes.sum(), acceptees.sum()};
+            long[] debits = new long[actuel.length];
+            for(int i = 0; i < actuel.length; i++){
+                debits[i] = (actuel[i] - precedent[i]) / periodeS;
+                precedent[i] = actuel[i];
+            }
+            long[] comptes = diffusion.instantane();
+            long[] periode = Histogramme.difference(comptes, diffusionPrecedente[0]);
+            diffusionPrecedente[0] = comptes;
+            long[] sessions = releverSessions();
+
+            TRACE.info(String.format(Locale.ROOT, "Métriques : %d session(s), %d acceptée(s)/s, !msg %d/s, !pv %d/s, reçus %d o/s, envoyés %d o/s,"
+                            + " files %d trame(s) (max %d), diffusion p50 %d µs p99 %d µs",
+                    sessions[0], debits[4], debits[0], debits[1], debits[2], debits[3], sessions[2], sessions[3],
+                    Histogramme.percentile(periode, 50) / 1000, Histogramme.percentile(periode, 99) / 1000));
+        }, periodeS, periodeS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,43 @@
+package Serveur;
+
+import Trace.Trace;
+import java.io.IOException;
+
+/**
+ * Moteur représente la partie réseau du serveur qui accepte les connexions et lit les messages des clients.
+ * Plusieurs moteurs sont disponibles et choisis au démarrage pour pouvoir les comparer sous charge.
+ * @see MoteurThread
+ * @see MoteurNio
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public interface Moteur {
+
+    /**
+     * La pause après une erreur d'acceptation, en millisecondes.
+     * @see Long
+     */
+    long PAUSE_ACCEPTATION_MS = 100;
+
+    /**
+     * Méthode qui démarre le moteur. Elle ne retourne qu'à l'arrêt du serveur.
+     * @throws IOException si le port d'écoute ne peut pas être ouvert.
+     */
+    void demarrer() throws IOException;
+
+    /**
+     * Méthode qui trace une erreur d'acceptation puis attend un peu avant d'accepter de nouveau.
+     * Une telle erreur est souvent passagère, par exemple plus aucun descripteur de fichier libre (EMFILE)
+     * pendant une vague de reconnexions : le moteur ne doit pas s'arrêter, ni tourner à vide en attendant.
+     * @param trace les traces du moteur.
+     * @param e l'erreur d'acceptation.
+     */
+    static void apresErreurAcceptation(Trace trace, IOException e){
+        trace.erreur("Erreur d'acceptation d'une connexion : {}", e.getMessage());
+        try {
+            Thread.sleep(PAUSE_ACCEPTATION_MS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package Serveur;
+
+import Trace.Niveau;
+import Trace.Trace;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * MoteurNio est un moteur non bloquant basé sur ServerSocketChannel et Selector.
+ * Un thread accepte les connexions et les répartit entre un petit nombre de boucles d'événements,
+ * ce qui évite de créer un thread par client.
+ * @see BoucleNio
+ * @see SessionNio
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class MoteurNio implements Moteur {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(MoteurNio.class);
+
+    /**
+     * La taille des tampons du pool.
+     * @see Integer
+     */
+    private static final int TAILLE_TAMPON = 8192;
+
+    /**
+     * Le nombre maximum de tampons conservés dans le pool.
+     * @see Integer
+     */
+    private static final int TAMPONS_MAX = 4096;
+
+    /**
+     * La configuration du serveur.
+     * @see Configuration
+     */
+    private final Configuration config;
+
+    /**
+     * Le routeur partagé par toutes les sessions.
+     * @see Routeur
+     */
+    private final Routeur routeur;
+
+    /**
+     * Méthode qui initialise une instance de la classe MoteurNio.
+     * @param config la configuration du serveur.
+     * @param routeur le routeur partagé par toutes les sessions.
+     */
+    public MoteurNio(Configuration config, Routeur routeur){
+        this.config = config;
+        this.routeur = routeur;
+    }
+
+    /**
+     * Méthode qui démarre les boucles d'événements puis accepte les connexions en les répartissant à tour de rôle.
+     * Si l'admission est limitée, chaque acceptation attend un jeton du seau.
+     * Une erreur d'acceptation est tracée et suivie d'une courte pause ; seule la fermeture du port d'écoute arrête la boucle.
+     * @throws IOException si le port d'écoute ne peut pas être ouvert.
+     */
+    @Override
+    public void demarrer() throws IOException {
+        PoolTampons pool = new PoolTampons(TAILLE_TAMPON, TAMPONS_MAX);
+        BoucleNio[] boucles = new BoucleNio[Math.max(1, config.boucles)];
+
+        for(int i = 0; i < boucles.length; i++){
+            boucles[i] = new BoucleNio(pool, config.poigneeMs);
+            Thread t = new Thread(boucles[i], "boucle-nio-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        Admission admission = config.nouvelleAdmission();
+        try (ServerSocketChannel serveurCanal = ServerSocketChannel.open()){
+            serveurCanal.bind(new InetSocketAddress(config.port), config.backlog);
+            TRACE.info("Serveur prêt en attente de connexion ....");
+
+            int suivante = 0;
+            while(serveurCanal.isOpen()){
+                if(admission != null){
+                    admission.attendre();
+                }
+                SocketChannel canal = null;
+                try {
+                    canal = serveurCanal.accept();
+                    canal.configureBlocking(false);
+                    if(TRACE.estActif(Niveau.DEBUG)){
+                        TRACE.debug("Connexion acceptée : {}", canal.getRemoteAddress());
+                    }
+                } catch (IOException e) {
+                    fermer(canal);
+                    if(serveurCanal.isOpen()){
+                        Moteur.apresErreurAcceptation(TRACE, e);
+                    }
+                    continue;
+                }
+                routeur.getMetriques().acceptee();
+                int id;
+                try {
+                    id = routeur.nouvelIdentifiant();
+                } catch (IllegalStateException e) {
+                    TRACE.avertissement("Connexion refusée : {}", e.getMessage());
+                    fermer(canal);
+                    continue;
+                }
+                BoucleNio boucle = boucles[suivante];
+                suivante = (suivante + 1) % boucles.length;
+
+                boucle.enregistrer(new SessionNio(canal, boucle, routeur, pool, id, config.nouvelleFileSortante()));
+            }
+        }
+    }
+
+    /**
+     * Méthode qui ferme un canal accepté dont la préparation a échoué.
+     * @param canal le canal, null si l'acceptation elle-même a échoué.
+     */
+    private static void fermer(SocketChannel canal){
+        if(canal == null){
+            return;
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            TRACE.erreur("Fermeture de la connexion impossible : {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package Serveur;
+
+import Trace.Trace;
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * MoteurThread est le moteur historique du serveur : chaque connexion est gérée par un ServeurThread.
+ * Chaque ServeurThread utilise deux threads, plateforme ou virtuels selon l'option --threads :
+ * un pour la lecture et un pour vider sa file sortante.
+ * Les threads virtuels gardent le code bloquant de ServeurThread tout en permettant de maintenir
+ * un très grand nombre de connexions inactives.
+ * Le thread d'acceptation ne fait qu'accepter : la poignée de main est lue par le thread de lecture de la connexion,
+ * avec un délai maximum, si bien qu'un client qui n'envoie pas son nom ne retarde pas les autres connexions.
+ * @see ServeurThread
+ * @see ExecutorService
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class MoteurThread implements Moteur {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(MoteurThread.class);
+
+    /**
+     * La longueur maximum de la ligne de poignée de main, en octets.
+     * @see Integer
+     */
+    private static final int POIGNEE_MAX = 4096;
+
+    /**
+     * La taille du tampon du flux d'entrée de chaque connexion, en octets.
+     * @see Integer
+     */
+    private static final int TAILLE_TAMPON = 8192;
+
+    /**
+     * La configuration du serveur.
+     * @see Configuration
+     */
+    private final Configuration config;
+
+    /**
+     * Le routeur partagé par toutes les sessions.
+     * @see Routeur
+     */
+    private final Routeur routeur;
+
+    /**
+     * Méthode qui initialise une instance de la classe MoteurThread.
+     * @param config la configuration du serveur.
+     * @param routeur le routeur partagé par toutes les sessions.
+     */
+    public MoteurThread(Configuration config, Routeur routeur){
+        this.config = config;
+        this.routeur = routeur;
+    }
+
+    /**
+     * Méthode qui crée l'exécuteur des connexions selon l'option --threads.
+     * @return un exécuteur qui démarre un nouveau thread pour chaque connexion.
+     * @throws IllegalArgumentException si le type de threads est inconnu.
+     */
+    private ExecutorService creerExecuteur(){
+        switch (config.threads) {
+            case "virtuels":
+                return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("client-", 0).factory());
+            case "plateforme":
+                return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().name("client-", 0).factory());
+            default:
+                throw new IllegalArgumentException("Type de threads inconnu : " + config.threads);
+        }
+    }
+
+    /**
+     * Méthode qui accepte les connexions et confie chacune d'elles à un thread de l'exécuteur, sans attendre la poignée de main.
+     * Si l'admission est limitée, chaque acceptation attend un jeton du seau.
+     * Une erreur d'acceptation est tracée et suivie d'une courte pause ; seule la fermeture du port d'écoute arrête la boucle.
+     * @throws IOException si le port d'écoute ne peut pas être ouvert.
+     */
+    @Override
+    public void demarrer() throws IOException {
+        Admission admission = config.nouvelleAdmission();
+        try (ServerSocket serverSocket = new ServerSocket(config.port, config.backlog);
+             ExecutorService executeur = creerExecuteur()){
+            TRACE.info("Threads : {}", config.threads);
+            TRACE.info("Serveur prêt en attente de connexion ....");
+
+            while(! serverSocket.isClosed()){
+                if(admission != null){
+                    admission.attendre();
+                }
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    if(! serverSocket.isClosed()){
+                        Moteur.apresErreurAcceptation(TRACE, e);
+                    }
+                    continue;
+                }
+
+                TRACE.debug("Connexion acceptée : {}", socket);
+                routeur.getMetriques().acceptee();
+
+                executeur.execute(() -> accueillir(socket, executeur));
+            }
+        }
+    }
+
+    /**
+     * Méthode exécutée par le thread de lecture d'une nouvelle connexion : lit la poignée de main,
+     * inscrit le client puis lit ses messages jusqu'à la fin de la connexion.
+     * Le flux d'entrée avec tampon de la poignée de main est repris par le ServeurThread :
+     * les octets envoyés par le client juste après son nom ne sont pas perdus.
+     * @param socket la connexion acceptée.
+     * @param executeur l'exécuteur qui reçoit le thread d'écriture de la connexion.
+     */
+    private void accueillir(Socket socket, ExecutorService executeur){
+        try {
+            InputStream entree = new BufferedInputStream(routeur.getMetriques().compter(socket.getInputStream()), TAILLE_TAMPON);
+            String ligne = lirePoignee(socket, entree);
+            if(ligne == null){
+                socket.close();
+                return;
+            }
+            Poignee poignee = Poignee.lire(ligne);
+            TRACE.debug("Name : {}", poignee.nom);
+
+            ServeurThread st = new ServeurThread(socket, entree, routeur, routeur.nouvelIdentifiant(), poignee, config.nouvelleFileSortante());
+            if(poignee.reponse() != null){
+                st.envoyer(poignee.reponse());
+            }
+            if(routeur.connexion(st)){
+                executeur.execute(st::ecrire);
+                st.run();
+            }else{
+                socket.close();
+            }
+        } catch (SocketTimeoutException e) {
+            TRACE.avertissement("Poignée de main trop lente : {}", socket);
+            fermer(socket);
+        } catch (IOException e) {
+            fermer(socket);
+        } catch (IllegalStateException e) {
+            TRACE.avertissement("Connexion refusée : {}", e.getMessage());
+            fermer(socket);
+        }
+    }
+
+    /**
+     * Méthode qui lit la ligne contenant le nom du client connecté et ses capacités, en au plus config.poigneeMs millisecondes.
+     * @param socket la connexion du client.
+     * @param entree le flux d'entrée avec tampon de la connexion, qui garde les octets reçus après la ligne.
+     * @return la ligne sans son retour à la ligne, null si le client s'est déconnecté avant de l'envoyer en entier.
+     * @throws SocketTimeoutException si la ligne n'est pas reçue à temps.
+     * @throws IOException si la lecture échoue ou si la ligne est trop longue.
+     */
+    private String lirePoignee(Socket socket, InputStream entree) throws IOException {
+        long limite = System.nanoTime() + config.poigneeMs * 1_000_000L;
+        byte[] ligne = new byte[POIGNEE_MAX];
+        int n = 0;
+        while(true){
+            if(entree.available() == 0){
+                long reste = (limite - System.nanoTime()) / 1_000_000L;
+                if(reste <= 0){
+                    throw new SocketTimeoutException();
+                }
+                socket.setSoTimeout((int) reste);
+            }
+            int b = entree.read();
+            if(b < 0){
+                return null;
+            }
+            if(b == '\n'){
+                break;
+            }
+            if(n == ligne.length){
+                throw new IOException("Poignée de main trop longue");
+            }
+            ligne[n++] = (byte) b;
+        }
+        socket.setSoTimeout(0);
+        if(n > 0 && ligne[n - 1] == '\r'){
+            n--;
+        }
+        return new String(ligne, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Méthode qui ferme une connexion sans lever d'exception.
+     * @param socket la connexion à fermer.
+     */
+    private static void fermer(Socket socket){
+        try {
+            socket.close();
+        } catch (IOException e) {
+            TRACE.erreur("Fermeture de la connexion impossible", e);
+        }
+    }
+}
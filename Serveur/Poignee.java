@@ -0,0 +1,109 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+
+/**
+ * Poignee représente la première ligne envoyée par un client, qui contient son nom.
+ * Un ancien client n'envoie que son nom et reste sur le protocole texte.
+ * Un client récent envoie !hello:capacités:nom ; le serveur répond !hello:capacités acceptées
+ * et les deux côtés passent ensuite au protocole négocié. La compression n'est acceptée qu'avec le protocole binaire.
+ * @see Binaire
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Poignee {
+
+    /**
+     * Le nom du client.
+     * @see String
+     */
+    public final String nom;
+
+    /**
+     * Vrai si le client a demandé le protocole binaire.
+     */
+    public final boolean binaire;
+
+    /**
+     * Vrai si le client a demandé la compression des trames binaires.
+     */
+    public final boolean compression;
+
+    /**
+     * Vrai si le client a négocié ses capacités et attend une réponse.
+     */
+    private final boolean negociee;
+
+    /**
+     * Méthode qui initialise une instance de la classe Poignee.
+     * @param nom le nom du client.
+     * @param binaire vrai si le client a demandé le protocole binaire.
+     * @param compression vrai si le client a demandé la compression.
+     * @param negociee vrai si le client a négocié ses capacités.
+     */
+    private Poignee(String nom, boolean binaire, boolean compression, boolean negociee){
+        this.nom = nom;
+        this.binaire = binaire;
+        this.compression = binaire && compression;
+        this.negociee = negociee;
+    }
+
+    /**
+     * Méthode qui analyse la première ligne envoyée par un client.
+     * @param ligne la première ligne reçue.
+     * @return la poignée de main du client.
+     */
+    public static Poignee lire(String ligne){
+        Commande commande = new Commande().analyser(ligne);
+        if(commande.getType() != Commande.Type.HELLO || ! commande.aCorps()){
+            return new Poignee(ligne, false, false, false);
+        }
+        boolean binaire = false;
+        boolean compression = false;
+        for(String capacite : commande.champ().split(",")){
+            if(capacite.equals(Binaire.CAPACITE)){
+                binaire = true;
+            }else if(capacite.equals(Binaire.CAPACITE_COMPRESSION)){
+                compression = true;
+            }
+        }
+        return new Poignee(commande.corps(), binaire, compression, true);
+    }
+
+    /**
+     * Méthode qui retourne le format des trames à envoyer au client.
+     * @return le format négocié.
+     */
+    public Trame.Format format(){
+        if(compression){
+            return Trame.Format.COMPRESSE;
+        }
+        return binaire ? Trame.Format.BINAIRE : Trame.Format.TEXTE;
+    }
+
+    /**
+     * Méthode qui indique si le client répond aux !ping : c'est le cas de tout client qui a négocié ses capacités.
+     * Un ancien client, qui n'envoie que son nom, ne connaît pas la commande.
+     * @return vrai si le client a négocié ses capacités.
+     */
+    public boolean repondAuPing(){
+        return negociee;
+    }
+
+    /**
+     * Méthode qui retourne la réponse à envoyer au client avant toute autre trame.
+     * La réponse est toujours envoyée dans le protocole texte.
+     * @return la trame de réponse, null pour un ancien client qui n'attend pas de réponse.
+     */
+    public Trame reponse(){
+        if(! negociee){
+            return null;
+        }
+        String capacites = binaire ? Binaire.CAPACITE : "";
+        if(compression){
+            capacites += "," + Binaire.CAPACITE_COMPRESSION;
+        }
+        return Trame.texteSeul(Commande.Type.HELLO.prefixe + ":" + capacites);
+    }
+}
@@ -0,0 +1,87 @@
+package Serveur;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PoolTampons conserve des ByteBuffer directs de taille fixe pour les réutiliser
+ * au lieu d'en allouer un nouveau à chaque lecture ou écriture du moteur NIO.
+ * @see ByteBuffer
+ * @see MoteurNio
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class PoolTampons {
+
+    /**
+     * Les tampons disponibles.
+     * @see ConcurrentLinkedQueue
+     * @see ByteBuffer
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> libres;
+
+    /**
+     * Le nombre de tampons disponibles dans le pool.
+     * @see AtomicInteger
+     */
+    private final AtomicInteger nbLibres;
+
+    /**
+     * La taille en octets de chaque tampon.
+     * @see Integer
+     */
+    private final int taille;
+
+    /**
+     * Le nombre maximum de tampons conservés dans le pool.
+     * @see Integer
+     */
+    private final int max;
+
+    /**
+     * Méthode qui initialise une instance de la classe PoolTampons.
+     * @param taille la taille en octets de chaque tampon.
+     * @param max le nombre maximum de tampons conservés dans le pool.
+     */
+    public PoolTampons(int taille, int max){
+        this.libres = new ConcurrentLinkedQueue<>();
+        this.nbLibres = new AtomicInteger();
+        this.taille = taille;
+        this.max = max;
+    }
+
+    /**
+     * Méthode qui retourne un tampon vide, pris dans le pool si possible.
+     * @return un tampon prêt à être rempli.
+     */
+    public ByteBuffer acquerir(){
+        ByteBuffer tampon = libres.poll();
+        if(tampon == null){
+            return ByteBuffer.allocateDirect(taille);
+        }
+        nbLibres.decrementAndGet();
+        tampon.clear();
+        return tampon;
+    }
+
+    /**
+     * Méthode qui rend un tampon au pool. Le tampon est abandonné si le pool est plein.
+     * @param tampon le tampon à rendre.
+     */
+    public void liberer(ByteBuffer tampon){
+        if(tampon.capacity() == taille && nbLibres.incrementAndGet() <= max){
+            libres.offer(tampon);
+        }else if(tampon.capacity() == taille){
+            nbLibres.decrementAndGet();
+        }
+    }
+
+    /**
+     * Méthode qui retourne la taille des tampons du pool.
+     * @return la taille en octets d'un tampon.
+     */
+    public int getTaille(){
+        return taille;
+    }
+}
@@ -0,0 +1,478 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Niveau;
+import Trace.Trace;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Recherche est l'index inversé des !msg du journal : chaque mot est associé à la liste croissante
+ * des séquences des messages qui le contiennent.
+ * L'index est construit par son propre thread, qui suit le journal à mesure qu'il est écrit :
+ * la diffusion d'un message ne fait aucun travail d'indexation. Les messages sont relus et découpés en mots hors du verrou,
+ * qui n'est pris que pour ajouter un lot déjà découpé : une recherche n'attend jamais la lecture du journal.
+ * Un message indexe au plus TERMES_MAX mots distincts, ce qui borne la mémoire par message ;
+ * quand l'index dépasse la mémoire maximum, le quart le plus ancien des messages indexés est oublié.
+ * Les !pv ne sont jamais indexés.
+ * @see LecteurJournal
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Recherche implements Runnable {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Recherche.class);
+
+    /**
+     * Le nombre de résultats par page.
+     * @see Integer
+     */
+    public static final int PAGE = 20;
+
+    /**
+     * Le nombre maximum de mots distincts indexés par message, ou pris en compte dans une requête.
+     * @see Integer
+     */
+    public static final int TERMES_MAX = 32;
+
+    /**
+     * La longueur minimum d'un mot indexé.
+     * @see Integer
+     */
+    private static final int TERME_MIN = 2;
+
+    /**
+     * La longueur maximum d'un mot indexé, les mots plus longs sont tronqués.
+     * @see Integer
+     */
+    private static final int TERME_MAX = 32;
+
+    /**
+     * L'estimation de la place occupée par un mot de l'index en plus de ses caractères :
+     * la chaîne, l'entrée de la table et la liste de séquences vide.
+     * @see Integer
+     */
+    private static final int OCTETS_PAR_TERME = 120;
+
+    /**
+     * Le nombre maximum de messages indexés à chaque prise du verrou d'écriture.
+     * @see Integer
+     */
+    private static final int LOT = 1024;
+
+    /**
+     * Le nombre de messages indexés entre deux rapports de l'occupation mémoire.
+     * @see Long
+     */
+    private static final long RAPPORT = 100_000;
+
+    /**
+     * La liste croissante des séquences des messages qui contiennent un mot.
+     */
+    private static final class Occurrences {
+
+        /**
+         * Les séquences, croissantes, dans les taille premières cases.
+         */
+        long[] sequences = new long[2];
+
+        /**
+         * Le nombre de séquences.
+         */
+        int taille;
+
+        /**
+         * Méthode qui indique si un message contient le mot.
+         * @param sequence la séquence du message.
+         * @return vrai si la séquence est dans la liste.
+         */
+        boolean contient(long sequence){
+            return Arrays.binarySearch(sequences, 0, taille, sequence) >= 0;
+        }
+    }
+
+    /**
+     * Le lecteur des segments du journal.
+     * @see LecteurJournal
+     */
+    private final LecteurJournal lecteur;
+
+    /**
+     * La mémoire maximum estimée de l'index, en octets.
+     * @see Long
+     */
+    private final long memoireMax;
+
+    /**
+     * Les listes de séquences par mot.
+     * @see HashMap
+     */
+    private final HashMap<String, Occurrences> termes;
+
+    /**
+     * Le verrou qui protège l'index : écriture par le thread d'indexation, lecture par les requêtes.
+     * @see ReentrantReadWriteLock
+     */
+    private final ReentrantReadWriteLock verrou;
+
+    /**
+     * La séquence du dernier enregistrement du journal indexé.
+     * @see Long
+     */
+    private volatile long indexee;
+
+    /**
+     * La séquence en dessous de laquelle les messages ont été oubliés.
+     * @see Long
+     */
+    private long plancher;
+
+    /**
+     * Le nombre de messages indexés depuis le démarrage.
+     * @see Long
+     */
+    private volatile long messages;
+
+    /**
+     * La mémoire estimée de l'index, en octets.
+     * @see Long
+     */
+    private volatile long memoire;
+
+    /**
+     * L'analyseur des trames indexées, utilisé par le thread d'indexation.
+     * @see Commande
+     */
+    private final Commande commande;
+
+    /**
+     * Les mots distincts du message en cours d'indexation, utilisé par le thread d'indexation.
+     * @see HashSet
+     */
+    private final HashSet<String> mots;
+
+    /**
+     * Les séquences des messages du lot en cours, découpés mais pas encore ajoutés à l'index.
+     * Utilisé par le thread d'indexation.
+     */
+    private final long[] lotSequences;
+
+    /**
+     * Les mots des messages du lot en cours, dans l'ordre de lotSequences. Utilisé par le thread d'indexation.
+     * @see ArrayList
+     */
+    private final ArrayList<String[]> lotMots;
+
+    /**
+     * Méthode qui initialise une instance de la classe Recherche.
+     * L'index n'est construit qu'une fois demarrer() appelée.
+     * @param lecteur le lecteur des segments du journal.
+     * @param memoireMax la mémoire maximum estimée de l'index, en octets.
+     */
+    public Recherche(LecteurJournal lecteur, long memoireMax){
+        this.lecteur = lecteur;
+        this.memoireMax = memoireMax;
+        this.termes = new HashMap<>();
+        this.verrou = new ReentrantReadWriteLock();
+        this.commande = new Commande();
+        this.mots = new HashSet<>();
+        this.lotSequences = new long[LOT];
+        this.lotMots = new ArrayList<>(LOT);
+    }
+
+    /**
+     * Méthode qui démarre le thread d'indexation, qui indexe d'abord tout le journal existant.
+     */
+    public void demarrer(){
+        Thread thread = new Thread(this, "recherche");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Méthode exécutée par le thread d'indexation : attend que le journal écrive de nouveaux messages et les indexe par lots,
+     * jusqu'à ce que le journal soit arrêté et tous ses messages indexés.
+     * Chaque lot est lu et découpé sans verrou ; le verrou d'écriture n'est pris que pour l'ajouter à l'index.
+     * @see Runnable
+     */
+    @Override
+    public void run() {
+        Journal journal = lecteur.getJournal();
+        try {
+            while(true){
+                long ecrite = journal.attendre(indexee, 1000);
+                if(ecrite <= indexee && journal.estFerme()){
+                    TRACE.info("Journal fermé, recherche arrêtée après {} messages indexés", messages);
+                    return;
+                }
+                while(indexee < ecrite){
+                    long fin = Math.min(ecrite, indexee + LOT);
+                    lotMots.clear();
+                    lecteur.parcourir(indexee + 1, fin, 0, this::preparer);
+                    verrou.writeLock().lock();
+                    try {
+                        for(int i = 0; i < lotMots.size(); i++){
+                            indexer(lotSequences[i], lotMots.get(i));
+                        }
+                        indexee = fin;
+                        if(memoire > memoireMax){
+                            oublier();
+                        }
+                    } finally {
+                        verrou.writeLock().unlock();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            TRACE.erreur("Erreur de lecture du journal, recherche arrêtée : {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Méthode qui découpe en mots un enregistrement du journal, s'il s'agit d'un !msg, et l'ajoute au lot en cours.
+     * Elle est appelée par le thread d'indexation, sans verrou.
+     * @param sequence la séquence de l'enregistrement.
+     * @param horodatage la date de réception du message.
+     * @param source l'identifiant du client émetteur.
+     * @param trame la trame binaire du message.
+     */
+    private void preparer(long sequence, long horodatage, int source, ByteBuffer trame){
+        if(trame.get(0) != Binaire.code(Commande.Type.MSG)){
+            return;
+        }
+        byte[] octets = new byte[trame.remaining()];
+        trame.get(octets);
+        try {
+            commande.decoder(octets);
+        } catch (IOException e) {
+            return;
+        }
+
+        decouper(commande.corpsBrut(), mots);
+        lotSequences[lotMots.size()] = sequence;
+        lotMots.add(mots.toArray(new String[0]));
+    }
+
+    /**
+     * Méthode qui ajoute un message découpé à l'index.
+     * Elle est appelée par le thread d'indexation sous le verrou d'écriture.
+     * @param sequence la séquence du message.
+     * @param decoupes les mots distincts du message.
+     */
+    private void indexer(long sequence, String[] decoupes){
+        for(String mot : decoupes){
+            Occurrences occurrences = termes.get(mot);
+            if(occurrences == null){
+                occurrences = new Occurrences();
+                termes.put(mot, occurrences);
+                memoire += OCTETS_PAR_TERME + mot.length() + 8L * occurrences.sequences.length;
+            }
+            if(occurrences.taille == occurrences.sequences.length){
+                memoire += 8L * occurrences.taille;
+                occurrences.sequences = Arrays.copyOf(occurrences.sequences, occurrences.taille * 2);
+            }
+            occurrences.sequences[occurrences.taille++] = sequence;
+        }
+
+        messages++;
+        if(messages % RAPPORT == 0){
+            rapport();
+        }
+    }
+
+    /**
+     * Méthode qui oublie le quart le plus ancien des messages indexés et recalcule la mémoire de l'index.
+     * Elle est appelée par le thread d'indexation sous le verrou d'écriture.
+     */
+    private void oublier(){
+        plancher += Math.max(1, (indexee - plancher) / 4);
+        long total = 0;
+        Iterator<Map.Entry<String, Occurrences>> it = termes.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<String, Occurrences> entree = it.next();
+            Occurrences occurrences = entree.getValue();
+            int debut = Arrays.binarySearch(occurrences.sequences, 0, occurrences.taille, plancher);
+            if(debut < 0){
+                debut = -debut - 1;
+            }
+            if(debut == occurrences.taille){
+                it.remove();
+                continue;
+            }
+            if(debut > 0){
+                occurrences.taille -= debut;
+                occurrences.sequences = Arrays.copyOfRange(occurrences.sequences, debut, debut + Math.max(2, occurrences.taille));
+            }
+            total += OCTETS_PAR_TERME + entree.getKey().length() + 8L * occurrences.sequences.length;
+        }
+        memoire = total;
+        TRACE.info("Recherche : messages antérieurs à {} oubliés", plancher);
+        rapport();
+    }
+
+    /**
+     * Méthode qui affiche l'occupation mémoire de l'index.
+     */
+    private void rapport(){
+        if(! TRACE.estActif(Niveau.INFO)){
+            return;
+        }
+        long conserves = indexee - plancher;
+        TRACE.info("Recherche : " + messages + " messages indexés, " + conserves + " conservés, "
+                + termes.size() + " mots, " + (memoire >> 10) + " Ko (" + memoire / Math.max(1, conserves)
+                + " octets par message conservé)");
+    }
+
+    /**
+     * Méthode qui retourne la mémoire estimée de l'index.
+     * @return la mémoire estimée, en octets.
+     */
+    public long getMemoire(){
+        return memoire;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de messages indexés depuis le démarrage.
+     * @return le nombre de messages indexés.
+     */
+    public long getMessages(){
+        return messages;
+    }
+
+    /**
+     * Méthode qui répond à une commande !search:page:mots.
+     * Le client reçoit d'abord !search:nombreDeRésultats:mots, puis un !result:séquence:message par résultat
+     * de la page demandée, du plus récent au plus ancien. Un message est un résultat s'il contient tous les mots.
+     * Le parcours s'arrête au premier résultat qui suit la page demandée : le nombre de résultats est alors
+     * un minimum, qui dépasse la fin de la page s'il existe une page suivante.
+     * @param source la session qui a émis la recherche.
+     * @param requete la commande reçue.
+     */
+    public void rechercher(Session source, Commande requete){
+        int page;
+        try {
+            page = Math.max(0, requete.champEntier());
+        } catch (NumberFormatException e) {
+            page = 0;
+        }
+        HashSet<String> demandes = new HashSet<>();
+        decouper(requete.corpsBrut(), demandes);
+
+        long[] resultats = new long[PAGE];
+        int nombre = 0;
+        long total = 0;
+        verrou.readLock().lock();
+        try {
+            Occurrences[] listes = new Occurrences[demandes.size()];
+            int i = 0;
+            for(String mot : demandes){
+                listes[i] = termes.get(mot);
+                if(listes[i] == null){
+                    listes = new Occurrences[0];
+                    break;
+                }
+                i++;
+            }
+            if(listes.length > 0){
+                Arrays.sort(listes, (a, b) -> Integer.compare(a.taille, b.taille));
+                long premier = (long) page * PAGE;
+                Occurrences plusCourte = listes[0];
+                for(int k = plusCourte.taille - 1; k >= 0 && total <= premier + PAGE; k--){
+                    long sequence = plusCourte.sequences[k];
+                    if(sequence < plancher){
+                        break;
+                    }
+                    if(contientTout(listes, sequence)){
+                        if(total >= premier && nombre < PAGE){
+                            resultats[nombre++] = sequence;
+                        }
+                        total++;
+                    }
+                }
+            }
+        } finally {
+            verrou.readLock().unlock();
+        }
+
+        StringBuilder entete = new StringBuilder(Commande.Type.SEARCH.prefixe).append(':').append(total).append(':');
+        source.envoyer(requete.ajouterCorps(entete).toString());
+        for(int k = 0; k < nombre; k++){
+            envoyerResultat(source, resultats[k]);
+        }
+    }
+
+    /**
+     * Méthode qui indique si toutes les listes contiennent une séquence.
+     * @param listes les listes des mots de la requête, la première étant celle parcourue.
+     * @param sequence la séquence du message.
+     * @return vrai si le message contient tous les mots.
+     */
+    private static boolean contientTout(Occurrences[] listes, long sequence){
+        for(int i = 1; i < listes.length; i++){
+            if(! listes[i].contient(sequence)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Méthode qui relit un message dans le journal et l'envoie comme résultat de recherche.
+     * @param source la session qui a émis la recherche.
+     * @param sequence la séquence du message.
+     */
+    private void envoyerResultat(Session source, long sequence){
+        try {
+            lecteur.parcourir(sequence, sequence, 0, (s, horodatage, emetteur, trame) -> {
+                byte[] octets = new byte[trame.remaining()];
+                trame.get(octets);
+                try {
+                    Commande message = new Commande().decoder(octets);
+                    StringBuilder sb = new StringBuilder(Commande.Type.RESULT.prefixe).append(':').append(s).append(':');
+                    source.envoyer(message.ajouterCorps(sb).toString());
+                } catch (IOException e) {
+                    TRACE.avertissement("Résultat illisible : {}", s);
+                }
+            });
+        } catch (IOException e) {
+            TRACE.erreur("Erreur de lecture du journal : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Méthode qui découpe un texte en mots distincts, en minuscules, d'au moins TERME_MIN lettres ou chiffres.
+     * @param texte le texte à découper.
+     * @param resultat l'ensemble, vidé puis rempli d'au plus TERMES_MAX mots.
+     */
+    static void decouper(String texte, HashSet<String> resultat){
+        resultat.clear();
+        StringBuilder mot = new StringBuilder(TERME_MAX);
+        for(int i = 0; i <= texte.length() && resultat.size() < TERMES_MAX; i++){
+            char c = i < texte.length() ? texte.charAt(i) : ' ';
+            if(Character.isLetterOrDigit(c)){
+                if(mot.length() < TERME_MAX){
+                    mot.append(Character.toLowerCase(c));
+                }
+            }else{
+                if(mot.length() >= TERME_MIN){
+                    resultat.add(mot.toString());
+                }
+                mot.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package Serveur;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Registre contient les sessions connectées au serveur et peut être partagé par tous les threads.
+ * Les lectures (parcours pour une diffusion, recherche par identifiant ou par nom) ne prennent aucun verrou :
+ * le parcours se fait sur un instantané copié à chaque changement.
+ * Les arrivées et départs sont sérialisés et notifiés aux écouteurs de présence dans le même ordre,
+ * sous un ReentrantLock plutôt qu'un moniteur synchronized, qui immobiliserait le thread porteur d'un thread virtuel.
+ * @see Session
+ * @see EcouteurPresence
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Registre {
+
+    /**
+     * Les sessions connectées. Chaque itération travaille sur un instantané de la liste.
+     * @see CopyOnWriteArrayList
+     * @see Session
+     */
+    private final CopyOnWriteArrayList<Session> sessions;
+
+    /**
+     * Les sessions connectées indexées par identifiant de client.
+     * @see ConcurrentHashMap
+     * @see Integer
+     * @see Session
+     */
+    private final ConcurrentHashMap<Integer, Session> parId;
+
+    /**
+     * Les sessions connectées indexées par nom de client.
+     * Plusieurs clients peuvent porter le même nom : chaque nom est associé à la liste non modifiable
+     * de ses sessions, dans l'ordre d'arrivée, remplacée à chaque arrivée ou départ.
+     * @see ConcurrentHashMap
+     * @see String
+     * @see Session
+     */
+    private final ConcurrentHashMap<String, List<Session>> parNom;
+
+    /**
+     * Les écouteurs notifiés à chaque arrivée ou départ.
+     * @see CopyOnWriteArrayList
+     * @see EcouteurPresence
+     */
+    private final CopyOnWriteArrayList<EcouteurPresence> ecouteurs;
+
+    /**
+     * Le verrou qui protège les arrivées et les départs.
+     * @see ReentrantLock
+     */
+    private final ReentrantLock verrou;
+
+    /**
+     * Méthode qui initialise un registre vide.
+     */
+    public Registre(){
+        this.sessions = new CopyOnWriteArrayList<>();
+        this.parId = new ConcurrentHashMap<>();
+        this.parNom = new ConcurrentHashMap<>();
+        this.ecouteurs = new CopyOnWriteArrayList<>();
+        this.verrou = new ReentrantLock();
+    }
+
+    /**
+     * Méthode qui ajoute un écouteur de présence.
+     * @param ecouteur l'écouteur à notifier.
+     */
+    public void ajouterEcouteur(EcouteurPresence ecouteur){
+        ecouteurs.add(ecouteur);
+    }
+
+    /**
+     * Méthode qui ajoute une session au registre puis notifie les écouteurs.
+     * @param session la session qui arrive.
+     * @return faux si l'identifiant de la session est déjà utilisé, la session n'est alors pas ajoutée.
+     */
+    public boolean rejoindre(Session session){
+        verrou.lock();
+        try {
+            if(parId.putIfAbsent(session.getClientId(), session) != null){
+                return false;
+            }
+            sessions.add(session);
+            parNom.merge(session.getClientName(), List.of(session), Registre::concatener);
+
+            List<Session> presents = sessions();
+            for(EcouteurPresence ecouteur : ecouteurs){
+                ecouteur.arrivee(session, presents);
+            }
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retire une session du registre puis notifie les écouteurs.
+     * Elle ne fait rien si la session n'est pas dans le registre.
+     * @param session la session qui part.
+     */
+    public void quitter(Session session){
+        verrou.lock();
+        try {
+            if(! parId.remove(session.getClientId(), session)){
+                return;
+            }
+            sessions.remove(session);
+            parNom.computeIfPresent(session.getClientName(), (nom, homonymes) -> retirer(homonymes, session));
+
+            List<Session> presents = sessions();
+            for(EcouteurPresence ecouteur : ecouteurs){
+                ecouteur.depart(session, presents);
+            }
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui exécute une action sur les sessions connectées sans qu'aucune arrivée ni départ n'ait lieu pendant l'action.
+     * Les écouteurs de présence sont notifiés sous le même verrou : ils voient toutes les arrivées et départs suivants.
+     * @param action l'action, qui reçoit les sessions connectées.
+     */
+    public void instantane(Consumer<List<Session>> action){
+        verrou.lock();
+        try {
+            action.accept(sessions());
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retourne les sessions connectées, sans verrou ni copie.
+     * Chaque itération de la liste retournée parcourt l'instantané du moment où elle commence.
+     * @return une vue non modifiable des sessions connectées.
+     */
+    public List<Session> sessions(){
+        return Collections.unmodifiableList(sessions);
+    }
+
+    /**
+     * Méthode qui recherche une session par identifiant de client.
+     * @param id l'identifiant du client.
+     * @return la session du client, null si aucun client ne porte cet identifiant.
+     */
+    public Session parId(int id){
+        return parId.get(id);
+    }
+
+    /**
+     * Méthode qui recherche les sessions d'un nom de client.
+     * @param nom le nom du client.
+     * @return la liste non modifiable des sessions portant ce nom, dans l'ordre d'arrivée, vide si aucune.
+     */
+    public List<Session> parNom(String nom){
+        return parNom.getOrDefault(nom, List.of());
+    }
+
+    /**
+     * Méthode qui ajoute des sessions à la fin d'une liste de sessions homonymes.
+     * @param homonymes les sessions déjà présentes sous ce nom.
+     * @param nouvelles les sessions à ajouter.
+     * @return une nouvelle liste non modifiable.
+     */
+    private static List<Session> concatener(List<Session> homonymes, List<Session> nouvelles){
+        ArrayList<Session> liste = new ArrayList<>(homonymes);
+        liste.addAll(nouvelles);
+        return List.copyOf(liste);
+    }
+
+    /**
+     * Méthode qui retire une session d'une liste de sessions homonymes.
+     * @param homonymes les sessions présentes sous ce nom.
+     * @param session la session à retirer.
+     * @return une nouvelle liste non modifiable, ou null si elle est vide pour retirer le nom de l'index.
+     */
+    private static List<Session> retirer(List<Session> homonymes, Session session){
+        ArrayList<Session> liste = new ArrayList<>(homonymes);
+        liste.remove(session);
+        return liste.isEmpty() ? null : List.copyOf(liste);
+    }
+
+    /**
+     * Méthode qui retourne le nombre de sessions connectées.
+     * @return le nombre de sessions connectées.
+     */
+    public int taille(){
+        return parId.size();
+    }
+}
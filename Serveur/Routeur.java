@@ -0,0 +1,614 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Niveau;
+import Trace.Trace;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routeur regroupe la logique du protocole du serveur (!msg, !pv, !addcli, !newcli, !rmcli, !join, !leave, !room, !ping).
+ * La présence est gérée par événements : un !newcli à chaque arrivée, un !rmcli à chaque départ.
+ * Dans un salon nommé, la présence est limitée aux membres du salon : un !join à chaque entrée, un !leave à chaque sortie.
+ * Les !msg et !pv sont ajoutés au journal, s'il est activé, avant d'être envoyés,
+ * les derniers !msg du journal sont rejoués à chaque client qui arrive et les !search sont confiés à l'index de recherche.
+ * Il est partagé par toutes les sessions quel que soit le moteur réseau, ce qui garantit
+ * une sémantique identique entre le moteur ServeurThread et le moteur NIO.
+ * Les annonces de présence et de salon sont envoyées sous le verrou du registre ou des salons, avec Session.annoncer(),
+ * qui n'attend jamais un client lent.
+ * Dans une grappe, les clients des autres nœuds sont des sessions distantes du registre : ils apparaissent dans la présence
+ * et reçoivent les !pv, mais les diffusions ne leur sont pas envoyées une par une, elles sont transmises une fois à chaque nœud.
+ * @see Session
+ * @see Registre
+ * @see Salons
+ * @see Journal
+ * @see Historique
+ * @see Recherche
+ * @see Grappe
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Routeur implements EcouteurPresence, Salons.EcouteurSalon, Grappe.EcouteurGrappe {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Routeur.class);
+
+    /**
+     * La réponse à un !ping, encodée une seule fois.
+     * @see Trame
+     */
+    private static final Trame PONG = Trame.de(Commande.Type.PONG.prefixe);
+
+    /**
+     * Le registre des sessions connectées, partagé par tous les threads du serveur.
+     * @see Registre
+     */
+    private final Registre registre;
+
+    /**
+     * Les membres des salons nommés.
+     * @see Salons
+     */
+    private final Salons salons;
+
+    /**
+     * Le journal des messages, null si la journalisation est désactivée.
+     * @see Journal
+     */
+    private final Journal journal;
+
+    /**
+     * L'historique rejoué aux clients qui arrivent, null s'il est désactivé.
+     * @see Historique
+     */
+    private final Historique historique;
+
+    /**
+     * L'index de recherche des messages, null s'il est désactivé.
+     * @see Recherche
+     */
+    private final Recherche recherche;
+
+    /**
+     * La grappe qui relie ce nœud aux autres, null si ce serveur est seul.
+     * @see Grappe
+     */
+    private final Grappe grappe;
+
+    /**
+     * Les compteurs du serveur, mis à jour à chaque commande reçue et à chaque diffusion.
+     * @see Metriques
+     */
+    private final Metriques metriques;
+
+    /**
+     * Vrai si les arrivées et départs sont regroupés avant d'être annoncés.
+     */
+    private boolean regroupee;
+
+    /**
+     * Les annonces d'arrivée et de départ en attente, dans l'ordre, modifiées sous le verrou du registre.
+     * @see ArrayList
+     */
+    private final ArrayList<String> annonces;
+
+    /**
+     * Les clients de ce nœud arrivés depuis la dernière publication, avec le nombre d'annonces en attente à leur arrivée :
+     * ils ont déjà reçu la liste des connectés, et ne recevront que les annonces suivantes.
+     * @see HashMap
+     */
+    private final HashMap<Session, Integer> arrivants;
+
+    /**
+     * L'historique lu pour chaque client en cours de connexion, avant qu'il prenne le verrou du registre.
+     * @see ConcurrentHashMap
+     */
+    private final ConcurrentHashMap<Session, List<Trame>> passes;
+
+    /**
+     * Le générateur des identifiants des clients de ce nœud.
+     * @see Identifiants
+     */
+    private final Identifiants identifiants;
+
+    /**
+     * Méthode qui initialise une instance de la classe Routeur.
+     * Le routeur doit ensuite être ajouté comme écouteur de présence du registre et des salons.
+     * @param registre le registre des sessions connectées.
+     * @param salons les membres des salons nommés.
+     * @param journal le journal des messages, null pour ne pas journaliser.
+     * @param historique l'historique rejoué aux clients qui arrivent, null pour ne rien rejouer.
+     * @param recherche l'index de recherche des messages, null si la recherche est désactivée.
+     * @param grappe la grappe des autres nœuds, null si ce serveur est seul.
+     * @param identifiants le générateur des identifiants des clients de ce nœud.
+     * @param metriques les compteurs du serveur.
+     */
+    public Routeur(Registre registre, Salons salons, Journal journal, Historique historique, Recherche recherche,
+                   Grappe grappe, Identifiants identifiants, Metriques metriques){
+        this.registre = registre;
+        this.salons = salons;
+        this.journal = journal;
+        this.historique = historique;
+        this.recherche = recherche;
+        this.grappe = grappe;
+        this.identifiants = identifiants;
+        this.metriques = metriques;
+        this.annonces = new ArrayList<>();
+        this.arrivants = new HashMap<>();
+        this.passes = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Méthode qui retourne les compteurs du serveur, mis à jour aussi par les sessions et les moteurs.
+     * @return les métriques du serveur.
+     */
+    public Metriques getMetriques(){
+        return metriques;
+    }
+
+    /**
+     * Méthode qui retourne un nouvel identifiant de client, sans verrou.
+     * L'identifiant est unique dans la grappe : il contient le numéro de ce nœud et n'est utilisé par aucun client connecté.
+     * @return un entier : l'identifiant du client.
+     * @throws IllegalStateException si tous les identifiants de ce nœud sont utilisés.
+     */
+    public int nouvelIdentifiant(){
+        return identifiants.suivant(id -> registre.parId(id) == null);
+    }
+
+    /**
+     * Méthode qui regroupe les arrivées et départs : ils sont annoncés ensemble toutes les delaiMs millisecondes,
+     * en une seule trame par client. Un client qui arrive reçoit tout de suite la liste des connectés et l'historique :
+     * seules les annonces aux clients déjà présents sont regroupées.
+     * Après un redémarrage, n clients qui se reconnectent en même temps ne causent plus n annonces à chaque client.
+     * Elle doit être appelée avant la première connexion.
+     * @param delaiMs la durée du regroupement, en millisecondes.
+     */
+    public void regrouperPresence(long delaiMs){
+        regroupee = true;
+        ScheduledExecutorService planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence");
+            t.setDaemon(true);
+            return t;
+        });
+        planificateur.scheduleAtFixedRate(() -> registre.instantane(this::publierPresence), delaiMs, delaiMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Méthode qui annonce les arrivées et départs regroupés, sous le verrou du registre.
+     * Chaque client déjà présent reçoit toutes les annonces en une trame ; chaque client arrivé depuis la dernière publication
+     * ne reçoit que les annonces postérieures à son arrivée, les précédentes étant déjà prises en compte dans sa liste des connectés.
+     * @param presents les sessions présentes.
+     */
+    private void publierPresence(List<Session> presents){
+        if(annonces.isEmpty()){
+            return;
+        }
+        Trame trame = Trame.lot(annonces);
+        for(Session st : presents){
+            if(st.estDistante()){
+                continue;
+            }
+            Integer connues = arrivants.get(st);
+            if(connues == null){
+                st.annoncer(trame);
+            }else if(connues < annonces.size()){
+                st.annoncer(Trame.lot(annonces.subList(connues, annonces.size())));
+            }
+        }
+        annonces.clear();
+        arrivants.clear();
+    }
+
+    /**
+     * Méthode qui envoie à un nouveau client la liste complète des connectés, lui compris, puis l'historique des derniers messages,
+     * déjà lu par connexion() : sous le verrou du registre, l'historique n'est que placé dans la file sortante.
+     * @param session la session du nouveau client.
+     * @param presents les sessions présentes.
+     */
+    private void accueillir(Session session, List<Session> presents){
+        sendInfoToClient(session, presents);
+        List<Trame> passe = passes.get(session);
+        if(passe != null){
+            for(Trame trame : passe){
+                session.annoncer(trame);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui ajoute une session au registre des clients présents sur le serveur.
+     * L'historique est lu dans les segments du journal avant de prendre le verrou du registre,
+     * et envoyé sous ce verrou juste après la liste des connectés : il précède ainsi tout message diffusé au client.
+     * @param session la session du client qui vient de se connecter.
+     * @return faux si l'identifiant du client est déjà utilisé, la session doit alors être fermée.
+     */
+    public boolean connexion(Session session){
+        if(historique == null){
+            return registre.rejoindre(session);
+        }
+        passes.put(session, historique.lire(session.getFileSortante().placesLibres() - 1));
+        try {
+            return registre.rejoindre(session);
+        } finally {
+            passes.remove(session);
+        }
+    }
+
+    /**
+     * Méthode appelée par le registre à l'arrivée d'un client.
+     * Le nouveau client reçoit une seule fois la liste complète des connectés (lui compris),
+     * puis l'historique des derniers messages ; les autres clients ne reçoivent que l'annonce de son arrivée.
+     * Un client d'un autre nœud est seulement annoncé aux clients de ce nœud.
+     * Si la présence est regroupée, le nouveau client est accueilli tout de suite, mais son arrivée
+     * n'est annoncée aux autres clients qu'à la prochaine publication.
+     * @param session la session du client qui vient d'arriver.
+     * @param presents les sessions présentes, le nouveau client compris.
+     */
+    @Override
+    public void arrivee(Session session, List<Session> presents){
+        TRACE.debug("Nombre clients serveur : {}", presents.size());
+
+        String annonce = "!newcli:"+session.getClientId()+":"+session.getClientName();
+        if(! session.estDistante()){
+            accueillir(session, presents);
+        }
+        if(regroupee){
+            annonces.add(annonce);
+            if(! session.estDistante()){
+                arrivants.put(session, annonces.size());
+            }
+            return;
+        }
+
+        Trame msg = Trame.de(annonce);
+        for(Session st : presents){
+            if(st != session && ! st.estDistante()){
+                st.annoncer(msg);
+            }
+        }
+    }
+
+    /**
+     * Méthode appelée par le registre au départ d'un client : avertit tous les clients de ce nœud de la déconnexion.
+     * Si la présence est regroupée, le départ n'est annoncé qu'à la prochaine publication.
+     * @param session la session du client qui vient de partir.
+     * @param presents les sessions encore présentes.
+     */
+    @Override
+    public void depart(Session session, List<Session> presents){
+        if(! session.estDistante() && TRACE.estActif(Niveau.DEBUG)){
+            FileSortante file = session.getFileSortante();
+            TRACE.debug("Fin du client : {} ({})", session.getClientName(), "lignes envoyées : " + file.getEnfilees()
+                    + ", perdues : " + file.getPerdues() + ", lignes par vidage : " + String.format("%.1f", file.getLignesParVidage()));
+        }
+        if(regroupee){
+            arrivants.remove(session);
+            annonces.add("!rmcli:"+session.getClientId());
+            return;
+        }
+        Trame msqQuit = Trame.de("!rmcli:"+session.getClientId());
+        for(Session st : presents){
+            if(! st.estDistante()){
+                st.annoncer(msqQuit);
+            }
+        }
+    }
+
+    /**
+     * Méthode qui traite une ligne reçue d'un client.
+     * @param source la session qui a émis la ligne.
+     * @param commande la ligne reçue, déjà analysée par la session.
+     */
+    public void traiter(Session source, Commande commande){
+        metriques.commande(commande.getType());
+        switch (commande.getType()) {
+            case MSG:
+                if(! commande.aCorps()){
+                    break;
+                }
+                Trame trame = messagePublic(source, commande);
+                journaliser(source, trame.octets(Trame.Format.BINAIRE));
+                TRACE.debug("Message reçu srv : {}", trame);
+                sendToClients(trame);
+                if(grappe != null){
+                    grappe.diffuser(source.getClientId(), trame);
+                }
+                break;
+            case PV:
+                sendPrivate(source, commande);
+                break;
+            case SEARCH:
+                if(recherche != null){
+                    recherche.rechercher(source, commande);
+                }else{
+                    source.envoyer(commande.ajouterCorps(new StringBuilder(Commande.Type.SEARCH.prefixe).append(":0:")).toString());
+                }
+                break;
+            case JOIN:
+                if(commande.aChamp() && Salons.nomValide(commande.champ())){
+                    salons.entrer(commande.champ(), source);
+                }
+                break;
+            case LEAVE:
+                if(commande.aChamp()){
+                    salons.sortir(commande.champ(), source);
+                }
+                break;
+            case ROOM:
+                sendToRoom(source, commande);
+                break;
+            case PING:
+                source.envoyer(PONG);
+                break;
+            case ADDCLI:
+                TRACE.debug("Message reçu srv : {}", commande.ligne());
+                sendInfoToClient(source, registre.sessions());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Méthode qui envoie une chaine de caractères à tous les clients présents sur le serveur.
+     * La chaîne est encodée une seule fois et la même trame est envoyée à chaque client.
+     * @param outputString la chaîne de caractère à émettre.
+     */
+    public void sendToClients(String outputString){
+        sendToClients(Trame.de(outputString));
+    }
+
+    /**
+     * Méthode qui envoie une trame déjà encodée à tous les clients connectés sur ce serveur.
+     * Les clients des autres nœuds ne la reçoivent que si elle est aussi transmise à la grappe.
+     * La durée de l'envoi à tous les clients est enregistrée dans les métriques.
+     * @param trame la trame à émettre.
+     */
+    public void sendToClients(Trame trame){
+        long debut = System.nanoTime();
+        for(Session st : registre.sessions()){
+            if(! st.estDistante()){
+                st.envoyer(trame);
+            }
+        }
+        metriques.getDiffusion().enregistrer(System.nanoTime() - debut);
+    }
+
+    /**
+     * Méthode appelée à la réception d'un !msg transmis par un autre nœud.
+     * Le message est journalisé sur ce nœud aussi, pour que l'historique et la recherche couvrent toute la grappe,
+     * puis envoyé aux clients de ce nœud. Le lecteur du lien ne doit pas se bloquer : si la file du journal est pleine,
+     * le message est seulement compté comme perdu par le journal.
+     * @param source l'identifiant du client qui a émis le message.
+     * @param trame la trame binaire du message.
+     */
+    @Override
+    public void diffusion(int source, byte[] trame){
+        if(journal != null){
+            journal.ajouter(source, trame, false);
+        }
+        sendToClients(Trame.binaire(trame));
+    }
+
+    /**
+     * Méthode appelée à la réception d'un !room transmis par un autre nœud : l'envoie aux membres du salon sur ce nœud.
+     * @param source l'identifiant du client qui a émis le message.
+     * @param salon le nom du salon.
+     * @param trame la trame binaire du message, déjà formatée pour les membres.
+     */
+    @Override
+    public void salon(int source, String salon, byte[] trame){
+        sendToMembers(salon, Trame.binaire(trame));
+    }
+
+    /**
+     * Méthode qui envoie une trame aux membres d'un salon connectés sur ce serveur.
+     * La durée de l'envoi à tous les membres est enregistrée dans les métriques.
+     * @param salon le nom du salon.
+     * @param trame la trame à émettre.
+     */
+    private void sendToMembers(String salon, Trame trame){
+        long debut = System.nanoTime();
+        for(Session membre : salons.membres(salon)){
+            membre.envoyer(trame);
+        }
+        metriques.getSalon().enregistrer(System.nanoTime() - debut);
+    }
+
+    /**
+     * Méthode appelée à l'entrée d'une session dans un salon.
+     * Le nouveau membre reçoit la liste complète des membres (lui compris) en une seule trame groupée, comme dans sendInfoToClient,
+     * les autres membres ne reçoivent que son entrée.
+     * @param salon le nom du salon.
+     * @param session la session qui vient d'entrer.
+     * @param membres les membres du salon, la nouvelle session comprise.
+     */
+    @Override
+    public void entree(String salon, Session session, List<Session> membres){
+        String ligne = Commande.Type.JOIN.prefixe + ":" + salon + ":" + session.getClientId() + ":" + session.getClientName();
+        Trame annonce = Trame.de(ligne);
+        ArrayList<String> lignes = new ArrayList<>(membres.size());
+        for(Session membre : membres){
+            if(membre != session){
+                membre.annoncer(annonce);
+                lignes.add(Commande.Type.JOIN.prefixe + ":" + salon + ":" + membre.getClientId() + ":" + membre.getClientName());
+            }
+        }
+        lignes.add(ligne);
+        session.annoncer(Trame.lot(lignes));
+    }
+
+    /**
+     * Méthode appelée à la sortie d'une session d'un salon : avertit les membres restants et la session qui sort.
+     * @param salon le nom du salon.
+     * @param session la session qui vient de sortir.
+     * @param membres les membres restants du salon.
+     */
+    @Override
+    public void sortie(String salon, Session session, List<Session> membres){
+        Trame annonce = Trame.de(Commande.Type.LEAVE.prefixe + ":" + salon + ":" + session.getClientId());
+        for(Session membre : membres){
+            membre.annoncer(annonce);
+        }
+        session.annoncer(annonce);
+    }
+
+    /**
+     * Méthode qui envoie un message aux seuls membres d'un salon, dont l'émetteur doit faire partie.
+     * Dans une grappe, le message est aussi transmis, par le nœud propriétaire du salon, aux seuls nœuds qui ont des membres du salon.
+     * Le corps d'un message reçu en binaire est recopié tel quel, précédé de l'identifiant de l'émetteur.
+     * @param source la session qui a émis le message.
+     * @param commande le message reçu par le serveur, de la forme !room:salon:message.
+     */
+    private void sendToRoom(Session source, Commande commande){
+        if(! commande.aCorps()){
+            return;
+        }
+        String salon = commande.champ();
+        if(! salons.estMembre(salon, source)){
+            return;
+        }
+
+        Trame trame;
+        if(commande.estBinaire()){
+            byte[] octets = commande.octets();
+            trame = Trame.binaire(Binaire.trame(Commande.Type.ROOM, salon, source.getClientId() + ":",
+                    octets, commande.debutCorpsOctets(), octets.length));
+        }else{
+            StringBuilder sb = new StringBuilder(Commande.Type.ROOM.prefixe).append(':').append(salon).append(':')
+                    .append(source.getClientId()).append(':');
+            trame = Trame.de(commande.ajouterCorps(sb).toString());
+        }
+        journaliser(source, commande.estBinaire() ? commande.octets()
+                : Binaire.trame(Commande.Type.ROOM, salon, commande.corpsBrut()));
+
+        sendToMembers(salon, trame);
+        if(grappe != null){
+            grappe.diffuserSalon(source.getClientId(), salon, trame);
+        }
+    }
+
+    /**
+     * Méthode qui construit la trame d'un message public dont l'émetteur est toujours la session source,
+     * quel que soit l'identifiant écrit par le client.
+     * La ligne ou la trame reçue est reprise telle quelle, compressée comprise, si elle porte déjà cet identifiant ;
+     * sinon son champ est réécrit, comme pour !pv et !room.
+     * @param source la session qui a émis le message.
+     * @param commande le message reçu, avec un corps.
+     * @return la trame du message à diffuser, journaliser et transmettre à la grappe.
+     */
+    private Trame messagePublic(Session source, Commande commande){
+        if(emisPar(source, commande)){
+            return commande.estBinaire()
+                    ? Trame.binaire(commande.octets(), commande.octetsCompresses())
+                    : Trame.de(commande.ligne());
+        }
+        if(commande.estBinaire()){
+            byte[] octets = commande.octets();
+            return Trame.binaire(Binaire.trame(Commande.Type.MSG, String.valueOf(source.getClientId()),
+                    octets, commande.debutCorpsOctets(), octets.length));
+        }
+        StringBuilder sb = new StringBuilder(Commande.Type.MSG.prefixe).append(':').append(source.getClientId()).append(':');
+        return Trame.de(commande.ajouterCorps(sb).toString());
+    }
+
+    /**
+     * Méthode qui indique si le champ d'une commande est l'identifiant de la session qui l'a émise.
+     * @param source la session qui a émis la commande.
+     * @param commande la commande reçue.
+     * @return vrai si le champ est un entier égal à l'identifiant de la source.
+     */
+    private static boolean emisPar(Session source, Commande commande){
+        try {
+            return commande.champEntier() == source.getClientId();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Méthode permettant d'envoyer à un client la liste complète des clients présents sur le serveur.
+     * La liste est envoyée en une seule trame : elle n'occupe qu'une place de la file sortante du client, quelle que soit sa longueur.
+     * @param client la session qui reçoit la liste.
+     * @param presents les sessions présentes sur le serveur.
+     */
+    private void sendInfoToClient(Session client, List<Session> presents){
+        ArrayList<String> lignes = new ArrayList<>(presents.size());
+        for(Session st : presents){
+            lignes.add("!newcli:"+st.getClientId()+":"+st.getClientName());
+        }
+        client.annoncer(Trame.lot(lignes));
+    }
+
+    /**
+     * Méthode qui formate et envoie le message privé au client concerné.
+     * Le destinataire est trouvé par une seule recherche dans l'index des noms du registre,
+     * qui contient aussi les clients des autres nœuds de la grappe.
+     * Le corps d'un message reçu en binaire est recopié tel quel, sans être parcouru.
+     * Si plusieurs clients portent ce nom, ils reçoivent tous le message et l'émetteur en reçoit une copie.
+     * @param source la session qui a émis le message.
+     * @param commande le message reçu par le serveur, de la forme !pv:nomDestinataire:message.
+     */
+    private void sendPrivate(Session source, Commande commande){
+        if(! commande.aCorps()){
+            return;
+        }
+        String dest = commande.champ();
+
+        List<Session> destinataires = registre.parNom(dest);
+        if(destinataires.isEmpty()){
+            String err = "!errNoCli:"+dest;
+            source.envoyer(err);
+            return;
+        }
+
+        journaliser(source, commande.estBinaire() ? commande.octets()
+                : Binaire.trame(Commande.Type.PV, dest, commande.corpsBrut()));
+
+        Trame finalMessage;
+        if(commande.estBinaire()){
+            byte[] octets = commande.octets();
+            finalMessage = Trame.binaire(Binaire.trame(Commande.Type.PV, String.valueOf(source.getClientId()),
+                    octets, commande.debutCorpsOctets(), octets.length));
+        }else{
+            StringBuilder sb = new StringBuilder("!pv:").append(source.getClientId()).append(':');
+            finalMessage = Trame.de(commande.ajouterCorps(sb).toString());
+        }
+        for(Session st : destinataires){
+            st.envoyer(finalMessage);
+        }
+        source.envoyer(finalMessage);
+    }
+
+    /**
+     * Méthode qui ajoute un message au journal, s'il est activé.
+     * Un !pv est journalisé tel qu'il a été reçu, avec le nom du destinataire, pour garder l'émetteur et le destinataire.
+     * Seule une session dont le thread de lecture peut attendre attend une place dans la file du journal.
+     * @param source la session qui a émis le message.
+     * @param trame la trame binaire du message.
+     */
+    private void journaliser(Session source, byte[] trame){
+        if(journal != null){
+            journal.ajouter(source.getClientId(), trame, source.peutAttendre());
+        }
+    }
+
+    /**
+     * Méthode qui retire une session du registre, ce qui avertit tous les clients de la déconnexion.
+     * @param session la session du client qui s'est déconnecté.
+     */
+    public void deconnexion(Session session){
+        salons.sortirDeTout(session);
+        registre.quitter(session);
+    }
+}
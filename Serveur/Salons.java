@@ -0,0 +1,262 @@
+package Serveur;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Salons contient les membres de chaque salon nommé du serveur.
+ * Chaque salon est associé à la liste non modifiable de ses membres, remplacée à chaque entrée ou sortie :
+ * une diffusion dans un salon ne parcourt que ses membres, sans verrou.
+ * Le salon principal, celui des !msg, n'est pas un salon nommé : il contient toujours tous les clients du Registre.
+ * Les entrées et sorties sont sérialisées et notifiées aux écouteurs dans le même ordre.
+ * @see Registre
+ * @see Routeur
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Salons {
+
+    /**
+     * EcouteurSalon est notifié de chaque entrée et de chaque sortie d'un salon.
+     */
+    public interface EcouteurSalon {
+
+        /**
+         * Méthode appelée après l'entrée d'une session dans un salon.
+         * @param salon le nom du salon.
+         * @param session la session qui vient d'entrer.
+         * @param membres les membres du salon, la nouvelle session comprise.
+         */
+        void entree(String salon, Session session, List<Session> membres);
+
+        /**
+         * Méthode appelée après la sortie d'une session d'un salon.
+         * @param salon le nom du salon.
+         * @param session la session qui vient de sortir.
+         * @param membres les membres restants du salon.
+         */
+        void sortie(String salon, Session session, List<Session> membres);
+    }
+
+    /**
+     * La longueur maximum du nom d'un salon.
+     * @see Integer
+     */
+    public static final int NOM_MAX = 64;
+
+    /**
+     * Le nombre maximum de salons d'une même session.
+     * @see Integer
+     */
+    public static final int SALONS_MAX = 64;
+
+    /**
+     * Les membres de chaque salon. Un salon vide est retiré.
+     * @see ConcurrentHashMap
+     */
+    private final ConcurrentHashMap<String, List<Session>> membres;
+
+    /**
+     * Les salons de chaque session, indexés par identifiant de client.
+     * @see ConcurrentHashMap
+     */
+    private final ConcurrentHashMap<Integer, List<String>> parSession;
+
+    /**
+     * Les écouteurs notifiés à chaque entrée ou sortie.
+     * @see CopyOnWriteArrayList
+     * @see EcouteurSalon
+     */
+    private final CopyOnWriteArrayList<EcouteurSalon> ecouteurs;
+
+    /**
+     * Le registre des clients connectés : seule une session encore enregistrée peut entrer dans un salon.
+     * @see Registre
+     */
+    private final Registre registre;
+
+    /**
+     * Le verrou qui protège les entrées et les sorties.
+     * @see ReentrantLock
+     */
+    private final ReentrantLock verrou;
+
+    /**
+     * Méthode qui initialise des salons vides.
+     * @param registre le registre des clients connectés.
+     */
+    public Salons(Registre registre){
+        this.registre = registre;
+        this.membres = new ConcurrentHashMap<>();
+        this.parSession = new ConcurrentHashMap<>();
+        this.ecouteurs = new CopyOnWriteArrayList<>();
+        this.verrou = new ReentrantLock();
+    }
+
+    /**
+     * Méthode qui ajoute un écouteur des entrées et sorties.
+     * @param ecouteur l'écouteur à notifier.
+     */
+    public void ajouterEcouteur(EcouteurSalon ecouteur){
+        ecouteurs.add(ecouteur);
+    }
+
+    /**
+     * Méthode qui indique si un nom de salon est valide.
+     * @param salon le nom du salon.
+     * @return vrai si le nom n'est pas vide, ne contient pas ':' et ne dépasse pas NOM_MAX caractères.
+     */
+    public static boolean nomValide(String salon){
+        return ! salon.isEmpty() && salon.length() <= NOM_MAX && salon.indexOf(':') < 0;
+    }
+
+    /**
+     * Méthode qui fait entrer une session dans un salon, créé s'il n'existe pas, puis notifie les écouteurs.
+     * Une session fermée ou déjà retirée du registre est refusée : sa sortie de tous ses salons a peut-être déjà eu lieu,
+     * et elle resterait membre pour toujours. Une session acceptée ici sera au contraire retirée par sortirDeTout,
+     * appelé après que sa fermeture a été marquée.
+     * @param salon le nom du salon, valide.
+     * @param session la session qui entre.
+     * @return faux si la session est fermée, déjà dans le salon ou dans SALONS_MAX salons.
+     */
+    public boolean entrer(String salon, Session session){
+        verrou.lock();
+        try {
+            if(session.estFermee() || registre.parId(session.getClientId()) != session){
+                return false;
+            }
+            List<String> siens = parSession.getOrDefault(session.getClientId(), List.of());
+            if(siens.contains(salon) || siens.size() >= SALONS_MAX){
+                return false;
+            }
+            parSession.put(session.getClientId(), ajouter(siens, salon));
+            List<Session> liste = membres.merge(salon, List.of(session), Salons::ajouter);
+            for(EcouteurSalon ecouteur : ecouteurs){
+                ecouteur.entree(salon, session, liste);
+            }
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui fait sortir une session d'un salon puis notifie les écouteurs.
+     * @param salon le nom du salon.
+     * @param session la session qui sort.
+     * @return faux si la session n'était pas dans le salon.
+     */
+    public boolean sortir(String salon, Session session){
+        verrou.lock();
+        try {
+            List<String> siens = parSession.getOrDefault(session.getClientId(), List.of());
+            if(! siens.contains(salon)){
+                return false;
+            }
+            List<String> restants = retirer(siens, salon);
+            if(restants == null){
+                parSession.remove(session.getClientId());
+            }else{
+                parSession.put(session.getClientId(), restants);
+            }
+            List<Session> liste = membres.computeIfPresent(salon, (nom, anciens) -> retirer(anciens, session));
+            for(EcouteurSalon ecouteur : ecouteurs){
+                ecouteur.sortie(salon, session, liste == null ? List.of() : liste);
+            }
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui fait sortir une session de tous ses salons, à sa déconnexion.
+     * @param session la session qui part.
+     */
+    public void sortirDeTout(Session session){
+        verrou.lock();
+        try {
+            for(String salon : parSession.getOrDefault(session.getClientId(), List.of())){
+                sortir(salon, session);
+            }
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui retourne les membres d'un salon, sans verrou ni copie.
+     * @param salon le nom du salon.
+     * @return la liste non modifiable des membres, vide si le salon n'existe pas.
+     */
+    public List<Session> membres(String salon){
+        return membres.getOrDefault(salon, List.of());
+    }
+
+    /**
+     * Méthode qui indique si une session est membre d'un salon.
+     * @param salon le nom du salon.
+     * @param session la session.
+     * @return vrai si la session est dans le salon.
+     */
+    public boolean estMembre(String salon, Session session){
+        return parSession.getOrDefault(session.getClientId(), List.of()).contains(salon);
+    }
+
+    /**
+     * Méthode qui retourne les noms des salons nommés ouverts.
+     * @return une vue des noms des salons qui ont au moins un membre.
+     */
+    public Set<String> noms(){
+        return membres.keySet();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de salons nommés ouverts.
+     * @return le nombre de salons qui ont au moins un membre.
+     */
+    public int taille(){
+        return membres.size();
+    }
+
+    /**
+     * Méthode qui ajoute des éléments à la fin d'une liste non modifiable.
+     * @param liste la liste actuelle.
+     * @param nouveaux les éléments à ajouter.
+     * @param <T> le type des éléments.
+     * @return une nouvelle liste non modifiable.
+     */
+    private static <T> List<T> ajouter(List<T> liste, List<T> nouveaux){
+        ArrayList<T> copie = new ArrayList<>(liste);
+        copie.addAll(nouveaux);
+        return List.copyOf(copie);
+    }
+
+    /**
+     * Méthode qui ajoute un élément à la fin d'une liste non modifiable.
+     * @param liste la liste actuelle.
+     * @param nouveau l'élément à ajouter.
+     * @param <T> le type des éléments.
+     * @return une nouvelle liste non modifiable.
+     */
+    private static <T> List<T> ajouter(List<T> liste, T nouveau){
+        return ajouter(liste, List.of(nouveau));
+    }
+
+    /**
+     * Méthode qui retire un élément d'une liste non modifiable.
+     * @param liste la liste actuelle.
+     * @param ancien l'élément à retirer.
+     * @param <T> le type des éléments.
+     * @return une nouvelle liste non modifiable, ou null si elle est vide.
+     */
+    private static <T> List<T> retirer(List<T> liste, T ancien){
+        ArrayList<T> copie = new ArrayList<>(liste);
+        copie.remove(ancien);
+        return copie.isEmpty() ? null : List.copyOf(copie);
+    }
+}
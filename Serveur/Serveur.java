@@ -1,65 +1,96 @@
 package Serveur;
 
+import Trace.Trace;
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Random;
 
 /**
  * Serveur est la classe représentant le serveur sur lequel les clients se connectent.
  * Cette classe Serveur contient la méthode main de la partie serveur.
+ * Le moteur réseau est choisi au démarrage avec l'option --moteur=thread ou --moteur=nio.
+ * @see Configuration
  * @author Chauvin Lucien
  * @version 1.0
  */
 public class Serveur {
 
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(Serveur.class);
+
     /**
      * Méthode permettant de rendre la classe executable.
      * @param args un tableau de chaînes de caractères.
      */
     public static void main(String[] args) {
 
-        ArrayList<ServeurThread> serveurThreadList = new ArrayList<ServeurThread>();
-        HashMap<Integer, String> serveurUserList = new HashMap<>();
-
-        try (ServerSocket serverSocket = new ServerSocket(54000)){
-            System.out.println("Serveur prêt en attente de connexion .... ");
-
-            while(true){
-                Socket socket = serverSocket.accept();
-
-                System.out.println("Connexion acceptée : " +socket.toString());
-                System.out.println(socket);
+        Configuration config = Configuration.lire(args);
+        Trace.setNiveau(config.traces);
+        Journal journal;
+        try {
+            journal = config.ouvrirJournal();
+        } catch (IOException e) {
+            TRACE.erreur("Impossible d'ouvrir le journal : {}", e.getMessage());
+            return;
+        }
+        if(journal != null){
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::fermer));
+        }
 
-                String name = getSocketInfo(socket);
+        Registre registre = new Registre();
+        Salons salons = new Salons(registre);
+        LecteurJournal lecteur = journal != null ? new LecteurJournal(journal) : null;
+        Grappe grappe = config.nouvelleGrappe(registre, salons);
+        Metriques metriques = new Metriques(registre);
+        Routeur routeur = new Routeur(registre, salons, journal, config.nouvelHistorique(lecteur), config.nouvelleRecherche(lecteur),
+                grappe, new Identifiants(config.noeud), metriques);
+        registre.ajouterEcouteur(metriques);
+        Faucheuse faucheuse = config.nouvelleFaucheuse(registre, metriques);
+        if(faucheuse != null){
+            registre.ajouterEcouteur(faucheuse);
+            faucheuse.demarrer();
+        }
+        registre.ajouterEcouteur(routeur);
+        salons.ajouterEcouteur(routeur);
+        if(config.presenceMs > 0){
+            routeur.regrouperPresence(config.presenceMs);
+        }
+        if(config.metriquesPort > 0){
+            try {
+                metriques.servir(config.metriquesPort);
+            } catch (IOException e) {
+                TRACE.erreur("Impossible d'ouvrir le port des métriques : {}", e.getMessage());
+                return;
+            }
+        }
+        if(config.metriquesS > 0){
+            metriques.journaliser(config.metriquesS);
+        }
+        if(grappe != null){
+            metriques.suivreAnneau(grappe.getAnneau());
+            grappe.ajouterEcouteur(routeur);
+            try {
+                grappe.demarrer();
+            } catch (IOException e) {
+                TRACE.erreur("Impossible d'ouvrir le port de la grappe : {}", e.getMessage());
+                return;
+            }
+        }
 
-                Random rd = new Random();
-                int id = rd.nextInt();
+        Moteur moteur;
+        switch (config.moteur) {
+            case "nio" -> moteur = new MoteurNio(config, routeur);
+            case "thread" -> moteur = new MoteurThread(config, routeur);
+            default -> throw new IllegalArgumentException("Moteur inconnu : " + config.moteur);
+        }
+        TRACE.info("Moteur : {}", config.moteur);
 
-                ServeurThread st = new ServeurThread(socket, serveurThreadList, id, name, serveurUserList);
-                serveurThreadList.add(st);
-                serveurUserList.put(id, name);
-                System.out.println("Nombre clients serveur : " + serveurThreadList.size());
-                st.start();
-            }
+        try {
+            moteur.demarrer();
         } catch (IOException e) {
-            System.out.println("Erreur dans Serveur main " + e.getStackTrace() );
+            TRACE.erreur("Erreur dans Serveur main", e);
         }
     }
 
-    /**
-     * Méthode qui attends le message contenant le nom du client connecté.
-     * @param socket le socket de connexion du serveur vers le client.
-     * @return le nom du client.
-     * @throws IOException si getInputStreamReader() retourne une erreur.
-     */
-    private static String getSocketInfo(Socket socket) throws IOException{
-        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        String name = in.readLine();
-        System.out.println("Name : " + name);
-        return name;
-    }
-
 }
@@ -1,19 +1,32 @@
 package Serveur;
 
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Trace;
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.regex.Pattern;
 
 /**
  * Classe permettant de gérer les interactions entre le client et le serveur
- * Cette classe hérite de la classe Thread pour pouvoir être exécutée dans un thread séparé du client.
- * @see Thread
+ * Cette classe implémente Runnable pour pouvoir être exécutée dans un thread séparé, plateforme ou virtuel,
+ * selon l'exécuteur choisi par MoteurThread.
+ * La logique du protocole est déléguée au Routeur partagé par toutes les sessions.
+ * @see Runnable
+ * @see MoteurThread
+ * @see Session
+ * @see Routeur
  * @author Chauvin Lucien
  * @version 1.0
  */
-public class ServeurThread extends Thread{
+public class ServeurThread implements Runnable, Session{
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(ServeurThread.class);
 
     /**
      * Le socket de connexion entre le serveur et le client.
@@ -28,25 +41,41 @@ public class ServeurThread extends Thread{
     private String name;
 
     /**
-     * La liste des différentes instances de ServeurThread. Chaque ServerThread représente une connexion avec un client.
-     * @see ArrayList
-     * @see ServeurThread
+     * Le routeur qui applique le protocole à l'ensemble des clients connectés.
+     * @see Routeur
+     */
+    private final Routeur routeur;
+
+    /**
+     * Le flux d'entrée avec tampon de la connexion, déjà utilisé pour lire la poignée de main.
+     * @see InputStream
      */
-    private ArrayList<ServeurThread> threadList;
+    private final InputStream entree;
 
     /**
-     * La liste des identifiants des clients présents sur le serveur.
-     * @see HashMap
+     * La taille du tampon du flux de sortie vers le client, en octets.
      * @see Integer
-     * @see String
      */
-    private HashMap<Integer, String> clientList;
+    private static final int TAILLE_TAMPON = 65536;
+
+    /**
+     * Le flux de sortie du serveur vers le client, dans lequel les trames déjà encodées sont écrites.
+     * Il n'est pas vidé à chaque trame : ecrire() le vide une fois par lot.
+     * @see BufferedOutputStream
+     */
+    private final BufferedOutputStream writer;
+
+    /**
+     * Le format négocié par le client : texte, binaire ou binaire compressé.
+     * @see Trame.Format
+     */
+    private final Trame.Format format;
 
     /**
-     * Écrivain qui écrit un text formaté dans le flux de sortie du serveur vers le client.
-     * @see PrintWriter
+     * La file des lignes en attente d'envoi vers le client, vidée par la méthode ecrire().
+     * @see FileSortante
      */
-    private PrintWriter writer;
+    private final FileSortante file;
 
     /**
      * L'identifiant du client de cette connexion
@@ -54,146 +83,258 @@ public class ServeurThread extends Thread{
      */
     private final int id;
 
+    /**
+     * Vrai si le client répond aux !ping.
+     */
+    private final boolean repondAuPing;
+
+    /**
+     * L'instant de la dernière commande reçue du client, en nanosecondes de System.nanoTime().
+     * @see Long
+     */
+    private volatile long derniereActivite;
+
+    /**
+     * Vrai dès que la fermeture de la connexion a commencé, avant que le client ne soit retiré du serveur.
+     * @see Boolean
+     */
+    private volatile boolean fermee;
+
     /**
      * Méthode qui initialise une instance de la classe ServeurThread.
      * @param socket Le socket de connexion entre le serveur et le client.
-     * @param threadList La liste des instance de ServeurThread
+     * @param entree Le flux d'entrée avec tampon de la connexion, qui contient peut-être déjà les premiers messages du client
+     * @param routeur Le routeur partagé par toutes les sessions du serveur.
      * @param id L'identifiant du client de cette connexion
-     * @param name Le nom du client de cette connexion
-     * @param userList la liste des utilisateurs connectés sur le serveur
+     * @param poignee La poignée de main du client, avec son nom et le protocole négocié
+     * @param file La file sortante de cette connexion
+     * @throws IOException si le flux de sortie du socket ne peut pas être ouvert.
      */
-    public ServeurThread(Socket socket, ArrayList<ServeurThread> threadList, int id, String name, HashMap<Integer, String> userList){
+    public ServeurThread(Socket socket, InputStream entree, Routeur routeur, int id, Poignee poignee, FileSortante file) throws IOException{
         this.socket = socket;
-        this.threadList = threadList;
+        this.entree = entree;
+        this.routeur = routeur;
         this.id = id;
-        this.name = name;
-        this.clientList = userList;
+        this.name = poignee.nom;
+        this.format = poignee.format();
+        this.file = file;
+        this.repondAuPing = poignee.repondAuPing();
+        this.derniereActivite = System.nanoTime();
+        this.writer = new BufferedOutputStream(this.socket.getOutputStream(), TAILLE_TAMPON);
     }
 
     /**
-     * Méthode appelée par le serveur et qui s'exécute dans un nouveau Thread.
-     * @see Thread
+     * Méthode appelée par l'exécuteur du serveur et qui s'exécute dans un thread dédié à la lecture de cette connexion.
+     * @see Runnable
      */
     @Override
     public void run() {
         try {
-            BufferedReader input = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-            writer = new PrintWriter(this.socket.getOutputStream(), true);
-            clientList.put(this.id, this.name);
+            if(format != Trame.Format.TEXTE){
+                lireBinaire();
+            }else{
+                lireTexte();
+            }
+        } catch (IOException e) {
+            if(! socket.isClosed()){
+                TRACE.erreur("Erreur de lecture du client {}", name, e);
+            }
+        } finally {
+            closeConnection();
+        }
+    }
 
+    /**
+     * Méthode qui lit les lignes du protocole texte jusqu'à la fin de la connexion.
+     * @throws IOException si la lecture échoue.
+     */
+    private void lireTexte() throws IOException {
+        BufferedReader input = new BufferedReader(new InputStreamReader(entree, StandardCharsets.UTF_8));
+        Commande commande = new Commande();
 
-            while(! socket.isClosed() ) {
-                sendInfoToClient();
-                String rawMessage = input.readLine();
+        while(! socket.isClosed() ) {
+            String rawMessage = input.readLine();
 
-                if(rawMessage == null){
-                    break;
-                }
-                switch (cutMessage(rawMessage)) {
-                    case 1:
-                        sendToClients(rawMessage);
-                        break;
-                    case 2:
-                        sendPrivate(rawMessage);
-                        break;
-                    case 3:
-                        sendInfoToClient();
-                        break;
-                    default:
-                        break;
-                }
+            if(rawMessage == null){
+                break;
             }
-            closeConnection();
-        } catch (IOException e) {
-            e.printStackTrace();
+            derniereActivite = System.nanoTime();
+            routeur.traiter(this, commande.analyser(rawMessage));
         }
     }
 
     /**
-     * Méthode qui vérifie la présence de mots-clés dans les messages reçus.
-     * @param rawMessage la chaine de caractères formatée avec les informations de l'émetteur.
-     * @return un entier
+     * Méthode qui lit les trames du protocole binaire jusqu'à la fin de la connexion.
+     * @throws IOException si la lecture échoue ou si une trame est mal formée.
      */
-    private int cutMessage(String rawMessage){
-        if(Pattern.matches("!msg.*", rawMessage)){
-            System.out.println("Message reçu srv : " + rawMessage);
-            return 1;
-        }else if(Pattern.matches("!pv.*", rawMessage)){
-            return 2;
-        }else if(Pattern.matches("!addcli.*", rawMessage)){
-            System.out.println("Message reçu srv : " + rawMessage);
-            return 3;
-        }
-        else{
-            return -1;
+    private void lireBinaire() throws IOException {
+        Commande commande = new Commande();
+
+        while(! socket.isClosed() ) {
+            byte[] trame = Binaire.lire(entree);
+
+            if(trame == null){
+                break;
+            }
+            derniereActivite = System.nanoTime();
+            routeur.traiter(this, commande.decoder(trame));
         }
     }
 
     /**
-     * Méthode qui envoie une chaine de caractères à tous les clients présents sur le serveur.
-     * @param outputString la chaîne de caractère à émettre.
+     * Méthode qui s'exécute dans un thread dédié à l'écriture de cette connexion.
+     * Elle retire les trames de la file sortante par lots, les écrit dans le tampon du flux
+     * et ne vide le flux qu'une fois par lot, jusqu'à la fermeture de la file.
      */
-    private void sendToClients(String outputString){
-        for(ServeurThread st : threadList){
-            st.writer.println(outputString);
+    public void ecrire() {
+        try {
+            ArrayList<Trame> lot = new ArrayList<>();
+            while(file.prendreLot(lot) > 0){
+                long octets = 0;
+                for(Trame trame : lot){
+                    trame.ecrireDans(writer, format);
+                    octets += trame.longueur(format);
+                }
+                writer.flush();
+                file.noterVidage(lot.size());
+                routeur.getMetriques().envoyes(octets);
+                lot.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if(! socket.isClosed()){
+                TRACE.erreur("Erreur d'écriture vers le client {}", name, e);
+            }
+        } finally {
+            closeConnection();
         }
     }
 
     /**
-     * Méthode permettant d'envoyer à tous les clients le message d'une nouvelle connexion sur le serveur.
+     * Méthode qui place une trame dans la file sortante vers le client.
+     * Si la file est pleine et que la politique l'exige, la file et le socket sont fermés : le thread de lecture
+     * se réveille alors et retire le client du serveur.
+     * @param trame la trame à envoyer.
      */
-    private void sendInfoToClient(){
-        for(int i: clientList.keySet()){
-            String msg = "!newcli:"+i+":"+clientList.get(i);
-            sendToClients(msg);
-        }
+    @Override
+    public void envoyer(Trame trame){
+        envoyer(trame, true);
+    }
 
+    /**
+     * Méthode qui place une trame dans la file sortante vers le client sans jamais attendre.
+     * @param trame la trame à envoyer.
+     */
+    @Override
+    public void annoncer(Trame trame){
+        envoyer(trame, false);
     }
 
     /**
-     * Méthode qui formate et envoie le message privé au client concerné.
-     * @param rawMessage le message brut reçu par le serveur.
+     * Méthode qui place une trame dans la file sortante vers le client, en attendant une place ou non.
+     * @param trame la trame à envoyer.
+     * @param attendre faux pour ne jamais attendre, même avec la politique BLOQUER.
      */
-    private void sendPrivate(String rawMessage){
+    private void envoyer(Trame trame, boolean attendre){
+        if(! file.enfiler(trame, attendre)){
+            TRACE.avertissement("Client trop lent déconnecté : {}", this.name);
+            file.fermer();
+            fermerSocket();
+        }
+    }
 
-        String split[] = rawMessage.split(":", 3);
-        String dest = split[1];
-        String fin = split[2];
-        boolean clientExist = false;
+    /**
+     * Méthode qui ferme la connexion depuis un autre thread, par exemple celui de la faucheuse.
+     * Le client est retiré du serveur tout de suite, sans attendre que le thread de lecture se réveille.
+     */
+    @Override
+    public void fermer(){
+        closeConnection();
+    }
 
-        for(ServeurThread st : threadList){
-            if(st.getClientName().equals(dest)){
-                String finalMessage = "!pv:"+id+":"+fin;
-                st.writer.println(finalMessage);
-                this.writer.println(finalMessage);
-                clientExist = true;
-            }
+    /**
+     * Méthode qui indique si la fermeture de la connexion a commencé.
+     * @return vrai si la connexion est fermée ou en cours de fermeture.
+     */
+    @Override
+    public boolean estFermee(){
+        return fermee;
+    }
 
-        }
-        if(! clientExist){
-            String err = "!errNoCli:"+dest;
-            this.writer.println(err);
+    /**
+     * Méthode qui ferme la connexion entre le client et le serveur.
+     * Cette méthode retire le client du serveur, ce qui envoie un message de déconnexion à tous les clients,
+     * puis ferme la connexion. Elle peut être appelée plusieurs fois.
+     */
+    private void closeConnection() {
+        fermee = true;
+        routeur.deconnexion(this);
+        file.fermer();
+        fermerSocket();
+    }
+
+    /**
+     * Méthode qui ferme le socket de connexion.
+     */
+    private void fermerSocket() {
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            TRACE.erreur("Fermeture de la connexion impossible", e);
         }
     }
 
     /**
-     * Méthode qui ferme la connexion entre le client et le serveur.
-     * Cette méthode envoie un message de déconnexion à tous les clients et ferme la connexion.
-     * @throws IOException si jamais il est impossible de fermer la connexion.
+     * Méthode qui retourne la file sortante de cette connexion.
+     * @return la file sortante.
+     */
+    @Override
+    public FileSortante getFileSortante(){
+        return file;
+    }
+
+    /**
+     * Méthode qui indique si le client de cette connexion répond aux !ping.
+     * @return vrai si le client a négocié ses capacités.
      */
-    private void closeConnection() throws IOException {
-        System.out.println("Fin du client : " + this.name);
-        String msqQuit = "!rmcli:"+this.id;
-        sendToClients(msqQuit);
-        this.threadList.remove(this);
-        this.clientList.remove(this.id);
-        this.socket.close();
+    @Override
+    public boolean repondAuPing(){
+        return repondAuPing;
+    }
+
+    /**
+     * Méthode qui indique que les commandes du client sont traitées par le thread de lecture propre à sa connexion.
+     * @return toujours vrai : ce thread peut attendre sans retarder les autres clients.
+     */
+    @Override
+    public boolean peutAttendre(){
+        return true;
+    }
+
+    /**
+     * Méthode qui retourne l'instant de la dernière commande reçue du client.
+     * @return l'instant, en nanosecondes de System.nanoTime().
+     */
+    @Override
+    public long getDerniereActivite(){
+        return derniereActivite;
+    }
+
+    /**
+     * Méthode qui retourne l'identifiant du client de cette connexion.
+     * @return l'identifiant du client.
+     */
+    @Override
+    public int getClientId(){
+        return this.id;
     }
 
     /**
      * Méthode qui permet de récupérer le nom du client.
      * @return le nom du client.
      */
+    @Override
     public String getClientName(){
         return this.name;
     }
@@ -0,0 +1,109 @@
+package Serveur;
+
+/**
+ * Session représente la connexion d'un client sur le serveur, indépendamment du moteur réseau utilisé.
+ * Elle est implémentée par ServeurThread (un thread par connexion) et par SessionNio (boucles d'événements).
+ * @see ServeurThread
+ * @see SessionNio
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public interface Session {
+
+    /**
+     * Méthode qui retourne l'identifiant du client de cette session.
+     * @return l'identifiant du client.
+     */
+    int getClientId();
+
+    /**
+     * Méthode qui permet de récupérer le nom du client.
+     * @return le nom du client.
+     */
+    String getClientName();
+
+    /**
+     * Méthode qui place une trame dans la file sortante du client de cette session.
+     * Elle ne bloque pas l'appelant, sauf avec la politique de saturation BLOQUER.
+     * Si la file est pleine et que la politique l'exige, la session est fermée.
+     * @param trame la trame à envoyer, qui peut être partagée avec d'autres sessions.
+     */
+    void envoyer(Trame trame);
+
+    /**
+     * Méthode qui encode une ligne du protocole et l'envoie au seul client de cette session.
+     * Pour une diffusion, il faut encoder une seule Trame et l'envoyer à chaque session.
+     * @param ligne la ligne à envoyer, sans le retour à la ligne final.
+     */
+    default void envoyer(String ligne){
+        envoyer(Trame.de(ligne));
+    }
+
+    /**
+     * Méthode qui place une trame dans la file sortante sans jamais attendre, même avec la politique BLOQUER :
+     * si la file est pleine, le client est déconnecté. Elle est utilisée sous le verrou du registre ou des salons,
+     * où attendre un client lent bloquerait toutes les arrivées et tous les départs.
+     * @param trame la trame à envoyer.
+     */
+    default void annoncer(Trame trame){
+        envoyer(trame);
+    }
+
+    /**
+     * Méthode qui retourne la file sortante de cette session et ses compteurs.
+     * @return la file sortante de la session.
+     */
+    FileSortante getFileSortante();
+
+    /**
+     * Méthode qui indique si le client de cette session est connecté sur un autre nœud de la grappe.
+     * @return vrai pour une session distante, faux pour un client connecté sur ce serveur.
+     * @see SessionDistante
+     */
+    default boolean estDistante(){
+        return false;
+    }
+
+    /**
+     * Méthode qui indique si le client de cette session répond aux !ping par un !pong.
+     * Seuls les clients qui ont négocié leurs capacités (!hello) sont sondés et fermés s'ils restent silencieux.
+     * @return vrai si le client peut être sondé.
+     * @see Faucheuse
+     */
+    default boolean repondAuPing(){
+        return false;
+    }
+
+    /**
+     * Méthode qui indique si les commandes de cette session sont traitées par un thread qui peut attendre,
+     * par exemple une place dans le journal. Une boucle NIO partagée par plusieurs clients ne le peut pas.
+     * @return vrai si le thread de lecture de la session peut se bloquer.
+     */
+    default boolean peutAttendre(){
+        return false;
+    }
+
+    /**
+     * Méthode qui retourne l'instant de la dernière lecture sur la connexion de cette session.
+     * @return l'instant, en nanosecondes de System.nanoTime().
+     */
+    default long getDerniereActivite(){
+        return System.nanoTime();
+    }
+
+    /**
+     * Méthode qui indique si la fermeture de cette session a commencé.
+     * Elle devient vraie avant que le client ne soit retiré du serveur.
+     * @return vrai si la session est fermée ou en cours de fermeture.
+     */
+    default boolean estFermee(){
+        return false;
+    }
+
+    /**
+     * Méthode qui ferme la connexion de cette session : le client est retiré du serveur et son départ annoncé aux autres.
+     * Elle peut être appelée depuis n'importe quel thread, et plusieurs fois.
+     */
+    default void fermer(){
+    }
+}
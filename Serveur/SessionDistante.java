@@ -0,0 +1,98 @@
+package Serveur;
+
+/**
+ * SessionDistante représente dans le registre local un client connecté sur un autre nœud de la grappe.
+ * Elle rend la présence commune à toute la grappe (!newcli, !rmcli, !addcli) et permet de trouver
+ * le destinataire d'un !pv par son nom quel que soit son nœud : une trame envoyée à une session distante
+ * est transmise à son nœud, qui la remet au client.
+ * Une diffusion n'est jamais envoyée aux sessions distantes une par une : elle est transmise une seule fois à chaque nœud.
+ * @see Lien
+ * @see Grappe
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class SessionDistante implements Session {
+
+    /**
+     * Le lien vers le nœud du client.
+     * @see Lien
+     */
+    private final Lien lien;
+
+    /**
+     * L'identifiant du client.
+     * @see Integer
+     */
+    private final int id;
+
+    /**
+     * Le nom du client.
+     * @see String
+     */
+    private final String name;
+
+    /**
+     * Méthode qui initialise une session distante.
+     * @param lien le lien vers le nœud du client.
+     * @param id l'identifiant du client.
+     * @param name le nom du client.
+     */
+    public SessionDistante(Lien lien, int id, String name){
+        this.lien = lien;
+        this.id = id;
+        this.name = name;
+    }
+
+    /**
+     * Méthode qui retourne l'identifiant du client distant, attribué par son nœud.
+     * @return un entier : l'identifiant du client.
+     */
+    @Override
+    public int getClientId(){
+        return id;
+    }
+
+    /**
+     * Méthode qui retourne le nom du client distant.
+     * @return une chaîne de caractères : le nom du client.
+     */
+    @Override
+    public String getClientName(){
+        return name;
+    }
+
+    /**
+     * Méthode qui transmet une trame au nœud du client, qui la remet au seul client de cette session.
+     * @param trame la trame à envoyer.
+     */
+    @Override
+    public void envoyer(Trame trame){
+        lien.envoyer(Grappe.envoi(id, trame));
+    }
+
+    /**
+     * Méthode qui retourne la file sortante du lien vers le nœud du client.
+     * @return la file sortante du lien, partagée par toutes les sessions de ce nœud.
+     */
+    @Override
+    public FileSortante getFileSortante(){
+        return lien.getFileSortante();
+    }
+
+    /**
+     * Méthode qui indique que cette session est sur un autre nœud.
+     * @return vrai.
+     */
+    @Override
+    public boolean estDistante(){
+        return true;
+    }
+
+    /**
+     * Méthode qui retourne le lien vers le nœud du client.
+     * @return le lien.
+     */
+    public Lien getLien(){
+        return lien;
+    }
+}
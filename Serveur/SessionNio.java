@@ -0,0 +1,470 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import Trace.Trace;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SessionNio représente la connexion d'un client gérée par une boucle d'événements du moteur NIO.
+ * Les octets reçus sont découpés en lignes, la première ligne étant le nom du client.
+ * Si le client a négocié le protocole binaire, les octets suivants sont découpés en trames selon leur longueur.
+ * Les trames à envoyer sont placées dans la file sortante de la session, puis regroupées dans des tampons du pool
+ * et écrites par la boucle quand le canal est prêt.
+ * @see BoucleNio
+ * @see Session
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class SessionNio implements Session {
+
+    /**
+     * Les traces de la classe.
+     * @see Trace
+     */
+    private static final Trace TRACE = Trace.de(SessionNio.class);
+
+    /**
+     * La taille maximum d'une ligne reçue, au-delà la connexion est fermée.
+     * @see Integer
+     */
+    private static final int LIGNE_MAX = 1 << 20;
+
+    /**
+     * Le canal de connexion entre le serveur et le client.
+     * @see SocketChannel
+     */
+    private final SocketChannel canal;
+
+    /**
+     * La boucle d'événements qui gère ce canal.
+     * @see BoucleNio
+     */
+    private final BoucleNio boucle;
+
+    /**
+     * Le routeur partagé par toutes les sessions.
+     * @see Routeur
+     */
+    private final Routeur routeur;
+
+    /**
+     * Le pool de tampons utilisé pour les écritures.
+     * @see PoolTampons
+     */
+    private final PoolTampons pool;
+
+    /**
+     * La file des lignes en attente d'envoi vers le client.
+     * @see FileSortante
+     */
+    private final FileSortante file;
+
+    /**
+     * Le tampon en cours d'écriture, null si aucun. Il n'est utilisé que par le thread de la boucle.
+     * @see ByteBuffer
+     */
+    private ByteBuffer enCours;
+
+    /**
+     * La trame retirée de la file qui ne tenait plus dans le tampon en cours, null si aucune.
+     * Elle n'est utilisée que par le thread de la boucle.
+     * @see Trame
+     */
+    private Trame suivante;
+
+    /**
+     * Vrai si une demande d'écriture a déjà été transmise à la boucle.
+     * @see AtomicBoolean
+     */
+    private final AtomicBoolean ecritureDemandee;
+
+    /**
+     * Vrai si la session est fermée.
+     * @see AtomicBoolean
+     */
+    private final AtomicBoolean fermee;
+
+    /**
+     * L'identifiant du client de cette connexion
+     * @see Integer
+     */
+    private final int id;
+
+    /**
+     * Le nom du client, null tant que la première ligne n'a pas été reçue.
+     * @see String
+     */
+    private String name;
+
+    /**
+     * Le format négocié par le client : texte, binaire ou binaire compressé.
+     * Il n'est utilisé que par le thread de la boucle.
+     * @see Trame.Format
+     */
+    private Trame.Format format = Trame.Format.TEXTE;
+
+    /**
+     * Vrai si le client répond aux !ping, connu après la première ligne.
+     */
+    private boolean repondAuPing;
+
+    /**
+     * L'instant de la dernière lecture sur le canal, en nanosecondes de System.nanoTime().
+     * @see Long
+     */
+    private volatile long derniereActivite;
+
+    /**
+     * La clé d'enregistrement du canal dans le Selector de la boucle.
+     * @see SelectionKey
+     */
+    private SelectionKey cle;
+
+    /**
+     * L'analyseur des lignes reçues, réutilisé pour chaque ligne par le thread de la boucle.
+     * @see Commande
+     */
+    private final Commande commande;
+
+    /**
+     * Les octets de la ligne, ou des trames binaires, en cours de réception.
+     */
+    private byte[] ligne;
+
+    /**
+     * Le nombre d'octets de la ligne en cours de réception.
+     * @see Integer
+     */
+    private int longueur;
+
+    /**
+     * Méthode qui initialise une instance de la classe SessionNio.
+     * @param canal le canal non bloquant de la connexion.
+     * @param boucle la boucle d'événements qui gère ce canal.
+     * @param routeur le routeur partagé par toutes les sessions.
+     * @param pool le pool de tampons utilisé pour les écritures.
+     * @param id l'identifiant du client de cette connexion.
+     * @param file la file sortante de cette connexion.
+     */
+    public SessionNio(SocketChannel canal, BoucleNio boucle, Routeur routeur, PoolTampons pool, int id, FileSortante file){
+        this.canal = canal;
+        this.boucle = boucle;
+        this.routeur = routeur;
+        this.pool = pool;
+        this.id = id;
+        this.file = file;
+        this.ecritureDemandee = new AtomicBoolean();
+        this.fermee = new AtomicBoolean();
+        this.commande = new Commande();
+        this.ligne = new byte[256];
+        this.longueur = 0;
+        this.derniereActivite = System.nanoTime();
+    }
+
+    /**
+     * Méthode appelée par la boucle quand le canal est lisible. Elle découpe les octets reçus en lignes ou en trames.
+     * @param tampon le tampon de lecture de la boucle, réutilisé pour toutes ses sessions.
+     */
+    void lire(ByteBuffer tampon){
+        if(fermee.get()){
+            return;
+        }
+        try {
+            tampon.clear();
+            int lus = canal.read(tampon);
+            if(lus < 0){
+                fermer();
+                return;
+            }
+            routeur.getMetriques().recus(lus);
+            derniereActivite = System.nanoTime();
+            tampon.flip();
+
+            while(tampon.hasRemaining()){
+                if(format != Trame.Format.TEXTE){
+                    ajouter(tampon, tampon.remaining());
+                    traiterTrames();
+                    break;
+                }
+                int debut = tampon.position();
+                int fin = debut;
+                while(fin < tampon.limit() && tampon.get(fin) != '\n'){
+                    fin++;
+                }
+                ajouter(tampon, fin - debut);
+
+                if(fin < tampon.limit()){
+                    tampon.get();
+                    traiterLigne();
+                }
+            }
+        } catch (IOException e) {
+            fermer();
+        }
+    }
+
+    /**
+     * Méthode qui copie des octets du tampon de lecture dans la ligne en cours.
+     * @param tampon le tampon de lecture.
+     * @param n le nombre d'octets à copier.
+     * @throws IOException si la ligne dépasse la taille maximum autorisée.
+     */
+    private void ajouter(ByteBuffer tampon, int n) throws IOException {
+        if(longueur + n > (format != Trame.Format.TEXTE ? 2 * Binaire.CONTENU_MAX : LIGNE_MAX)){
+            throw new IOException("Ligne trop longue");
+        }
+        if(longueur + n > ligne.length){
+            ligne = Arrays.copyOf(ligne, Math.max(ligne.length * 2, longueur + n));
+        }
+        tampon.get(ligne, longueur, n);
+        longueur += n;
+    }
+
+    /**
+     * Méthode qui traite une ligne complète : la première est le nom du client, les suivantes passent par le routeur.
+     */
+    private void traiterLigne(){
+        int n = longueur;
+        if(n > 0 && ligne[n - 1] == '\r'){
+            n--;
+        }
+        String rawMessage = new String(ligne, 0, n, StandardCharsets.UTF_8);
+        longueur = 0;
+
+        if(name == null){
+            Poignee poignee = Poignee.lire(rawMessage);
+            name = poignee.nom;
+            format = poignee.format();
+            repondAuPing = poignee.repondAuPing();
+            TRACE.debug("Name : {}", name);
+            if(poignee.reponse() != null){
+                envoyer(poignee.reponse());
+            }
+            if(! routeur.connexion(this)){
+                fermer();
+            }
+        }else{
+            routeur.traiter(this, commande.analyser(rawMessage));
+        }
+    }
+
+    /**
+     * Méthode qui traite toutes les trames binaires complètes reçues et conserve le début de la trame suivante.
+     * @throws IOException si une trame est mal formée ou trop longue.
+     */
+    private void traiterTrames() throws IOException {
+        int debut = 0;
+        int n;
+        while((n = Binaire.longueurTrame(ligne, debut, longueur)) > 0){
+            byte[] trame = Arrays.copyOfRange(ligne, debut, debut + n);
+            routeur.traiter(this, commande.decoder(trame));
+            debut += n;
+        }
+        System.arraycopy(ligne, debut, ligne, 0, longueur - debut);
+        longueur -= debut;
+    }
+
+    /**
+     * Méthode qui place une trame dans la file sortante et demande son écriture à la boucle.
+     * Elle peut être appelée depuis n'importe quel thread, et n'attend jamais : l'appelant est souvent une boucle,
+     * peut-être celle qui doit vider cette file. Une file pleine déconnecte donc le client, même avec la politique BLOQUER.
+     * @param trame la trame à envoyer.
+     */
+    @Override
+    public void envoyer(Trame trame){
+        if(fermee.get()){
+            return;
+        }
+        if(! file.enfiler(trame, false)){
+            TRACE.avertissement("Client trop lent déconnecté : {}", this.name);
+            fermer();
+            return;
+        }
+        if(ecritureDemandee.compareAndSet(false, true)){
+            boucle.demanderEcriture(this);
+        }
+    }
+
+    /**
+     * Méthode appelée par la boucle quand le canal est prêt en écriture.
+     * Les lignes en attente sont regroupées dans un même tampon du pool pour être écrites en un seul appel.
+     * Elle cesse de surveiller l'écriture quand la file est vide.
+     */
+    void ecrire(){
+        try {
+            while(true){
+                if(enCours == null){
+                    enCours = remplir();
+                    if(enCours == null){
+                        break;
+                    }
+                }
+                routeur.getMetriques().envoyes(canal.write(enCours));
+                if(enCours.hasRemaining()){
+                    return;
+                }
+                pool.liberer(enCours);
+                enCours = null;
+            }
+            ecritureDemandee.set(false);
+
+            if(file.profondeur() == 0 || ! ecritureDemandee.compareAndSet(false, true)){
+                cle.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            fermer();
+        }
+    }
+
+    /**
+     * Méthode qui regroupe autant de trames de la file que possible dans un tampon du pool.
+     * Une trame plus longue qu'un tampon est écrite seule, directement depuis ses octets et sans copie.
+     * @return un tampon prêt à être écrit, null si la file est vide.
+     */
+    private ByteBuffer remplir(){
+        Trame trame = suivante != null ? suivante : file.retirer();
+        suivante = null;
+        if(trame == null){
+            return null;
+        }
+        if(trame.longueur(format) > pool.getTaille()){
+            file.noterVidage(1);
+            return trame.tampon(format);
+        }
+
+        ByteBuffer tampon = pool.acquerir();
+        int lignes = 0;
+        while(trame != null){
+            if(trame.longueur(format) > tampon.remaining()){
+                suivante = trame;
+                break;
+            }
+            trame.copierDans(tampon, format);
+            lignes++;
+            trame = file.retirer();
+        }
+        tampon.flip();
+        file.noterVidage(lignes);
+        return tampon;
+    }
+
+    /**
+     * Méthode qui ferme la connexion et retire le client du serveur s'il avait envoyé son nom.
+     * Elle peut être appelée depuis n'importe quel thread : la clé et le canal appartiennent à la boucle,
+     * et sont fermés par elle si l'appelant est un autre thread.
+     */
+    @Override
+    public void fermer(){
+        if(! fermee.compareAndSet(false, true)){
+            return;
+        }
+        if(boucle.estDansLaBoucle()){
+            fermerCanal();
+        }else{
+            boucle.executer(this::fermerCanal);
+        }
+        file.fermer();
+        if(name != null){
+            routeur.deconnexion(this);
+        }
+    }
+
+    /**
+     * Méthode qui indique si la fermeture de la connexion a commencé.
+     * @return vrai si la connexion est fermée ou en cours de fermeture.
+     */
+    @Override
+    public boolean estFermee(){
+        return fermee.get();
+    }
+
+    /**
+     * Méthode qui annule la clé et ferme le canal. Elle est exécutée par le thread de la boucle.
+     */
+    private void fermerCanal(){
+        if(cle != null){
+            cle.cancel();
+        }
+        try {
+            canal.close();
+        } catch (IOException e) {
+            TRACE.erreur("Fermeture de la connexion impossible", e);
+        }
+    }
+
+    /**
+     * Méthode qui retourne la file sortante de cette connexion.
+     * @return la file sortante.
+     */
+    @Override
+    public FileSortante getFileSortante(){
+        return file;
+    }
+
+    /**
+     * Méthode qui indique si le client de cette connexion répond aux !ping.
+     * @return vrai si le client a négocié ses capacités.
+     */
+    @Override
+    public boolean repondAuPing(){
+        return repondAuPing;
+    }
+
+    /**
+     * Méthode qui retourne l'instant de la dernière lecture sur le canal.
+     * @return l'instant, en nanosecondes de System.nanoTime().
+     */
+    @Override
+    public long getDerniereActivite(){
+        return derniereActivite;
+    }
+
+    /**
+     * Méthode qui retourne le canal de la connexion.
+     * @return le canal de la connexion.
+     */
+    SocketChannel getCanal(){
+        return canal;
+    }
+
+    /**
+     * Méthode qui retourne la clé d'enregistrement du canal.
+     * @return la clé du canal, null tant qu'il n'est pas enregistré.
+     */
+    SelectionKey getCle(){
+        return cle;
+    }
+
+    /**
+     * Méthode qui mémorise la clé d'enregistrement du canal.
+     * @param cle la clé du canal dans le Selector de la boucle.
+     */
+    void setCle(SelectionKey cle){
+        this.cle = cle;
+    }
+
+    /**
+     * Méthode qui retourne l'identifiant du client de cette connexion.
+     * @return l'identifiant du client.
+     */
+    @Override
+    public int getClientId(){
+        return this.id;
+    }
+
+    /**
+     * Méthode qui permet de récupérer le nom du client.
+     * @return le nom du client.
+     */
+    @Override
+    public String getClientName(){
+        return this.name;
+    }
+}
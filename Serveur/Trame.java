@@ -0,0 +1,282 @@
+package Serveur;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Trame est un message du protocole déjà encodé, prêt à être écrit vers les clients.
+ * Elle est immuable : une diffusion encode le message une seule fois et la même trame
+ * est placée dans la file sortante de chaque destinataire.
+ * Une trame existe sous trois formes, une ligne UTF-8 du protocole texte, une trame du protocole binaire
+ * et cette même trame compressée : une forme qui n'a pas servi à la créer n'est calculée qu'au premier
+ * destinataire qui en a besoin, puis réutilisée pour tous les autres. Une diffusion n'est donc compressée qu'une fois.
+ * Une trame relue depuis le journal peut aussi être une projection en mémoire d'un segment : sa forme binaire
+ * est alors copiée directement du segment vers le tampon d'envoi, sans passer par un tableau.
+ * @see FileSortante
+ * @see Binaire
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public final class Trame {
+
+    /**
+     * Format énumère les formes sous lesquelles une trame peut être envoyée à un client.
+     */
+    public enum Format {
+        /** Le protocole texte, une ligne par message. */
+        TEXTE,
+        /** Le protocole binaire. */
+        BINAIRE,
+        /** Le protocole binaire, avec compression des trames qui dépassent le seuil. */
+        COMPRESSE
+    }
+
+    /**
+     * Les octets de la ligne du protocole texte, retour à la ligne compris, null tant qu'ils n'ont pas été calculés.
+     * Ce tableau n'est jamais modifié.
+     */
+    private volatile byte[] texte;
+
+    /**
+     * Les octets de la trame du protocole binaire, null tant qu'ils n'ont pas été calculés.
+     * Ce tableau n'est jamais modifié.
+     */
+    private volatile byte[] binaire;
+
+    /**
+     * Les octets de la trame du protocole binaire après compression, qui sont ceux de binaire si la compression
+     * n'est pas utile, null tant qu'ils n'ont pas été calculés. Ce tableau n'est jamais modifié.
+     */
+    private volatile byte[] compresse;
+
+    /**
+     * La trame binaire projetée en mémoire depuis un segment du journal, en lecture seule, null sinon.
+     * @see ByteBuffer
+     */
+    private final ByteBuffer projection;
+
+    /**
+     * Vrai si la trame doit être envoyée en texte même aux clients du protocole binaire.
+     */
+    private final boolean texteSeul;
+
+    /**
+     * Méthode qui initialise une trame à partir d'octets déjà encodés.
+     * @param texte les octets de la ligne, retour à la ligne compris, ou null.
+     * @param binaire les octets de la trame binaire, ou null.
+     * @param compresse les octets de la trame binaire compressée, ou null.
+     * @param projection la trame binaire projetée en mémoire, ou null.
+     * @param texteSeul vrai si la trame est toujours envoyée en texte.
+     */
+    private Trame(byte[] texte, byte[] binaire, byte[] compresse, ByteBuffer projection, boolean texteSeul){
+        this.texte = texte;
+        this.binaire = binaire;
+        this.compresse = compresse;
+        this.projection = projection;
+        this.texteSeul = texteSeul;
+    }
+
+    /**
+     * Méthode qui encode une ligne du protocole en trame.
+     * @param ligne la ligne, sans le retour à la ligne final.
+     * @return la trame de la ligne.
+     */
+    public static Trame de(String ligne){
+        return new Trame((ligne + "\n").getBytes(StandardCharsets.UTF_8), null, null, null, false);
+    }
+
+    /**
+     * Méthode qui encode plusieurs lignes du protocole en une seule trame, placée en une fois dans la file d'un client,
+     * comme la liste des connectés envoyée à un nouveau client. Ses deux formes sont calculées tout de suite ;
+     * elle n'est jamais compressée, chaque ligne restant une trame binaire distincte.
+     * @param lignes les lignes, sans retour à la ligne final.
+     * @return la trame des lignes, dans l'ordre.
+     */
+    public static Trame lot(List<String> lignes){
+        ByteArrayOutputStream texte = new ByteArrayOutputStream();
+        ByteArrayOutputStream binaire = new ByteArrayOutputStream();
+        Commande commande = new Commande();
+        for(String ligne : lignes){
+            texte.writeBytes((ligne + "\n").getBytes(StandardCharsets.UTF_8));
+            commande.analyser(ligne);
+            binaire.writeBytes(Binaire.trame(commande.getType(), commande.champ(), commande.corpsBrut()));
+        }
+        byte[] b = binaire.toByteArray();
+        return new Trame(texte.toByteArray(), b, b, null, false);
+    }
+
+    /**
+     * Méthode qui crée une trame à partir d'une trame du protocole binaire, sans copie.
+     * @param octets les octets de la trame binaire, qui ne doivent plus être modifiés.
+     * @return la trame.
+     */
+    public static Trame binaire(byte[] octets){
+        return new Trame(null, octets, null, null, false);
+    }
+
+    /**
+     * Méthode qui crée une trame à partir d'une trame binaire reçue compressée, sans la recompresser ensuite.
+     * @param octets les octets de la trame binaire décompressée, qui ne doivent plus être modifiés.
+     * @param compresse les octets de la trame telle qu'elle a été reçue, ou null si elle n'était pas compressée.
+     * @return la trame.
+     */
+    public static Trame binaire(byte[] octets, byte[] compresse){
+        return new Trame(null, octets, compresse, null, false);
+    }
+
+    /**
+     * Méthode qui crée une trame à partir d'une trame binaire projetée en mémoire, sans copie.
+     * @param projection la trame binaire, entre sa position et sa limite, dont le contenu ne doit plus changer.
+     * @return la trame.
+     */
+    public static Trame projetee(ByteBuffer projection){
+        return new Trame(null, null, null, projection.asReadOnlyBuffer(), false);
+    }
+
+    /**
+     * Méthode qui indique si la forme binaire de la trame peut être lue directement depuis sa projection en mémoire.
+     * @param format le format négocié par le client.
+     * @return vrai si la trame est une projection et que le client utilise le protocole binaire sans compression.
+     */
+    private boolean enProjection(Format format){
+        return projection != null && format == Format.BINAIRE && binaire == null;
+    }
+
+    /**
+     * Méthode qui crée une trame envoyée en texte à tous les clients, comme la réponse à la négociation
+     * qui précède le passage au protocole binaire.
+     * @param ligne la ligne, sans le retour à la ligne final.
+     * @return la trame de la ligne.
+     */
+    public static Trame texteSeul(String ligne){
+        return new Trame((ligne + "\n").getBytes(StandardCharsets.UTF_8), null, null, null, true);
+    }
+
+    /**
+     * Méthode qui retourne les octets de la trame dans le protocole d'un client.
+     * Le tableau retourné est partagé et ne doit pas être modifié.
+     * @param format le format négocié par le client.
+     * @return les octets à écrire vers le client.
+     */
+    public byte[] octets(Format format){
+        if(format == Format.COMPRESSE && ! texteSeul){
+            byte[] c = compresse;
+            if(c == null){
+                c = Binaire.compresser(octets(Format.BINAIRE));
+                compresse = c;
+            }
+            return c;
+        }
+        if(format != Format.TEXTE && ! texteSeul){
+            byte[] b = binaire;
+            if(b == null){
+                b = projection != null ? copierProjection() : versBinaire();
+                binaire = b;
+            }
+            return b;
+        }
+        byte[] t = texte;
+        if(t == null){
+            t = versTexte();
+            texte = t;
+        }
+        return t;
+    }
+
+    /**
+     * Méthode qui calcule la forme binaire à partir de la ligne du protocole texte.
+     * @return les octets de la trame binaire.
+     */
+    private byte[] versBinaire(){
+        Commande commande = new Commande().analyser(toString());
+        return Binaire.trame(commande.getType(), commande.champ(), commande.corpsBrut());
+    }
+
+    /**
+     * Méthode qui copie la projection en mémoire dans un tableau.
+     * @return les octets de la trame binaire.
+     */
+    private byte[] copierProjection(){
+        byte[] b = new byte[projection.remaining()];
+        projection.duplicate().get(b);
+        return b;
+    }
+
+    /**
+     * Méthode qui calcule la ligne du protocole texte à partir de la trame binaire.
+     * @return les octets de la ligne, retour à la ligne compris.
+     */
+    private byte[] versTexte(){
+        try {
+            String ligne = new Commande().decoder(octets(Format.BINAIRE)).ligne();
+            return (ligne + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Méthode qui retourne la longueur de la trame en octets dans le protocole d'un client.
+     * @param format le format négocié par le client.
+     * @return le nombre d'octets de la trame.
+     */
+    public int longueur(Format format){
+        if(enProjection(format)){
+            return projection.remaining();
+        }
+        return octets(format).length;
+    }
+
+    /**
+     * Méthode qui écrit la trame dans un flux, sans copie intermédiaire.
+     * @param out le flux de sortie.
+     * @param format le format négocié par le client.
+     * @throws IOException si l'écriture échoue.
+     */
+    public void ecrireDans(OutputStream out, Format format) throws IOException {
+        out.write(octets(format));
+    }
+
+    /**
+     * Méthode qui copie la trame dans un tampon.
+     * @param tampon le tampon, qui doit avoir au moins longueur() octets disponibles.
+     * @param format le format négocié par le client.
+     */
+    public void copierDans(ByteBuffer tampon, Format format){
+        if(enProjection(format)){
+            tampon.put(projection.duplicate());
+            return;
+        }
+        tampon.put(octets(format));
+    }
+
+    /**
+     * Méthode qui retourne un tampon en lecture seule sur les octets de la trame, sans copie.
+     * Chaque appel retourne un tampon indépendant, positionné au début de la trame.
+     * @param format le format négocié par le client.
+     * @return un tampon en lecture seule.
+     */
+    public ByteBuffer tampon(Format format){
+        if(enProjection(format)){
+            return projection.duplicate();
+        }
+        return ByteBuffer.wrap(octets(format)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Méthode qui décode la trame en ligne du protocole texte.
+     * @return la ligne, sans le retour à la ligne final.
+     */
+    @Override
+    public String toString(){
+        byte[] t = octets(Format.TEXTE);
+        return new String(t, 0, t.length - 1, StandardCharsets.UTF_8);
+    }
+}
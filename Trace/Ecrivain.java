@@ -0,0 +1,298 @@
+package Trace;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ecrivain est la sortie asynchrone des traces : un anneau de taille fixe rempli sans verrou par les threads qui tracent,
+ * et vidé par un seul thread qui formate les traces et les écrit par blocs.
+ * Un thread qui trace ne fait que réserver une case, y ranger le modèle et ses arguments, et la publier :
+ * il n'attend jamais la console. Quand l'anneau est plein, la trace est perdue et comptée,
+ * et le nombre de traces perdues est écrit dès que l'anneau a été vidé.
+ * Les arguments sont convertis en texte par le thread écrivain : ils doivent donc être immuables.
+ * @see Trace
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public final class Ecrivain {
+
+    /**
+     * Le nombre de cases de l'anneau, une puissance de 2.
+     * @see Integer
+     */
+    private static final int CAPACITE = 1 << 14;
+
+    /**
+     * L'attente du thread écrivain quand l'anneau vient d'être vidé, en nanosecondes.
+     * @see Long
+     */
+    private static final long ATTENTE_MIN = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * L'attente maximum du thread écrivain quand l'anneau reste vide, en nanosecondes.
+     * @see Long
+     */
+    private static final long ATTENTE_MAX = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Le format de l'heure écrite au début de chaque trace.
+     * @see DateTimeFormatter
+     */
+    private static final DateTimeFormatter HEURE = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    /**
+     * Une case de l'anneau, réutilisée à chaque tour.
+     */
+    private static final class Evenement {
+        /**
+         * L'heure de la trace, en millisecondes depuis l'époque Unix.
+         */
+        long instant;
+        /**
+         * Le niveau de la trace.
+         */
+        Niveau niveau;
+        /**
+         * La catégorie de la trace.
+         */
+        String categorie;
+        /**
+         * Le message, où chaque {} est remplacé par l'argument suivant.
+         */
+        String modele;
+        /**
+         * Le premier argument du message.
+         */
+        Object a;
+        /**
+         * Le deuxième argument du message.
+         */
+        Object b;
+        /**
+         * L'exception dont la pile est écrite après le message.
+         */
+        Throwable erreur;
+    }
+
+    /**
+     * Les cases de l'anneau.
+     * @see Evenement
+     */
+    private final Evenement[] evenements;
+
+    /**
+     * La séquence de chaque case : égale au numéro du prochain tour qui peut l'écrire quand elle est libre,
+     * à ce numéro plus un quand elle est publiée et attend le thread écrivain.
+     * @see AtomicLongArray
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Le numéro de la prochaine case à réserver par les threads qui tracent.
+     * @see AtomicLong
+     */
+    private final AtomicLong tete;
+
+    /**
+     * Le numéro de la prochaine case à lire, lu et écrit par le seul thread écrivain.
+     * @see Long
+     */
+    private long queue;
+
+    /**
+     * Le nombre de traces perdues parce que l'anneau était plein.
+     * @see LongAdder
+     */
+    private final LongAdder perdues;
+
+    /**
+     * La sortie avec tampon, écrite par le seul thread écrivain.
+     * @see PrintStream
+     */
+    private final PrintStream sortie;
+
+    /**
+     * Le thread écrivain.
+     * @see Thread
+     */
+    private final Thread thread;
+
+    /**
+     * Vrai quand l'écrivain doit s'arrêter après avoir vidé l'anneau.
+     */
+    private volatile boolean arret;
+
+    /**
+     * Méthode qui initialise l'écrivain et démarre son thread, arrêté à la fin du programme après avoir tout écrit.
+     * @param destination le flux où les traces sont écrites, par exemple la console.
+     */
+    public Ecrivain(OutputStream destination){
+        this.evenements = new Evenement[CAPACITE];
+        this.sequences = new AtomicLongArray(CAPACITE);
+        for(int i = 0; i < CAPACITE; i++){
+            evenements[i] = new Evenement();
+            sequences.set(i, i);
+        }
+        this.tete = new AtomicLong();
+        this.perdues = new LongAdder();
+        this.sortie = new PrintStream(new BufferedOutputStream(destination, 1 << 16), false, StandardCharsets.UTF_8);
+
+        this.thread = new Thread(this::ecrire, "traces");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::arreter));
+    }
+
+    /**
+     * Méthode qui range une trace dans l'anneau, sans attendre.
+     * @param niveau le niveau de la trace.
+     * @param categorie la catégorie de la trace.
+     * @param modele le message, où chaque {} est remplacé par l'argument suivant.
+     * @param a le premier argument, ou null.
+     * @param b le deuxième argument, ou null.
+     * @param erreur l'exception dont la pile est écrite après le message, ou null.
+     * @return faux si l'anneau est plein et la trace perdue.
+     */
+    boolean publier(Niveau niveau, String categorie, String modele, Object a, Object b, Throwable erreur){
+        long numero;
+        int indice;
+        while(true){
+            numero = tete.get();
+            indice = (int) numero & (CAPACITE - 1);
+            long sequence = sequences.getAcquire(indice);
+            if(sequence == numero){
+                if(tete.compareAndSet(numero, numero + 1)){
+                    break;
+                }
+            }else if(sequence < numero){
+                perdues.increment();
+                return false;
+            }
+        }
+
+        Evenement e = evenements[indice];
+        e.instant = System.currentTimeMillis();
+        e.niveau = niveau;
+        e.categorie = categorie;
+        e.modele = modele;
+        e.a = a;
+        e.b = b;
+        e.erreur = erreur;
+        sequences.setRelease(indice, numero + 1);
+        if(niveau.compareTo(Niveau.AVERTISSEMENT) >= 0){
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de traces perdues depuis le démarrage.
+     * @return le nombre de traces perdues.
+     */
+    public long getPerdues(){
+        return perdues.sum();
+    }
+
+    /**
+     * Méthode exécutée par le thread écrivain : vide l'anneau, écrit le tampon quand il n'y a plus rien à lire,
+     * puis attend de plus en plus longtemps tant que l'anneau reste vide.
+     */
+    private void ecrire(){
+        StringBuilder ligne = new StringBuilder(256);
+        long signalees = 0;
+        long attente = ATTENTE_MIN;
+        while(true){
+            if(vider(ligne) > 0){
+                attente = ATTENTE_MIN;
+                continue;
+            }
+            long perduesTotal = perdues.sum();
+            if(perduesTotal != signalees){
+                sortie.println(HEURE.format(Instant.now()) + " " + Niveau.AVERTISSEMENT + " [Trace] "
+                        + (perduesTotal - signalees) + " trace(s) perdue(s), anneau plein");
+                signalees = perduesTotal;
+            }
+            sortie.flush();
+            if(arret){
+                return;
+            }
+            LockSupport.parkNanos(attente);
+            attente = Math.min(attente * 2, ATTENTE_MAX);
+        }
+    }
+
+    /**
+     * Méthode qui écrit toutes les traces publiées dans le tampon de sortie et libère leurs cases.
+     * @param ligne le tampon réutilisé pour formater chaque trace.
+     * @return le nombre de traces écrites.
+     */
+    private int vider(StringBuilder ligne){
+        int ecrites = 0;
+        while(true){
+            int indice = (int) queue & (CAPACITE - 1);
+            if(sequences.getAcquire(indice) != queue + 1){
+                return ecrites;
+            }
+            Evenement e = evenements[indice];
+            ligne.setLength(0);
+            HEURE.formatTo(Instant.ofEpochMilli(e.instant), ligne);
+            ligne.append(' ').append(e.niveau).append(" [").append(e.categorie).append("] ");
+            formater(ligne, e.modele, e.a, e.b);
+            sortie.println(ligne);
+            if(e.erreur != null){
+                e.erreur.printStackTrace(sortie);
+            }
+
+            e.modele = null;
+            e.a = null;
+            e.b = null;
+            e.erreur = null;
+            sequences.setRelease(indice, queue + CAPACITE);
+            queue++;
+            ecrites++;
+        }
+    }
+
+    /**
+     * Méthode qui remplace les deux premiers {} du modèle par les arguments.
+     * @param ligne le tampon où le message est ajouté.
+     * @param modele le message.
+     * @param a le premier argument.
+     * @param b le deuxième argument.
+     */
+    private static void formater(StringBuilder ligne, String modele, Object a, Object b){
+        int debut = 0;
+        for(Object argument : new Object[]{a, b}){
+            int position = modele.indexOf("{}", debut);
+            if(position < 0){
+                break;
+            }
+            ligne.append(modele, debut, position).append(argument);
+            debut = position + 2;
+        }
+        ligne.append(modele, debut, modele.length());
+    }
+
+    /**
+     * Méthode qui arrête le thread écrivain après qu'il a écrit toutes les traces publiées.
+     */
+    public void arreter(){
+        arret = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
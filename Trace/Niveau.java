@@ -0,0 +1,37 @@
+package Trace;
+
+/**
+ * Niveau est la gravité d'une trace, de la plus bavarde à la plus grave.
+ * Une trace n'est écrite que si son niveau est au moins celui choisi au démarrage.
+ * @see Trace
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public enum Niveau {
+    /**
+     * Le détail de chaque message et de chaque connexion, désactivé par défaut.
+     */
+    DEBUG,
+    /**
+     * Le démarrage du serveur et les événements rares et utiles.
+     */
+    INFO,
+    /**
+     * Une situation anormale dont le serveur se remet seul, comme un client trop lent déconnecté.
+     */
+    AVERTISSEMENT,
+    /**
+     * Une erreur qui fait perdre une connexion, un message ou une fonctionnalité.
+     */
+    ERREUR;
+
+    /**
+     * Méthode qui lit un niveau sans tenir compte de la casse.
+     * @param nom le nom du niveau, par exemple "debug".
+     * @return le niveau.
+     * @throws IllegalArgumentException si le niveau est inconnu.
+     */
+    public static Niveau lire(String nom){
+        return valueOf(nom.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,216 @@
+package Trace;
+
+/**
+ * Trace remplace les System.out du client et du serveur par des traces à niveaux, écrites en arrière-plan.
+ * Chaque classe a sa propre catégorie, obtenue par Trace.de(Classe.class) ; le niveau est commun à toutes,
+ * lu dans la propriété système javachat.traces (INFO par défaut) ou choisi au démarrage par setNiveau().
+ * Une trace sous le niveau ne coûte qu'une comparaison : le message n'est pas construit.
+ * Les arguments remplacent les {} du message et sont convertis en texte par le thread écrivain :
+ * seuls des objets immuables (chaînes, nombres, trames) peuvent être passés tels quels ;
+ * un message plus coûteux à construire se protège par estActif().
+ * @see Niveau
+ * @see Ecrivain
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public final class Trace {
+
+    /**
+     * Le niveau en dessous duquel les traces sont ignorées.
+     * @see Niveau
+     */
+    private static volatile Niveau niveau = Niveau.lire(System.getProperty("javachat.traces", "info"));
+
+    /**
+     * La sortie asynchrone commune à toutes les catégories, vers la console.
+     * @see Ecrivain
+     */
+    private static final Ecrivain ECRIVAIN = new Ecrivain(System.out);
+
+    /**
+     * La catégorie des traces, écrite entre crochets.
+     * @see String
+     */
+    private final String categorie;
+
+    /**
+     * Méthode qui initialise une catégorie de traces.
+     * @param categorie le nom de la catégorie.
+     */
+    private Trace(String categorie){
+        this.categorie = categorie;
+    }
+
+    /**
+     * Méthode qui retourne les traces d'une classe, dont la catégorie est le nom court de la classe.
+     * @param classe la classe qui trace.
+     * @return les traces de la classe.
+     */
+    public static Trace de(Class<?> classe){
+        return new Trace(classe.getSimpleName());
+    }
+
+    /**
+     * Méthode qui change le niveau des traces de toutes les catégories.
+     * @param niveau le niveau minimum des traces écrites.
+     */
+    public static void setNiveau(Niveau niveau){
+        Trace.niveau = niveau;
+    }
+
+    /**
+     * Méthode qui retourne le niveau des traces.
+     * @return le niveau minimum des traces écrites.
+     */
+    public static Niveau getNiveau(){
+        return niveau;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de traces perdues parce que la sortie n'allait pas assez vite.
+     * @return le nombre de traces perdues.
+     */
+    public static long getPerdues(){
+        return ECRIVAIN.getPerdues();
+    }
+
+    /**
+     * Méthode qui indique si les traces d'un niveau sont écrites.
+     * @param niveau le niveau.
+     * @return vrai si le niveau est au moins celui des traces.
+     */
+    public boolean estActif(Niveau niveau){
+        return niveau.compareTo(Trace.niveau) >= 0;
+    }
+
+    /**
+     * Méthode qui publie une trace si son niveau est actif.
+     * @param niveau le niveau de la trace.
+     * @param modele le message.
+     * @param a le premier argument, ou null.
+     * @param b le deuxième argument, ou null.
+     * @param erreur l'exception, ou null.
+     */
+    private void tracer(Niveau niveau, String modele, Object a, Object b, Throwable erreur){
+        if(estActif(niveau)){
+            ECRIVAIN.publier(niveau, categorie, modele, a, b, erreur);
+        }
+    }
+
+    /**
+     * Méthode qui trace un message de niveau DEBUG.
+     * @param message le message.
+     */
+    public void debug(String message){
+        tracer(Niveau.DEBUG, message, null, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau DEBUG avec un argument.
+     * @param modele le message, où {} est remplacé par l'argument.
+     * @param a l'argument, immuable.
+     */
+    public void debug(String modele, Object a){
+        tracer(Niveau.DEBUG, modele, a, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau DEBUG avec deux arguments.
+     * @param modele le message, où les deux {} sont remplacés par les arguments.
+     * @param a le premier argument, immuable.
+     * @param b le deuxième argument, immuable.
+     */
+    public void debug(String modele, Object a, Object b){
+        tracer(Niveau.DEBUG, modele, a, b, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau INFO.
+     * @param message le message.
+     */
+    public void info(String message){
+        tracer(Niveau.INFO, message, null, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau INFO avec un argument.
+     * @param modele le message, où {} est remplacé par l'argument.
+     * @param a l'argument, immuable.
+     */
+    public void info(String modele, Object a){
+        tracer(Niveau.INFO, modele, a, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau INFO avec deux arguments.
+     * @param modele le message, où les deux {} sont remplacés par les arguments.
+     * @param a le premier argument, immuable.
+     * @param b le deuxième argument, immuable.
+     */
+    public void info(String modele, Object a, Object b){
+        tracer(Niveau.INFO, modele, a, b, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau AVERTISSEMENT.
+     * @param message le message.
+     */
+    public void avertissement(String message){
+        tracer(Niveau.AVERTISSEMENT, message, null, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau AVERTISSEMENT avec un argument.
+     * @param modele le message, où {} est remplacé par l'argument.
+     * @param a l'argument, immuable.
+     */
+    public void avertissement(String modele, Object a){
+        tracer(Niveau.AVERTISSEMENT, modele, a, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau AVERTISSEMENT avec deux arguments.
+     * @param modele le message, où les deux {} sont remplacés par les arguments.
+     * @param a le premier argument, immuable.
+     * @param b le deuxième argument, immuable.
+     */
+    public void avertissement(String modele, Object a, Object b){
+        tracer(Niveau.AVERTISSEMENT, modele, a, b, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau ERREUR.
+     * @param message le message.
+     */
+    public void erreur(String message){
+        tracer(Niveau.ERREUR, message, null, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau ERREUR avec un argument.
+     * @param modele le message, où {} est remplacé par l'argument.
+     * @param a l'argument, immuable.
+     */
+    public void erreur(String modele, Object a){
+        tracer(Niveau.ERREUR, modele, a, null, null);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau ERREUR suivi de la pile d'une exception.
+     * @param message le message.
+     * @param erreur l'exception.
+     */
+    public void erreur(String message, Throwable erreur){
+        tracer(Niveau.ERREUR, message, null, null, erreur);
+    }
+
+    /**
+     * Méthode qui trace un message de niveau ERREUR avec un argument, suivi de la pile d'une exception.
+     * @param modele le message, où {} est remplacé par l'argument.
+     * @param a l'argument, immuable.
+     * @param erreur l'exception.
+     */
+    public void erreur(String modele, Object a, Throwable erreur){
+        tracer(Niveau.ERREUR, modele, a, null, erreur);
+    }
+}
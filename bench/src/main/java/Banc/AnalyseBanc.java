@@ -0,0 +1,173 @@
+package Banc;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AnalyseBanc mesure l'analyse des commandes du protocole, texte et binaire, côté serveur et côté client.
+ * Côté serveur, c'est le travail fait par une session pour chaque ligne ou trame reçue avant le routage.
+ * Côté client, c'est le travail fait par ClientThread pour un !msg reçu avant l'affichage :
+ * analyse, lecture de l'émetteur et du corps, puis recherche du nom de l'émetteur.
+ * @see Commande
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyseBanc {
+
+    /**
+     * La taille du corps des messages, en caractères.
+     * @see Integer
+     */
+    @Param({"16", "256", "4096"})
+    public int taille;
+
+    /**
+     * L'analyseur, réutilisé comme dans les sessions et dans ClientThread.
+     * @see Commande
+     */
+    private Commande commande;
+
+    /**
+     * Un !msg reçu par le serveur, dans le protocole texte.
+     * @see String
+     */
+    private String msgTexte;
+
+    /**
+     * Un !pv reçu par le serveur, dans le protocole texte.
+     * @see String
+     */
+    private String pvTexte;
+
+    /**
+     * Le même !msg, dans le protocole binaire.
+     * @see Byte
+     */
+    private byte[] msgBinaire;
+
+    /**
+     * Le même !msg, dans le protocole binaire compressé.
+     * @see Byte
+     */
+    private byte[] msgCompresse;
+
+    /**
+     * Les noms des clients connus du client, comme la liste de ClientThread.
+     * @see HashMap
+     */
+    private HashMap<Integer, String> clients;
+
+    /**
+     * Méthode qui prépare les messages analysés par les bancs.
+     */
+    @Setup
+    public void preparer(){
+        String corps = "Bonjour à tous ".repeat(taille / 15 + 1).substring(0, taille);
+        commande = new Commande();
+        msgTexte = Commande.Type.MSG.prefixe + ":42:" + corps;
+        pvTexte = Commande.Type.PV.prefixe + ":alice:" + corps;
+        msgBinaire = Binaire.trame(Commande.Type.MSG, "42", corps);
+        msgCompresse = Binaire.compresser(msgBinaire);
+        clients = new HashMap<>();
+        for(int i = 0; i < 100; i++){
+            clients.put(i, "client" + i);
+        }
+    }
+
+    /**
+     * Méthode qui mesure l'analyse d'un !msg texte reçu par le serveur.
+     * @return le type reconnu.
+     */
+    @Benchmark
+    public Commande.Type serveurMsgTexte(){
+        return commande.analyser(msgTexte).getType();
+    }
+
+    /**
+     * Méthode qui mesure l'analyse d'un !pv texte et la lecture du destinataire, comme avant le routage d'un message privé.
+     * @return le destinataire.
+     */
+    @Benchmark
+    public String serveurPvTexte(){
+        return commande.analyser(pvTexte).champ();
+    }
+
+    /**
+     * Méthode qui mesure le décodage d'un !msg binaire reçu par le serveur.
+     * @return le type reconnu.
+     * @throws IOException si la trame est mal formée.
+     */
+    @Benchmark
+    public Commande.Type serveurMsgBinaire() throws IOException {
+        return commande.decoder(msgBinaire).getType();
+    }
+
+    /**
+     * Méthode qui mesure le décodage d'un !msg binaire compressé reçu par le serveur.
+     * @return le type reconnu.
+     * @throws IOException si la trame est mal formée.
+     */
+    @Benchmark
+    public Commande.Type serveurMsgCompresse() throws IOException {
+        return commande.decoder(msgCompresse).getType();
+    }
+
+    /**
+     * Méthode qui mesure la reconstruction de la ligne texte d'une trame binaire, faite pour un client texte.
+     * @return la ligne.
+     * @throws IOException si la trame est mal formée.
+     */
+    @Benchmark
+    public String serveurBinaireVersTexte() throws IOException {
+        return commande.decoder(msgBinaire).ligne();
+    }
+
+    /**
+     * Méthode qui mesure le traitement d'un !msg texte par le client avant l'affichage.
+     * @return le nom de l'émetteur suivi du message.
+     */
+    @Benchmark
+    public String clientMsgTexte(){
+        return afficher(commande.analyser(msgTexte));
+    }
+
+    /**
+     * Méthode qui mesure le traitement d'un !msg binaire par le client avant l'affichage.
+     * @return le nom de l'émetteur suivi du message.
+     * @throws IOException si la trame est mal formée.
+     */
+    @Benchmark
+    public String clientMsgBinaire() throws IOException {
+        return afficher(commande.decoder(msgBinaire));
+    }
+
+    /**
+     * Méthode qui reprend le travail de ClientThread.addMessageToChat, sans l'insertion dans l'interface Swing.
+     * @param commande le message analysé.
+     * @return le nom de l'émetteur suivi du message, null si l'émetteur est inconnu.
+     */
+    private String afficher(Commande commande){
+        String nom = clients.get(commande.champEntier());
+        return nom == null ? null : nom + " : " + commande.corpsBrut();
+    }
+}
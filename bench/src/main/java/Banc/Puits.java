@@ -0,0 +1,84 @@
+package Banc;
+
+import Serveur.FileSortante;
+import Serveur.Session;
+import Serveur.Trame;
+
+/**
+ * Puits est une session en mémoire utilisée par les bancs d'essai : elle n'a pas de socket
+ * et se contente de lire les octets de chaque trame reçue dans le format de son client.
+ * Le coût mesuré est donc celui du routage et de l'encodage, sans le réseau ni les files sortantes.
+ * @see RoutageBanc
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Puits implements Session {
+
+    /**
+     * L'identifiant du client.
+     * @see Integer
+     */
+    private final int id;
+
+    /**
+     * Le nom du client.
+     * @see String
+     */
+    private final String nom;
+
+    /**
+     * Le format négocié par le client.
+     * @see Trame.Format
+     */
+    private final Trame.Format format;
+
+    /**
+     * Le nombre d'octets reçus, lu par les bancs pour que l'encodage ne soit pas éliminé par le compilateur.
+     * @see Long
+     */
+    private long recus;
+
+    /**
+     * Méthode qui initialise un puits.
+     * @param id l'identifiant du client.
+     * @param nom le nom du client.
+     * @param format le format négocié par le client.
+     */
+    public Puits(int id, String nom, Trame.Format format){
+        this.id = id;
+        this.nom = nom;
+        this.format = format;
+    }
+
+    @Override
+    public int getClientId(){
+        return id;
+    }
+
+    @Override
+    public String getClientName(){
+        return nom;
+    }
+
+    @Override
+    public void envoyer(Trame trame){
+        recus += trame.octets(format).length;
+    }
+
+    /**
+     * Méthode qui retourne la file sortante de la session : un puits n'en a pas.
+     * @return null.
+     */
+    @Override
+    public FileSortante getFileSortante(){
+        return null;
+    }
+
+    /**
+     * Méthode qui retourne le nombre d'octets reçus depuis la création du puits.
+     * @return le nombre d'octets.
+     */
+    public long getRecus(){
+        return recus;
+    }
+}
@@ -0,0 +1,147 @@
+package Banc;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import Serveur.Identifiants;
+import Serveur.Metriques;
+import Serveur.Registre;
+import Serveur.Routeur;
+import Serveur.Salons;
+import Serveur.Trame;
+import Trace.Niveau;
+import Trace.Trace;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RoutageBanc mesure le routage des messages par le Routeur vers des sessions en mémoire :
+ * la diffusion d'un !msg à N clients et l'envoi d'un !pv à un client parmi N.
+ * Le serveur est seul, sans journal ni recherche, et seules les traces d'erreur sont gardées
+ * pour que les traces des messages reçus ne faussent pas la mesure.
+ * @see Routeur
+ * @see Puits
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutageBanc {
+
+    /**
+     * Le nombre de clients connectés.
+     * @see Integer
+     */
+    @Param({"10", "100", "1000"})
+    public int clients;
+
+    /**
+     * Le format négocié par tous les clients.
+     * @see Trame.Format
+     */
+    @Param({"TEXTE", "BINAIRE"})
+    public Trame.Format format;
+
+    /**
+     * Le routeur mesuré.
+     * @see Routeur
+     */
+    private Routeur routeur;
+
+    /**
+     * Les sessions connectées.
+     * @see Puits
+     */
+    private Puits[] puits;
+
+    /**
+     * Le !msg reçu, analysé dans le format des clients.
+     * @see Commande
+     */
+    private Commande msg;
+
+    /**
+     * Le !pv reçu, adressé au dernier client connecté et analysé dans le format des clients.
+     * @see Commande
+     */
+    private Commande pv;
+
+    /**
+     * Le niveau des traces, rétabli à la fin du banc.
+     * @see Niveau
+     */
+    private Niveau niveau;
+
+    /**
+     * Méthode qui connecte les clients et prépare les messages routés par les bancs.
+     * @throws IOException si une trame binaire est mal formée.
+     */
+    @Setup
+    public void preparer() throws IOException {
+        niveau = Trace.getNiveau();
+        Trace.setNiveau(Niveau.ERREUR);
+
+        Registre registre = new Registre();
+        routeur = new Routeur(registre, new Salons(registre), null, null, null, null, new Identifiants(0), new Metriques(registre));
+        puits = new Puits[clients];
+        for(int i = 0; i < clients; i++){
+            puits[i] = new Puits(routeur.nouvelIdentifiant(), "client" + i, format);
+            registre.rejoindre(puits[i]);
+        }
+
+        String corps = "Bonjour à tous, ceci est un message de test.";
+        String dest = puits[clients - 1].getClientName();
+        msg = new Commande();
+        pv = new Commande();
+        if(format == Trame.Format.TEXTE){
+            msg.analyser(Commande.Type.MSG.prefixe + ":" + puits[0].getClientId() + ":" + corps);
+            pv.analyser(Commande.Type.PV.prefixe + ":" + dest + ":" + corps);
+        }else{
+            msg.decoder(Binaire.trame(Commande.Type.MSG, String.valueOf(puits[0].getClientId()), corps));
+            pv.decoder(Binaire.trame(Commande.Type.PV, dest, corps));
+        }
+    }
+
+    /**
+     * Méthode qui rétablit le niveau des traces.
+     */
+    @TearDown
+    public void terminer(){
+        Trace.setNiveau(niveau);
+    }
+
+    /**
+     * Méthode qui mesure la diffusion d'un !msg à tous les clients.
+     * @return le nombre d'octets reçus par le dernier client.
+     */
+    @Benchmark
+    public long diffusion(){
+        routeur.traiter(puits[0], msg);
+        return puits[clients - 1].getRecus();
+    }
+
+    /**
+     * Méthode qui mesure l'envoi d'un !pv : recherche du destinataire par son nom, encodage et envoi.
+     * @return le nombre d'octets reçus par le destinataire.
+     */
+    @Benchmark
+    public long prive(){
+        routeur.traiter(puits[0], pv);
+        return puits[clients - 1].getRecus();
+    }
+}
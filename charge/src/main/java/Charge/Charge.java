@@ -0,0 +1,203 @@
+package Charge;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+/**
+ * Charge est le générateur de charge du serveur : il simule des milliers de clients sans interface graphique,
+ * dans un seul processus, pour mesurer le débit et la latence de bout en bout du serveur.
+ * Les clients se connectent d'abord tous, puis envoient pendant l'échauffement et la mesure ;
+ * le débit et les percentiles de latence sont affichés chaque seconde, puis la distribution complète à la fin.
+ * Le serveur doit tourner sur la même machine, par exemple sur l'interface locale.
+ * @see Scenario
+ * @see Connexion
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Charge {
+
+    /**
+     * Le délai maximum d'attente de la connexion de tous les clients, en secondes.
+     * @see Long
+     */
+    private static final long DELAI_CONNEXIONS = 60;
+
+    /**
+     * Méthode permettant de rendre la classe executable.
+     * @param args un tableau de chaînes de caractères de la forme --cle=valeur.
+     * @throws InterruptedException si le thread principal est interrompu.
+     * @throws FileNotFoundException si le fichier --hlog ne peut pas être créé.
+     */
+    public static void main(String[] args) throws InterruptedException, FileNotFoundException {
+        Scenario scenario = Scenario.lire(args);
+        Mesures mesures = new Mesures();
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+        List<Connexion> connexions = connecter(scenario, mesures, threads);
+        if(connexions.isEmpty()){
+            System.out.println("Aucun client n'a pu se connecter à " + scenario.hote + ":" + scenario.port);
+            return;
+        }
+
+        long seconde = TimeUnit.SECONDS.toNanos(1);
+        long debut = mesures.maintenant() + seconde / 10;
+        long debutMesure = debut + scenario.echauffement * seconde;
+        long finMesure = debutMesure + scenario.duree * seconde;
+        mesures.fenetre(debutMesure, finMesure);
+        for(Connexion connexion : connexions){
+            threads.execute(() -> connexion.emettre(debut, finMesure, connexions));
+        }
+
+        Histogram total = relever(scenario, mesures, debut, debutMesure, finMesure);
+        for(Connexion connexion : connexions){
+            connexion.fermer();
+        }
+        resumer(scenario, mesures, connexions.size(), total);
+    }
+
+    /**
+     * Méthode qui connecte tous les clients, au plus --paralleles à la fois, et attend qu'ils soient prêts.
+     * @param scenario le scénario de la charge.
+     * @param mesures les mesures partagées.
+     * @param threads l'exécuteur des threads virtuels des connexions.
+     * @return les connexions prêtes.
+     * @throws InterruptedException si le thread principal est interrompu.
+     */
+    private static List<Connexion> connecter(Scenario scenario, Mesures mesures, ExecutorService threads) throws InterruptedException {
+        CountDownLatch prets = new CountDownLatch(scenario.clients);
+        Semaphore paralleles = new Semaphore(scenario.paralleles);
+        List<Connexion> connexions = new ArrayList<>(scenario.clients);
+        long depart = System.nanoTime();
+
+        for(int i = 0; i < scenario.clients; i++){
+            Connexion connexion = new Connexion(scenario, mesures, "charge" + i, prets);
+            connexions.add(connexion);
+            paralleles.acquire();
+            threads.execute(() -> {
+                try {
+                    connexion.ouvrir();
+                    threads.execute(connexion::lire);
+                } catch (Exception e) {
+                    System.out.println("Connexion impossible : " + e.getMessage());
+                    connexion.fermer();
+                    prets.countDown();
+                } finally {
+                    paralleles.release();
+                }
+            });
+        }
+        prets.await(DELAI_CONNEXIONS, TimeUnit.SECONDS);
+
+        List<Connexion> pretes = new ArrayList<>(scenario.clients);
+        for(Connexion connexion : connexions){
+            if(connexion.estPrete()){
+                pretes.add(connexion);
+            }else{
+                connexion.fermer();
+            }
+        }
+        System.out.printf("%d client(s) connecté(s) sur %d en %.1f s, protocole %s%n", pretes.size(), scenario.clients,
+                (System.nanoTime() - depart) / 1e9, scenario.protocole);
+        return List.copyOf(pretes);
+    }
+
+    /**
+     * Méthode qui affiche chaque seconde le débit reçu et les percentiles de latence de la seconde écoulée,
+     * jusqu'à la fin de l'attente des derniers messages.
+     * @param scenario le scénario de la charge.
+     * @param mesures les mesures partagées.
+     * @param debut l'instant du début des envois.
+     * @param debutMesure l'instant du début de la mesure.
+     * @param finMesure l'instant de la fin de la mesure et des envois.
+     * @return l'histogramme de toutes les latences de la mesure, en nanosecondes.
+     * @throws FileNotFoundException si le fichier --hlog ne peut pas être créé.
+     * @throws InterruptedException si le thread principal est interrompu.
+     */
+    private static Histogram relever(Scenario scenario, Mesures mesures, long debut, long debutMesure, long finMesure)
+            throws FileNotFoundException, InterruptedException {
+        long seconde = TimeUnit.SECONDS.toNanos(1);
+        long fin = finMesure + TimeUnit.MILLISECONDS.toNanos(scenario.attenteMs);
+        Histogram total = new Histogram(3);
+        Histogram intervalle = null;
+        HistogramLogWriter journal = null;
+        if(scenario.hlog != null){
+            journal = new HistogramLogWriter(new PrintStream(scenario.hlog));
+            journal.outputLogFormatVersion();
+            journal.outputStartTime(System.currentTimeMillis());
+            journal.setBaseTime(System.currentTimeMillis());
+            journal.outputLegend();
+        }
+
+        long recus = 0;
+        for(long releve = debut + seconde; releve - seconde < fin; releve += seconde){
+            long attente = releve - mesures.maintenant();
+            if(attente > 0){
+                TimeUnit.NANOSECONDS.sleep(attente);
+            }
+            intervalle = mesures.getLatences().getIntervalHistogram(intervalle);
+            total.add(intervalle);
+            if(journal != null && releve > debutMesure){
+                journal.outputIntervalHistogram(intervalle);
+            }
+
+            long recusTotal = mesures.getRecusTotal();
+            String phase = releve <= debutMesure ? "échauffement" : releve - seconde >= finMesure ? "attente" : "mesure";
+            System.out.printf("[%4d s] %-12s reçus %,9d/s  p50 %s  p99 %s  p99.9 %s  max %s%n", (releve - debut) / seconde, phase,
+                    recusTotal - recus, ms(intervalle, 50), ms(intervalle, 99), ms(intervalle, 99.9), ms(intervalle, 100));
+            recus = recusTotal;
+        }
+        if(journal != null){
+            journal.close();
+        }
+        return total;
+    }
+
+    /**
+     * Méthode qui formate un percentile d'un histogramme de latences en millisecondes.
+     * @param histogramme les latences, en nanosecondes.
+     * @param percentile le percentile, entre 0 et 100.
+     * @return le percentile en millisecondes, ou "-" si l'histogramme est vide.
+     */
+    private static String ms(Histogram histogramme, double percentile){
+        if(histogramme.getTotalCount() == 0){
+            return String.format("%9s", "-");
+        }
+        return String.format("%6.2f ms", histogramme.getValueAtPercentile(percentile) / 1e6);
+    }
+
+    /**
+     * Méthode qui affiche les résultats de la mesure et la distribution des latences au format HdrHistogram.
+     * @param scenario le scénario de la charge.
+     * @param mesures les mesures partagées.
+     * @param clients le nombre de clients connectés.
+     * @param total l'histogramme de toutes les latences de la mesure, en nanosecondes.
+     */
+    private static void resumer(Scenario scenario, Mesures mesures, int clients, Histogram total){
+        long msg = mesures.getMsgEnvoyes();
+        long pv = mesures.getPvEnvoyes();
+        long attendus = msg * clients + 2 * pv;
+        long recus = mesures.getRecus();
+
+        System.out.println();
+        System.out.printf("Clients : %d, %s msg/s par client, %.0f %% de !pv, corps de %d caractères, mesure de %d s%n",
+                clients, scenario.debit, scenario.pv * 100, scenario.taille, scenario.duree);
+        System.out.printf("Envoyés : %,d !msg et %,d !pv, soit %,.0f messages/s%n", msg, pv, (msg + pv) / (double) scenario.duree);
+        System.out.printf("Reçus : %,d sur %,d attendus (%.3f %%), soit %,.0f messages/s%n", recus, attendus,
+                attendus == 0 ? 0 : recus * 100.0 / attendus, recus / (double) scenario.duree);
+        System.out.printf("Connexions perdues : %d%n", mesures.getPertes());
+        System.out.printf("Latence : p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                ms(total, 50), ms(total, 90), ms(total, 99), ms(total, 99.9), ms(total, 100));
+        System.out.println();
+        System.out.println("Distribution des latences (ms) :");
+        total.outputPercentileDistribution(System.out, 1e6);
+    }
+}
@@ -0,0 +1,375 @@
+package Charge;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Connexion est un client simulé du générateur de charge, sans interface graphique.
+ * Elle fait la même poignée de main que Client (le nom seul en texte, !hello:capacités:nom sinon) et envoie
+ * les mêmes !msg et !pv que ClientThread. Son corps commence par l'instant prévu de l'envoi, de la forme
+ * "@instant ", lu à chaque réception pour mesurer la latence de bout en bout.
+ * Chaque connexion a deux threads virtuels : un lecteur et un émetteur.
+ * @see Charge
+ * @see Mesures
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Connexion {
+
+    /**
+     * Le délai maximum d'attente de la réponse du serveur à la poignée de main, en millisecondes.
+     * @see Integer
+     */
+    private static final int DELAI_POIGNEE = 10000;
+
+    /**
+     * Le scénario de la charge.
+     * @see Scenario
+     */
+    private final Scenario scenario;
+
+    /**
+     * Les mesures partagées par toutes les connexions.
+     * @see Mesures
+     */
+    private final Mesures mesures;
+
+    /**
+     * Le nom du client simulé, unique parmi les connexions du générateur.
+     * @see String
+     */
+    private final String nom;
+
+    /**
+     * Le compte à rebours des connexions prêtes ou en échec, attendu avant les envois.
+     * @see CountDownLatch
+     */
+    private final CountDownLatch prets;
+
+    /**
+     * Le remplissage ajouté après l'horodatage pour que le corps ait la taille du scénario.
+     * @see String
+     */
+    private final String remplissage;
+
+    /**
+     * Le socket de la connexion.
+     * @see Socket
+     */
+    private Socket socket;
+
+    /**
+     * Le flux de sortie brut vers le serveur, écrit par l'émetteur et, pour répondre aux !ping, par le lecteur.
+     * @see OutputStream
+     */
+    private OutputStream sortie;
+
+    /**
+     * Le verrou qui protège les écritures dans le flux de sortie.
+     * @see ReentrantLock
+     */
+    private final ReentrantLock ecriture = new ReentrantLock();
+
+    /**
+     * Le flux d'entrée avec tampon, utilisé avec le protocole binaire.
+     * @see InputStream
+     */
+    private InputStream entree;
+
+    /**
+     * Le lecteur de lignes, utilisé avec le protocole texte.
+     * @see BufferedReader
+     */
+    private BufferedReader lecteur;
+
+    /**
+     * Vrai si le serveur a accepté le protocole binaire.
+     */
+    private boolean binaire;
+
+    /**
+     * Vrai si le serveur a accepté la compression et que le scénario la demande.
+     */
+    private boolean compression;
+
+    /**
+     * L'identifiant attribué par le serveur, -1 tant que le client ne s'est pas vu dans la liste des connectés.
+     * @see Integer
+     */
+    private volatile int id = -1;
+
+    /**
+     * Vrai quand la connexion a été fermée par le générateur : la fin de la lecture n'est alors pas une perte.
+     */
+    private volatile boolean fermee;
+
+    /**
+     * Méthode qui initialise un client simulé, sans se connecter.
+     * @param scenario le scénario de la charge.
+     * @param mesures les mesures partagées.
+     * @param nom le nom du client.
+     * @param prets le compte à rebours décrémenté quand la connexion est prête ou a échoué.
+     */
+    public Connexion(Scenario scenario, Mesures mesures, String nom, CountDownLatch prets){
+        this.scenario = scenario;
+        this.mesures = mesures;
+        this.nom = nom;
+        this.prets = prets;
+        this.remplissage = "x".repeat(Math.max(0, scenario.taille));
+    }
+
+    /**
+     * Méthode qui se connecte au serveur et fait la poignée de main.
+     * La connexion n'est prête qu'à la réception de son propre !newcli, lu ensuite par lire().
+     * @throws IOException si la connexion échoue ou si le serveur répond mal.
+     */
+    public void ouvrir() throws IOException {
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(new InetSocketAddress(scenario.hote, scenario.port));
+        sortie = socket.getOutputStream();
+        InputStream in = socket.getInputStream();
+
+        if(scenario.binaire()){
+            String capacites = scenario.protocole.equals("compresse")
+                    ? Binaire.CAPACITE + "," + Binaire.CAPACITE_COMPRESSION : Binaire.CAPACITE;
+            sortie.write((Commande.Type.HELLO.prefixe + ":" + capacites + ":" + nom + "\n").getBytes(StandardCharsets.UTF_8));
+
+            socket.setSoTimeout(DELAI_POIGNEE);
+            Commande reponse = new Commande().analyser(lireLigne(in));
+            socket.setSoTimeout(0);
+            if(reponse.getType() != Commande.Type.HELLO){
+                throw new IOException("Réponse inattendue du serveur : " + reponse.ligne());
+            }
+            List<String> acceptees = Arrays.asList(reponse.champ().split(","));
+            binaire = acceptees.contains(Binaire.CAPACITE);
+            compression = binaire && acceptees.contains(Binaire.CAPACITE_COMPRESSION);
+        }else{
+            sortie.write((nom + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        if(binaire){
+            entree = new BufferedInputStream(in);
+        }else{
+            lecteur = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Méthode qui lit une ligne octet par octet, sans tampon, pour ne rien lire au-delà du retour à la ligne.
+     * @param in le flux d'entrée du socket.
+     * @return la ligne lue, sans le retour à la ligne.
+     * @throws IOException si la connexion est fermée avant la fin de la ligne.
+     */
+    private static String lireLigne(InputStream in) throws IOException {
+        ByteArrayOutputStream ligne = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != '\n'){
+            if(b < 0){
+                throw new EOFException("Connexion fermée par le serveur");
+            }
+            ligne.write(b);
+        }
+        return ligne.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Méthode qui lit les commandes du serveur jusqu'à la fin de la connexion.
+     * Elle retient l'identifiant du client à son !newcli, répond aux !ping et mesure la latence de chaque !msg et !pv horodaté.
+     */
+    public void lire(){
+        Commande commande = new Commande();
+        try {
+            while(true){
+                if(binaire){
+                    byte[] trame = Binaire.lire(entree);
+                    if(trame == null){
+                        break;
+                    }
+                    commande.decoder(trame);
+                }else{
+                    String ligne = lecteur.readLine();
+                    if(ligne == null){
+                        break;
+                    }
+                    commande.analyser(ligne);
+                }
+
+                switch (commande.getType()) {
+                    case MSG, PV -> {
+                        long prevu = commande.estBinaire()
+                                ? horodatage(commande.octets(), commande.debutCorpsOctets())
+                                : horodatage(commande.corpsBrut());
+                        if(prevu >= 0){
+                            mesures.reception(prevu);
+                        }
+                    }
+                    case PING -> envoyer(Commande.Type.PONG, "", "");
+                    case NEWCLI -> {
+                        if(id < 0 && nom.equals(commande.corps())){
+                            id = commande.champEntier();
+                            prets.countDown();
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // la connexion est perdue, comme à la fin du flux
+        }
+        if(! fermee){
+            mesures.perte();
+            if(id < 0){
+                prets.countDown();
+            }
+        }
+    }
+
+    /**
+     * Méthode qui envoie les messages du client au débit du scénario, jusqu'à la fin de la mesure.
+     * Les envois sont prévus à intervalle régulier à partir d'un décalage tiré au hasard, pour étaler les clients.
+     * Un envoi en retard part aussitôt, mais garde son instant prévu ; l'émetteur cède ensuite son thread porteur,
+     * sinon un émetteur qui rattrape son retard sans jamais attendre empêcherait les lecteurs de s'exécuter.
+     * @param debut l'instant du premier intervalle d'envoi, en nanosecondes depuis l'origine des mesures.
+     * @param fin l'instant à partir duquel plus rien n'est envoyé.
+     * @param destinataires les clients prêts, parmi lesquels sont tirés les destinataires des !pv.
+     */
+    public void emettre(long debut, long fin, List<Connexion> destinataires){
+        ThreadLocalRandom hasard = ThreadLocalRandom.current();
+        long intervalle = (long) (1e9 / scenario.debit);
+        long prevu = debut + hasard.nextLong(intervalle);
+        String champ = String.valueOf(id);
+
+        try {
+            while(prevu < fin && ! fermee){
+                long attente = prevu - mesures.maintenant();
+                if(attente > 0){
+                    LockSupport.parkNanos(attente);
+                    continue;
+                }
+
+                String horodatage = "@" + prevu + " ";
+                String corps = horodatage + remplissage.substring(Math.min(remplissage.length(), horodatage.length()));
+                boolean prive = hasard.nextDouble() < scenario.pv;
+                if(prive){
+                    Connexion dest = destinataires.get(hasard.nextInt(destinataires.size()));
+                    if(dest == this && destinataires.size() > 1){
+                        dest = destinataires.get((destinataires.indexOf(this) + 1) % destinataires.size());
+                    }
+                    envoyer(Commande.Type.PV, dest.nom, corps);
+                }else{
+                    envoyer(Commande.Type.MSG, champ, corps);
+                }
+                mesures.envoi(prevu, prive);
+                prevu += intervalle;
+                Thread.yield();
+            }
+        } catch (IOException e) {
+            // la connexion est perdue : le lecteur la compte
+        }
+    }
+
+    /**
+     * Méthode qui envoie une commande au serveur dans le protocole négocié.
+     * @param type la commande.
+     * @param champ le champ de la commande.
+     * @param corps le corps de la commande, sans retour à la ligne.
+     * @throws IOException si l'écriture échoue.
+     */
+    private void envoyer(Commande.Type type, String champ, String corps) throws IOException {
+        byte[] octets;
+        if(binaire){
+            byte[] trame = Binaire.trame(type, champ, corps);
+            octets = compression ? Binaire.compresser(trame) : trame;
+        }else{
+            octets = (type.prefixe + ":" + champ + ":" + corps + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+        ecriture.lock();
+        try {
+            sortie.write(octets);
+        } finally {
+            ecriture.unlock();
+        }
+    }
+
+    /**
+     * Méthode qui lit l'horodatage au début du corps d'une trame binaire, sans créer de chaîne.
+     * @param octets les octets de la trame.
+     * @param debut la position du corps.
+     * @return l'instant prévu de l'envoi, -1 si le corps n'est pas horodaté.
+     */
+    private static long horodatage(byte[] octets, int debut){
+        if(debut >= octets.length || octets[debut] != '@'){
+            return -1;
+        }
+        long instant = 0;
+        for(int i = debut + 1; i < octets.length; i++){
+            int c = octets[i];
+            if(c == ' '){
+                return instant;
+            }
+            if(c < '0' || c > '9'){
+                return -1;
+            }
+            instant = instant * 10 + (c - '0');
+        }
+        return -1;
+    }
+
+    /**
+     * Méthode qui lit l'horodatage au début du corps d'une ligne du protocole texte.
+     * @param corps le corps de la ligne.
+     * @return l'instant prévu de l'envoi, -1 si le corps n'est pas horodaté.
+     */
+    private static long horodatage(String corps){
+        if(corps == null || corps.isEmpty() || corps.charAt(0) != '@'){
+            return -1;
+        }
+        int fin = corps.indexOf(' ');
+        try {
+            return Long.parseLong(corps, 1, fin < 0 ? corps.length() : fin, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Méthode qui indique si la connexion est prête à envoyer : le client a reçu son identifiant.
+     * @return vrai si la connexion est prête.
+     */
+    public boolean estPrete(){
+        return id >= 0 && ! fermee;
+    }
+
+    /**
+     * Méthode qui ferme la connexion ; le serveur annonce alors le départ du client aux autres.
+     */
+    public void fermer(){
+        fermee = true;
+        try {
+            if(socket != null){
+                socket.close();
+            }
+        } catch (IOException e) {
+            // la connexion est déjà fermée
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package Charge;
+
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Mesures regroupe les compteurs et l'histogramme des latences partagés par toutes les connexions du générateur de charge.
+ * Chaque message porte l'instant prévu de son envoi : sa latence de bout en bout est mesurée à chaque réception,
+ * dans le même processus, donc avec la même horloge.
+ * L'instant prévu, et non l'instant réel, évite de cacher le retard pris par un émetteur ralenti par le serveur.
+ * Seuls les messages prévus pendant la fenêtre de mesure sont comptés ; l'échauffement et les messages en retard n'en font pas partie.
+ * @see Connexion
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Mesures {
+
+    /**
+     * L'origine des instants, en nanosecondes de System.nanoTime(), pour que les instants mesurés soient positifs.
+     * @see Long
+     */
+    private final long origine;
+
+    /**
+     * Le début de la fenêtre de mesure, en nanosecondes depuis l'origine.
+     * @see Long
+     */
+    private volatile long debut;
+
+    /**
+     * La fin de la fenêtre de mesure, en nanosecondes depuis l'origine.
+     * @see Long
+     */
+    private volatile long fin;
+
+    /**
+     * Les latences de bout en bout des messages de la fenêtre, en nanosecondes.
+     * @see Recorder
+     */
+    private final Recorder latences;
+
+    /**
+     * Le nombre de !msg envoyés dans la fenêtre.
+     * @see LongAdder
+     */
+    private final LongAdder msgEnvoyes;
+
+    /**
+     * Le nombre de !pv envoyés dans la fenêtre.
+     * @see LongAdder
+     */
+    private final LongAdder pvEnvoyes;
+
+    /**
+     * Le nombre de messages de la fenêtre reçus.
+     * @see LongAdder
+     */
+    private final LongAdder recus;
+
+    /**
+     * Le nombre de messages reçus, fenêtre ou non.
+     * @see LongAdder
+     */
+    private final LongAdder recusTotal;
+
+    /**
+     * Le nombre de connexions perdues avant la fin.
+     * @see LongAdder
+     */
+    private final LongAdder pertes;
+
+    /**
+     * Méthode qui initialise des mesures vides, sans fenêtre de mesure.
+     */
+    public Mesures(){
+        this.origine = System.nanoTime() - 1;
+        this.debut = Long.MAX_VALUE;
+        this.fin = Long.MAX_VALUE;
+        this.latences = new Recorder(3);
+        this.msgEnvoyes = new LongAdder();
+        this.pvEnvoyes = new LongAdder();
+        this.recus = new LongAdder();
+        this.recusTotal = new LongAdder();
+        this.pertes = new LongAdder();
+    }
+
+    /**
+     * Méthode qui retourne l'instant présent.
+     * @return le nombre de nanosecondes depuis l'origine, toujours positif.
+     */
+    public long maintenant(){
+        return System.nanoTime() - origine;
+    }
+
+    /**
+     * Méthode qui fixe la fenêtre de mesure.
+     * @param debut le début de la fenêtre, en nanosecondes depuis l'origine.
+     * @param fin la fin de la fenêtre, exclue.
+     */
+    public void fenetre(long debut, long fin){
+        this.fin = fin;
+        this.debut = debut;
+    }
+
+    /**
+     * Méthode qui indique si un instant est dans la fenêtre de mesure.
+     * @param instant l'instant, en nanosecondes depuis l'origine.
+     * @return vrai si l'instant est dans la fenêtre.
+     */
+    private boolean mesure(long instant){
+        return instant >= debut && instant < fin;
+    }
+
+    /**
+     * Méthode appelée après l'envoi d'un message.
+     * @param prevu l'instant prévu de l'envoi, porté par le message.
+     * @param prive vrai pour un !pv, faux pour un !msg.
+     */
+    public void envoi(long prevu, boolean prive){
+        if(mesure(prevu)){
+            (prive ? pvEnvoyes : msgEnvoyes).increment();
+        }
+    }
+
+    /**
+     * Méthode appelée à la réception d'un message horodaté.
+     * @param prevu l'instant prévu de l'envoi du message.
+     */
+    public void reception(long prevu){
+        recusTotal.increment();
+        if(mesure(prevu)){
+            recus.increment();
+            latences.recordValue(Math.max(0, maintenant() - prevu));
+        }
+    }
+
+    /**
+     * Méthode appelée quand une connexion est perdue avant la fin.
+     */
+    public void perte(){
+        pertes.increment();
+    }
+
+    /**
+     * Méthode qui retourne l'enregistreur des latences, dont les histogrammes sont relevés chaque seconde.
+     * @return l'enregistreur des latences.
+     */
+    public Recorder getLatences(){
+        return latences;
+    }
+
+    /**
+     * Méthode qui retourne le nombre de !msg envoyés dans la fenêtre.
+     * @return le nombre de !msg.
+     */
+    public long getMsgEnvoyes(){
+        return msgEnvoyes.sum();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de !pv envoyés dans la fenêtre.
+     * @return le nombre de !pv.
+     */
+    public long getPvEnvoyes(){
+        return pvEnvoyes.sum();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de messages de la fenêtre reçus.
+     * @return le nombre de messages.
+     */
+    public long getRecus(){
+        return recus.sum();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de messages reçus, fenêtre ou non.
+     * @return le nombre de messages.
+     */
+    public long getRecusTotal(){
+        return recusTotal.sum();
+    }
+
+    /**
+     * Méthode qui retourne le nombre de connexions perdues avant la fin.
+     * @return le nombre de connexions.
+     */
+    public long getPertes(){
+        return pertes.sum();
+    }
+}
@@ -0,0 +1,135 @@
+package Charge;
+
+/**
+ * Scenario regroupe les options du générateur de charge.
+ * Les options sont passées en ligne de commande sous la forme --cle=valeur, comme celles du serveur, par exemple :
+ * java -jar charge.jar --clients=2000 --debit=2 --pv=0.1 --protocole=binaire --duree=60
+ * @see Charge
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+public class Scenario {
+
+    /**
+     * L'adresse du serveur.
+     * @see String
+     */
+    public String hote = "127.0.0.1";
+
+    /**
+     * Le port du serveur.
+     * @see Integer
+     */
+    public int port = 54000;
+
+    /**
+     * Le nombre de clients simulés, chacun avec sa propre connexion.
+     * @see Integer
+     */
+    public int clients = 100;
+
+    /**
+     * Le nombre de messages envoyés par seconde par chaque client.
+     * @see Double
+     */
+    public double debit = 1;
+
+    /**
+     * La part des messages envoyés en !pv à un autre client tiré au hasard, entre 0 et 1 ; les autres sont des !msg.
+     * @see Double
+     */
+    public double pv = 0;
+
+    /**
+     * La longueur du corps des messages, en caractères, horodatage compris.
+     * @see Integer
+     */
+    public int taille = 64;
+
+    /**
+     * Le protocole des clients : "texte" (le nom seul, comme un ancien client), "binaire" ou "compresse".
+     * @see String
+     */
+    public String protocole = "binaire";
+
+    /**
+     * La durée d'envoi avant la mesure, en secondes, pendant laquelle les latences ne sont pas enregistrées.
+     * @see Integer
+     */
+    public int echauffement = 5;
+
+    /**
+     * La durée de la mesure, en secondes.
+     * @see Integer
+     */
+    public int duree = 30;
+
+    /**
+     * Le délai d'attente des derniers messages après la fin des envois, en millisecondes.
+     * @see Long
+     */
+    public long attenteMs = 2000;
+
+    /**
+     * Le nombre maximum de connexions ouvertes en même temps pendant la montée en charge.
+     * @see Integer
+     */
+    public int paralleles = 64;
+
+    /**
+     * Le fichier où écrire les histogrammes de chaque seconde de mesure (format HdrHistogram log), null pour ne rien écrire.
+     * @see String
+     */
+    public String hlog = null;
+
+    /**
+     * Méthode qui indique si les clients négocient le protocole binaire.
+     * @return vrai pour les protocoles "binaire" et "compresse".
+     */
+    public boolean binaire(){
+        return ! protocole.equals("texte");
+    }
+
+    /**
+     * Méthode qui construit le scénario à partir des arguments de la ligne de commande.
+     * @param args un tableau de chaînes de caractères de la forme --cle=valeur.
+     * @return le scénario.
+     * @throws IllegalArgumentException si une option est inconnue ou mal formée.
+     */
+    public static Scenario lire(String[] args){
+        Scenario scenario = new Scenario();
+
+        for(String arg : args){
+            String[] split = arg.replaceFirst("^--", "").split("=", 2);
+            if(split.length != 2){
+                throw new IllegalArgumentException("Option mal formée : " + arg);
+            }
+            String valeur = split[1];
+
+            switch (split[0]) {
+                case "hote" -> scenario.hote = valeur;
+                case "port" -> scenario.port = Integer.parseInt(valeur);
+                case "clients" -> scenario.clients = Integer.parseInt(valeur);
+                case "debit" -> scenario.debit = Double.parseDouble(valeur);
+                case "pv" -> scenario.pv = Double.parseDouble(valeur);
+                case "taille" -> scenario.taille = Integer.parseInt(valeur);
+                case "protocole" -> {
+                    if(! valeur.equals("texte") && ! valeur.equals("binaire") && ! valeur.equals("compresse")){
+                        throw new IllegalArgumentException("Protocole inconnu : " + arg);
+                    }
+                    scenario.protocole = valeur;
+                }
+                case "echauffement" -> scenario.echauffement = Integer.parseInt(valeur);
+                case "duree" -> scenario.duree = Integer.parseInt(valeur);
+                case "attente-ms" -> scenario.attenteMs = Long.parseLong(valeur);
+                case "paralleles" -> scenario.paralleles = Integer.parseInt(valeur);
+                case "hlog" -> scenario.hlog = valeur;
+                default -> throw new IllegalArgumentException("Option inconnue : " + arg);
+            }
+        }
+        if(scenario.clients < 1 || scenario.debit <= 0 || scenario.pv < 0 || scenario.pv > 1){
+            throw new IllegalArgumentException("Il faut au moins un client, un débit positif et une part de !pv entre 0 et 1");
+        }
+        return scenario;
+    }
+}
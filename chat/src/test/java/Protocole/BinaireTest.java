@@ -0,0 +1,123 @@
+package Protocole;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * BinaireTest vérifie l'encodage du protocole binaire aux limites : varints à chaque changement de taille,
+ * trames tronquées ou trop longues, et trames compressées dont le contenu dépasse CONTENU_MAX une fois décompressé.
+ * @see Binaire
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+class BinaireTest {
+
+    /**
+     * Méthode qui vérifie la taille, l'écriture et la relecture d'un varint de part et d'autre de chaque changement de taille.
+     * @throws IOException si un varint bien formé est refusé.
+     */
+    @Test
+    void varintAuxBornes() throws IOException {
+        int[] valeurs = {0, 1, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456, Integer.MAX_VALUE};
+        int[] tailles = {1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5};
+        for(int i = 0; i < valeurs.length; i++){
+            byte[] octets = new byte[5];
+            int fin = Binaire.ecrireVarint(octets, 0, valeurs[i]);
+            assertEquals(tailles[i], fin, "taille écrite de " + valeurs[i]);
+            assertEquals(tailles[i], Binaire.tailleVarint(valeurs[i]), "taille calculée de " + valeurs[i]);
+
+            long lu = Binaire.lireVarint(octets, 0, fin);
+            assertEquals(valeurs[i], (int) lu);
+            assertEquals(fin, (int) (lu >>> 32));
+            assertEquals(-1, Binaire.lireVarint(octets, 0, fin - 1), "varint de " + valeurs[i] + " incomplet");
+        }
+    }
+
+    /**
+     * Méthode qui vérifie qu'un varint de plus de 5 octets ou négatif est refusé.
+     */
+    @Test
+    void varintMalForme(){
+        byte[] tropLong = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        assertThrows(IOException.class, () -> Binaire.lireVarint(tropLong, 0, tropLong.length));
+
+        byte[] negatif = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+        assertThrows(IOException.class, () -> Binaire.lireVarint(negatif, 0, negatif.length));
+    }
+
+    /**
+     * Méthode qui vérifie qu'une trame n'est reconnue complète qu'une fois tous ses octets reçus,
+     * et qu'un flux interrompu au milieu d'une trame est une erreur.
+     * @throws IOException si une trame complète est refusée.
+     */
+    @Test
+    void trameTronquee() throws IOException {
+        byte[] trame = Binaire.trame(Commande.Type.MSG, "1", "bonjour");
+        for(int fin = 0; fin < trame.length; fin++){
+            assertEquals(-1, Binaire.longueurTrame(trame, 0, fin), "trame de " + fin + " octets");
+        }
+        assertEquals(trame.length, Binaire.longueurTrame(trame, 0, trame.length));
+        assertArrayEquals(trame, Binaire.lire(new ByteArrayInputStream(trame)));
+
+        assertNull(Binaire.lire(new ByteArrayInputStream(new byte[0])));
+        for(int fin = 1; fin < trame.length; fin++){
+            byte[] debut = Arrays.copyOf(trame, fin);
+            assertThrows(EOFException.class, () -> Binaire.lire(new ByteArrayInputStream(debut)), "trame de " + fin + " octets");
+        }
+    }
+
+    /**
+     * Méthode qui vérifie qu'une trame annonçant un contenu de CONTENU_MAX + 1 octets est refusée dès son en-tête,
+     * et qu'un contenu de CONTENU_MAX octets est seulement attendu.
+     * @throws IOException si l'en-tête d'une trame de taille maximum est refusé.
+     */
+    @Test
+    void trameTropLongue() throws IOException {
+        byte[] maximum = entete(Binaire.CONTENU_MAX);
+        assertEquals(-1, Binaire.longueurTrame(maximum, 0, maximum.length));
+
+        byte[] tropLongue = entete(Binaire.CONTENU_MAX + 1);
+        assertThrows(IOException.class, () -> Binaire.longueurTrame(tropLongue, 0, tropLongue.length));
+        IOException e = assertThrows(IOException.class, () -> Binaire.lire(new ByteArrayInputStream(tropLongue)));
+        assertNotEquals(EOFException.class, e.getClass());
+    }
+
+    /**
+     * Méthode qui vérifie qu'une trame compressée est décompressée si son contenu fait CONTENU_MAX octets,
+     * et refusée s'il en fait un de plus.
+     * @throws IOException si la trame de taille maximum est refusée.
+     */
+    @Test
+    void decompressionAuDelaDuMaximum() throws IOException {
+        byte[] maximum = Binaire.trame(Commande.Type.MSG, "", new byte[Binaire.CONTENU_MAX - 1], 0, Binaire.CONTENU_MAX - 1);
+        byte[] compressee = Binaire.compresser(maximum);
+        assertNotEquals(0, compressee[0] & Binaire.COMPRESSEE);
+        assertArrayEquals(maximum, Binaire.decompresser(compressee));
+
+        byte[] tropLongue = Binaire.trame(Commande.Type.MSG, "", new byte[Binaire.CONTENU_MAX], 0, Binaire.CONTENU_MAX);
+        byte[] bombe = Binaire.compresser(tropLongue);
+        assertNotEquals(0, bombe[0] & Binaire.COMPRESSEE);
+        assertThrows(IOException.class, () -> Binaire.decompresser(bombe));
+    }
+
+    /**
+     * Méthode qui construit l'en-tête seul d'une trame !msg.
+     * @param contenu la longueur annoncée du contenu.
+     * @return le type et la longueur de la trame, sans contenu.
+     */
+    private static byte[] entete(int contenu){
+        byte[] entete = new byte[1 + Binaire.tailleVarint(contenu)];
+        entete[0] = (byte) Binaire.code(Commande.Type.MSG);
+        Binaire.ecrireVarint(entete, 1, contenu);
+        return entete;
+    }
+}
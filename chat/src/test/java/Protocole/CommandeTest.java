@@ -0,0 +1,110 @@
+package Protocole;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CommandeTest vérifie l'analyse des lignes du protocole texte et le décodage des trames binaires :
+ * commandes sans champ ou sans corps, champ entier mal formé, et passage d'un protocole à l'autre
+ * d'un corps contenant des retours à la ligne.
+ * @see Commande
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+class CommandeTest {
+
+    /**
+     * Méthode qui vérifie qu'une ligne sans ':' n'a ni champ ni corps.
+     */
+    @Test
+    void sansChamp(){
+        Commande commande = new Commande().analyser(Commande.Type.EXIT.prefixe);
+        assertEquals(Commande.Type.EXIT, commande.getType());
+        assertFalse(commande.aChamp());
+        assertFalse(commande.aCorps());
+        assertEquals("", commande.champ());
+        assertEquals("", commande.corps());
+        assertEquals("", commande.ajouterCorps(new StringBuilder()).toString());
+
+        Commande rmcli = new Commande().analyser(Commande.Type.RMCLI.prefixe + ":12");
+        assertTrue(rmcli.aChamp());
+        assertFalse(rmcli.aCorps());
+        assertEquals("12", rmcli.champ());
+        assertEquals(12, rmcli.champEntier());
+    }
+
+    /**
+     * Méthode qui vérifie qu'un corps vide est présent mais vide, dans les deux protocoles.
+     * @throws IOException si la trame binaire est refusée.
+     */
+    @Test
+    void corpsVide() throws IOException {
+        Commande texte = new Commande().analyser(Commande.Type.MSG.prefixe + ":7:");
+        assertTrue(texte.aCorps());
+        assertEquals("7", texte.champ());
+        assertEquals("", texte.corps());
+        assertEquals("", texte.corpsBrut());
+
+        Commande binaire = new Commande().decoder(Binaire.trame(Commande.Type.MSG, "7", ""));
+        assertTrue(binaire.estBinaire());
+        assertTrue(binaire.aCorps());
+        assertEquals(7, binaire.champEntier());
+        assertEquals("", binaire.corps());
+        assertEquals(Commande.Type.MSG.prefixe + ":7:", binaire.ligne());
+    }
+
+    /**
+     * Méthode qui vérifie qu'un champ absent, vide, non numérique ou trop grand n'est pas lu comme un entier.
+     * @throws IOException si une trame binaire est refusée.
+     */
+    @Test
+    void champEntierMalForme() throws IOException {
+        String[] champs = {"", "-", "12a", "a12", "1 2", "99999999999", "2147483648"};
+        for(String champ : champs){
+            Commande texte = new Commande().analyser(Commande.Type.MSG.prefixe + ":" + champ + ":corps");
+            assertThrows(NumberFormatException.class, texte::champEntier, "champ texte \"" + champ + "\"");
+            Commande binaire = new Commande().decoder(Binaire.trame(Commande.Type.MSG, champ, "corps"));
+            assertThrows(NumberFormatException.class, binaire::champEntier, "champ binaire \"" + champ + "\"");
+        }
+        assertThrows(NumberFormatException.class, new Commande().analyser(Commande.Type.PING.prefixe)::champEntier);
+
+        assertEquals(-2147483648, new Commande().decoder(Binaire.trame(Commande.Type.MSG, "-2147483648", "")).champEntier());
+        assertEquals(2147483647, new Commande().analyser(Commande.Type.MSG.prefixe + ":2147483647:").champEntier());
+    }
+
+    /**
+     * Méthode qui vérifie qu'un corps à plusieurs lignes passe du protocole texte, où ses retours à la ligne
+     * sont échappés par RETOUR_TEXTE, au protocole binaire, où ils sont bruts, et revient à l'identique.
+     * @throws IOException si la trame binaire est refusée.
+     */
+    @Test
+    void allerRetourTexteBinaire() throws IOException {
+        String brut = "première ligne\nseconde : ligne\n";
+        String echappe = brut.replace("\n", Commande.RETOUR_TEXTE);
+        String ligne = Commande.Type.MSG.prefixe + ":3:" + echappe;
+
+        Commande texte = new Commande().analyser(ligne);
+        assertEquals(echappe, texte.corps());
+        assertEquals(brut, texte.corpsBrut());
+        assertEquals(echappe, texte.corpsTexte());
+
+        byte[] trame = Binaire.trame(Commande.Type.MSG, texte.champ(), texte.corpsBrut());
+        Commande binaire = new Commande().decoder(trame);
+        assertEquals(Commande.Type.MSG, binaire.getType());
+        assertEquals(3, binaire.champEntier());
+        assertEquals(brut, binaire.corps());
+        assertEquals(brut, binaire.corpsBrut());
+        assertEquals(echappe, binaire.corpsTexte());
+        assertEquals(ligne, binaire.ligne());
+        assertEquals(ligne, binaire.ajouterCorps(new StringBuilder(Commande.Type.MSG.prefixe + ":3:")).toString());
+
+        Commande retour = new Commande().analyser(binaire.ligne());
+        assertArrayEquals(trame, Binaire.trame(Commande.Type.MSG, retour.champ(), retour.corpsBrut()));
+    }
+}
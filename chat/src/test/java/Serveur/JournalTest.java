@@ -0,0 +1,185 @@
+package Serveur;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import Protocole.Binaire;
+import Protocole.Commande;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * JournalTest vérifie la reprise du journal après un arrêt brutal : un dernier enregistrement à moitié écrit
+ * ou dont la somme de contrôle ne correspond pas est tronqué, et le journal continue après le dernier enregistrement valide.
+ * Il vérifie aussi qu'un ajout sans attente ne se bloque jamais sur une file pleine.
+ * @see Journal
+ * @author Chauvin Lucien
+ * @version 1.0
+ */
+class JournalTest {
+
+    /**
+     * Le dossier temporaire du journal, vidé après chaque test.
+     * @see Path
+     */
+    @TempDir
+    Path dossier;
+
+    /**
+     * Méthode qui vérifie qu'un enregistrement dont seule une partie de l'en-tête a été écrite est tronqué à la réouverture.
+     * @throws IOException si le journal ne peut pas être ouvert.
+     */
+    @Test
+    void repriseApresEnteteIncomplet() throws IOException {
+        long taille = ecrire(3);
+        ajouterALaFin(new byte[Journal.ENTETE / 2]);
+
+        Journal journal = new Journal(dossier, Journal.Durabilite.LOT, 1 << 20);
+        assertEquals(3, journal.getEcrite());
+        assertEquals(taille, tailleSegment());
+        journal.fermer();
+    }
+
+    /**
+     * Méthode qui vérifie qu'un enregistrement dont l'en-tête est complet mais la trame coupée est tronqué,
+     * et que le message suivant reprend la séquence après le dernier enregistrement valide.
+     * @throws IOException si le journal ne peut pas être ouvert ou relu.
+     */
+    @Test
+    void repriseApresTrameIncomplete() throws IOException {
+        ecrire(3);
+        byte[] trame = trame(4);
+        ByteBuffer moitie = ByteBuffer.allocate(Journal.ENTETE + trame.length / 2);
+        moitie.putInt(trame.length).putLong(4).putLong(System.currentTimeMillis()).putInt(7).putInt(0)
+                .put(trame, 0, trame.length / 2);
+        ajouterALaFin(moitie.array());
+
+        Journal journal = new Journal(dossier, Journal.Durabilite.LOT, 1 << 20);
+        assertEquals(3, journal.getEcrite());
+        journal.demarrer();
+        assertEquals(4, journal.ajouter(7, trame(4)));
+        journal.fermer();
+
+        Journal reouvert = new Journal(dossier, Journal.Durabilite.LOT, 1 << 20);
+        assertEquals(4, reouvert.getEcrite());
+        assertEquals(List.of(1L, 2L, 3L, 4L), sequences(reouvert));
+        reouvert.fermer();
+    }
+
+    /**
+     * Méthode qui vérifie qu'un dernier enregistrement complet dont la trame ne correspond plus à sa somme de contrôle est tronqué.
+     * @throws IOException si le journal ne peut pas être ouvert ou relu.
+     */
+    @Test
+    void repriseApresSommeIncorrecte() throws IOException {
+        long taille = ecrire(3);
+        try (FileChannel canal = FileChannel.open(dernierSegment(), StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), taille - 1);
+        }
+
+        Journal journal = new Journal(dossier, Journal.Durabilite.LOT, 1 << 20);
+        assertEquals(2, journal.getEcrite());
+        assertEquals(taille - Journal.ENTETE - trame(3).length, tailleSegment());
+        assertEquals(List.of(1L, 2L), sequences(journal));
+        journal.fermer();
+    }
+
+    /**
+     * Méthode qui vérifie qu'un ajout sans attente sur une file pleine retourne tout de suite 0 et compte le message perdu,
+     * sans consommer de séquence, même en durabilité MESSAGE.
+     * @throws IOException si le journal ne peut pas être ouvert.
+     */
+    @Test
+    void ajoutSansAttenteSurFilePleine() throws IOException {
+        Journal journal = new Journal(dossier, Journal.Durabilite.MESSAGE, 1 << 20);
+        byte[] trame = trame(1);
+        for(int i = 1; i <= Journal.CAPACITE; i++){
+            assertEquals(i, journal.ajouter(7, trame, false));
+        }
+        assertEquals(0, journal.ajouter(7, trame, false));
+        assertEquals(0, journal.ajouter(7, trame, false));
+        assertEquals(2, journal.getPerdus());
+
+        journal.demarrer();
+        assertEquals(Journal.CAPACITE + 1, journal.ajouter(7, trame));
+        assertEquals(Journal.CAPACITE + 1, journal.getEcrite());
+        journal.fermer();
+    }
+
+    /**
+     * Méthode qui écrit des messages dans un nouveau journal puis le ferme.
+     * @param messages le nombre de messages.
+     * @return la taille du segment après la fermeture.
+     * @throws IOException si le journal ne peut pas être ouvert.
+     */
+    private long ecrire(int messages) throws IOException {
+        Journal journal = new Journal(dossier, Journal.Durabilite.LOT, 1 << 20);
+        journal.demarrer();
+        for(int i = 1; i <= messages; i++){
+            assertEquals(i, journal.ajouter(7, trame(i)));
+        }
+        journal.fermer();
+        assertEquals(messages, journal.getEcrite());
+        return tailleSegment();
+    }
+
+    /**
+     * Méthode qui construit la trame binaire d'un message de test.
+     * @param numero le numéro du message.
+     * @return la trame du message.
+     */
+    private static byte[] trame(long numero){
+        return Binaire.trame(Commande.Type.MSG, "7", "message " + numero);
+    }
+
+    /**
+     * Méthode qui ajoute des octets à la fin du dernier segment, comme un arrêt brutal au milieu d'une écriture.
+     * @param octets les octets ajoutés.
+     * @throws IOException si le segment ne peut pas être écrit.
+     */
+    private void ajouterALaFin(byte[] octets) throws IOException {
+        try (FileChannel canal = FileChannel.open(dernierSegment(), StandardOpenOption.APPEND)) {
+            canal.write(ByteBuffer.wrap(octets));
+        }
+    }
+
+    /**
+     * Méthode qui retourne le chemin du dernier segment du journal.
+     * @return le chemin du segment.
+     * @throws IOException si le dossier ne peut pas être lu.
+     */
+    private Path dernierSegment() throws IOException {
+        List<Path> segments = Journal.segments(dossier);
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Méthode qui retourne la taille du dernier segment du journal.
+     * @return la taille en octets.
+     * @throws IOException si le segment ne peut pas être lu.
+     */
+    private long tailleSegment() throws IOException {
+        try (FileChannel canal = FileChannel.open(dernierSegment(), StandardOpenOption.READ)) {
+            return canal.size();
+        }
+    }
+
+    /**
+     * Méthode qui relit les séquences de tous les enregistrements du journal.
+     * @param journal le journal ouvert.
+     * @return les séquences, dans l'ordre.
+     * @throws IOException si un segment ne peut pas être projeté.
+     */
+    private static List<Long> sequences(Journal journal) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        new LecteurJournal(journal).parcourir(1, journal.getEcrite(), 0,
+                (sequence, horodatage, source, trame) -> sequences.add(sequence));
+        return sequences;
+    }
+}